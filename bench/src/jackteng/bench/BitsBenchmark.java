@@ -0,0 +1,64 @@
+package jackteng.bench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Benchmarks the comparison bit of two keys, on the ranges
+ *                 of the strings and on their bit sets. The pairs are
+ *                 neighbouring lines of the sorted corpus, which share
+ *                 prefixes of various lengths as the keys of a PAT-tree do.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BitsBenchmark {
+    private final static int NUM_PAIRS = 1024;
+
+    @Param({"ChineseLike", "EnglishLike"})
+    public String langType;
+
+    @Param({"100000"})
+    public int corpusSize;          // in characters.
+
+    private String[] keys = null;
+    private BitSet[] bits = null;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	List<String> lines = new ArrayList<String>(
+	    Corpora.lines(Corpora.parseLangType(langType), corpusSize));
+	Collections.sort(lines);
+
+	keys = new String[NUM_PAIRS + 1];
+	bits = new BitSet[NUM_PAIRS + 1];
+	for (int i = 0; i < keys.length; i++) {
+	    keys[i] = lines.get((int) ((long) i * (lines.size() - 1) / NUM_PAIRS));
+	    bits[i] = Bits.toBitSet(keys[i], 0, keys[i].length());
+	}
+    }
+
+    @Benchmark
+    public int getComparisonBit() {
+	int i = next++ & (NUM_PAIRS - 1);
+	String key1 = keys[i];
+	String key2 = keys[i + 1];
+	return Bits.getComparisonBit(key1, 0, key1.length(), key2, 0, key2.length());
+    }
+
+    @Benchmark
+    public int getComparisonBitOfBitSets() {
+	int i = next++ & (NUM_PAIRS - 1);
+	return Bits.getComparisonBit(bits[i], bits[i + 1]);
+    }
+}
@@ -0,0 +1,56 @@
+package jackteng.bench;
+
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Synthetic corpora for the benchmarks, generated by
+ *                 SyntheticCorpus with its default settings and a fixed seed,
+ *                 so that the same size gives the same corpus.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class Corpora {
+    private final static long SEED = 20030519L;
+
+    private Corpora() { }
+
+    /**
+     * Returns the language type of the given name, "ChineseLike" or
+     * "EnglishLike".
+     *
+     * @param name the name of the language type.
+     * @return the language type.
+     */
+    public static int parseLangType(String name) {
+	if (name.equals("ChineseLike")) {
+	    return Strings.ChineseLike;
+	} else if (name.equals("EnglishLike")) {
+	    return Strings.EnglishLike;
+	}
+	throw (new IllegalArgumentException("Unknown language type: " + name));
+    }
+
+    /**
+     * Generates the lines of a corpus.
+     *
+     * @param langType the language type, either Chinese like or English like.
+     * @param size the number of characters of the corpus, spaces and
+     *        punctuation included.
+     * @return the lines.
+     */
+    public static List<String> lines(int langType, int size) {
+	SyntheticCorpus corpus = new SyntheticCorpus(langType, SEED);
+	List<String> result = new ArrayList<String>();
+
+	for (int len = 0; len < size; ) {
+	    String line = corpus.nextLine();
+	    result.add(line);
+	    len += line.length() + 1;
+	}
+
+	return result;
+    }
+}
@@ -0,0 +1,101 @@
+package jackteng.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import jackteng.pattree.*;
+
+/**
+ * <p>Description: Benchmarks the two extract() variants, localmaxs under
+ *                 every association measure and the successor counts, on the
+ *                 indexes of the corpus. The indexes are built and written
+ *                 once, and mapped afresh for each run, so that every run
+ *                 starts with empty frequency caches.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExtractBenchmark {
+    private final static String[] MEASURES = {
+	"SCP", "SCPCD", "GMSCP", "GMSCPCD", "CD"
+    };
+
+    /**
+     * The image of the indexes of the corpus.
+     */
+    @State(Scope.Benchmark)
+    public static class Corpus {
+	@Param({"ChineseLike", "EnglishLike"})
+	public String langType;
+
+	@Param({"PATTree", "SuffixArray"})
+	public String indexType;
+
+	@Param({"100000"})
+	public int corpusSize;          // in characters.
+
+	private File image = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+	    PATTermExtraction te = new PATTermExtraction(
+		Corpora.parseLangType(langType),
+		PATTermExtraction.parseIndexType(indexType));
+	    te.add(Corpora.lines(te.getLangType(), corpusSize).iterator());
+	    image = File.createTempFile("extract", ".pat");
+	    te.toFile(image.getPath());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+	    image.delete();
+	}
+    }
+
+    /**
+     * The indexes mapped for one run.
+     */
+    @State(Scope.Thread)
+    public static class Indexes {
+	private PATTermExtraction te = null;
+
+	@Setup(Level.Invocation)
+	public void setUp(Corpus corpus) throws IOException {
+	    te = PATTermExtraction.fromFile(corpus.image.getPath());
+	}
+    }
+
+    @State(Scope.Thread)
+    public static class Measure {
+	@Param({"SCP", "SCPCD", "GMSCP", "GMSCPCD", "CD"})
+	public String associationMeasure;
+
+	private int am = 0;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+	    am = Arrays.asList(MEASURES).indexOf(associationMeasure);
+	    if (am < 0) {
+		throw (new IllegalArgumentException(
+		    "Unknown association measure: " + associationMeasure));
+	    }
+	}
+    }
+
+    @Benchmark
+    public Map[] localMaxs(Indexes indexes, Measure measure) throws IOException {
+	return indexes.te.extract(measure.am, 2, 5, 1, null);
+    }
+
+    @Benchmark
+    public Map[] successorCounts(Indexes indexes) throws IOException {
+	return indexes.te.extract(5, 2, 2, 0.9, null);
+    }
+}
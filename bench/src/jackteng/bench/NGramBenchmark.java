@@ -0,0 +1,51 @@
+package jackteng.bench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Benchmarks the enumeration of the 1- to N-grams of a line,
+ *                 cycling through the lines of the corpus.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NGramBenchmark {
+
+    @Param({"ChineseLike", "EnglishLike"})
+    public String langType;
+
+    @Param({"100000"})
+    public int corpusSize;          // in characters.
+
+    @Param({"5"})
+    public int maxN;
+
+    private boolean includeEnglish = false;
+    private String[] lines = null;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	int lt = Corpora.parseLangType(langType);
+	includeEnglish = (lt == Strings.EnglishLike);
+	List<String> corpus = Corpora.lines(lt, corpusSize);
+	lines = corpus.toArray(new String[corpus.size()]);
+    }
+
+    @Benchmark
+    public NGram.NGramInfo[] get1ToNGrams() {
+	String line = lines[next];
+	next = (next + 1) % lines.length;
+	return new NGram(maxN).get1ToNGrams(line, includeEnglish);
+    }
+}
@@ -0,0 +1,95 @@
+package jackteng.bench;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import jackteng.pattree.*;
+
+/**
+ * <p>Description: Benchmarks the insertion of a corpus into a PAT-tree and
+ *                 the queries term extraction runs against one. The queries
+ *                 cycle through n-grams of 1 to 3 characters (or words)
+ *                 drawn from the corpus.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PATTreeBenchmark {
+    private final static int NUM_QUERIES = 4096;
+
+    @Param({"ChineseLike", "EnglishLike"})
+    public String langType;
+
+    @Param({"100000"})
+    public int corpusSize;          // in characters.
+
+    private int lt = 0;
+    private List<String> lines = null;
+    private PATTree tree = null;
+    private String[] queries = null;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	lt = Corpora.parseLangType(langType);
+	lines = Corpora.lines(lt, corpusSize);
+	tree = this.newTree();
+
+	List<String> ngrams = new ArrayList<String>();
+	for (int n = 1; n <= 3; n++) {
+	    ArrayList sps = tree.getNGrams(n);
+	    for (int i = 0; i < sps.size(); i++) {
+		ngrams.add(((SuffixPerplexity) sps.get(i)).suffix.trim());
+	    }
+	}
+	Collections.shuffle(ngrams, new Random(0));
+	queries = new String[NUM_QUERIES];
+	for (int i = 0; i < queries.length; i++) {
+	    queries[i] = ngrams.get(i % ngrams.size());
+	}
+    }
+
+    private PATTree newTree() {
+	PATTree result = new PATTree(lt);
+	for (int i = 0; i < lines.size(); i++) {
+	    result.insert(lines.get(i));
+	}
+
+	return result;
+    }
+
+    private String nextQuery() {
+	return queries[next++ & (NUM_QUERIES - 1)];
+    }
+
+    /**
+     * Inserts the whole corpus into an empty PAT-tree.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PATTree insert() {
+	return this.newTree();
+    }
+
+    @Benchmark
+    public PATNode search() {
+	return tree.search(this.nextQuery());
+    }
+
+    @Benchmark
+    public int getFrequency() {
+	return tree.getFrequency(this.nextQuery());
+    }
+
+    @Benchmark
+    public ArrayList getSuffixPerplexity() {
+	return tree.getSuffixPerplexity(this.nextQuery(), 1);
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.*;
+
+import jackteng.util.*;
+import jackteng.file.*;
+
+import org.apache.commons.cli.*;
+
+public class CorpusGenerator {
+    public static void main(String[] args) {
+	Option[] allOptions = new Option[] {
+	    OptionBuilder.withLongOpt("help")
+		.withDescription("Show this help screen")
+		.create(),
+	    OptionBuilder.withLongOpt("output")
+		.withDescription("Path to the output (corpus) directory")
+		.hasArg().withArgName("dir").create(),
+	    OptionBuilder.withLongOpt("lang")
+		.withDescription("Generate the language: chinese, english (default: chinese)")
+		.hasArg().withArgName("name").create(),
+	    OptionBuilder.withLongOpt("size")
+		.withDescription("Specify the corpus size in bytes, with an optional K, M or G suffix")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("file-size")
+		.withDescription("Specify the size of each corpus file (default: 64M)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("encoding")
+		.withDescription("Specify the encoding of the corpus files (default: big5)")
+		.hasArg().withArgName("charset").create(),
+	    OptionBuilder.withLongOpt("seed")
+		.withDescription("Specify the random seed (default: 0)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("exponent")
+		.withDescription("Specify the exponent of the Zipfian distributions (default: 1.0)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("lexicon-size")
+		.withDescription("Specify the number of distinct terms (default: 20000)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("mwus")
+		.withDescription("Specify the number of distinct multi-word units planted (default: 1000)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("mwu-rate")
+		.withDescription("Specify the chance of a multi-word unit in place of a term (default: 0.02)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("min-line")
+		.withDescription("Specify the minimum line length in characters (default: 20)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("max-line")
+		.withDescription("Specify the maximum line length in characters (default: 80)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("planted")
+		.withDescription("Write the planted multi-word units to the file, outside the corpus directory")
+		.hasArg().withArgName("file").create(),
+	};
+
+	Options options = new Options();
+	for (Option option: allOptions) options.addOption(option);
+
+	CommandLineParser parser = new GnuParser();
+	CommandLine line = null;
+
+	try {
+	    line = parser.parse(options, args);
+	}
+	catch (ParseException e) {
+	    System.err.println(e.getMessage());
+	    System.exit(1);
+	}
+
+	if (line.hasOption("help")) {
+	    HelpFormatter formatter = new HelpFormatter();
+	    formatter.printHelp(CorpusGenerator.class.getName() + " [option..]", options);
+	    System.exit(0);
+	}
+
+	//--------------------------------------------------
+	// Now set up options
+	//--------------------------------------------------
+	String outputPath = line.getOptionValue("output");
+	String plantedPath = line.getOptionValue("planted");
+	String encoding = line.getOptionValue("encoding", "big5");
+	String lang = line.getOptionValue("lang", "chinese");
+	int langType = Strings.ChineseLike;
+	SyntheticCorpus corpus = null;
+	long size = 0;
+	long fileSize = 0;
+
+	if (outputPath == null) {
+	    System.err.println("The argument '--output' is required");
+	    System.exit(1);
+	}
+
+	if (!line.hasOption("size")) {
+	    System.err.println("The argument '--size' is required");
+	    System.exit(1);
+	}
+
+	try {
+	    if (lang.equalsIgnoreCase("english"))
+		langType = Strings.EnglishLike;
+	    else if (!lang.equalsIgnoreCase("chinese"))
+		throw new IllegalArgumentException("Unknown language: " + lang);
+	    size = parseSize(line.getOptionValue("size"));
+	    fileSize = parseSize(line.getOptionValue("file-size", "64M"));
+	    corpus = new SyntheticCorpus(langType,
+		Long.parseLong(line.getOptionValue("seed", "0")),
+		Double.parseDouble(line.getOptionValue("exponent",
+			String.valueOf(SyntheticCorpus.DEFAULT_EXPONENT))),
+		Integer.parseInt(line.getOptionValue("lexicon-size",
+			String.valueOf(SyntheticCorpus.DEFAULT_LEXICON_SIZE))),
+		Integer.parseInt(line.getOptionValue("mwus",
+			String.valueOf(SyntheticCorpus.DEFAULT_NUM_MWUS))));
+	    corpus.setMWURate(Double.parseDouble(line.getOptionValue("mwu-rate", "0.02")));
+	    corpus.setLineLength(Integer.parseInt(line.getOptionValue("min-line", "20")),
+				 Integer.parseInt(line.getOptionValue("max-line", "80")));
+	}
+	catch (IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    System.exit(1);
+	}
+
+	//--------------------------------------------------
+	// Go!
+	//--------------------------------------------------
+	File outputDir = new File(outputPath);
+	if (plantedPath != null &&
+	    new File(plantedPath).getAbsoluteFile().getParentFile().equals(outputDir.getAbsoluteFile())) {
+	    // The term extraction reads every file of the corpus directory
+	    System.err.println("The planted units cannot be written into the corpus directory");
+	    System.exit(1);
+	}
+
+	try {
+	    if (plantedPath != null) {
+		FileHandler plantedFile = new FileHandler(plantedPath);
+		if (plantedFile.exists()) plantedFile.delete();
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(plantedFile), encoding));
+		try {
+		    for (String mwu: corpus.getMWUs()) {
+			writer.write(mwu);
+			writer.newLine();
+		    }
+		}
+		finally { writer.close(); }
+	    }
+
+	    long t = System.currentTimeMillis();
+	    int numFiles = corpus.write(outputDir.getAbsolutePath(), encoding, size, fileSize);
+	    t = System.currentTimeMillis() - t;
+	    System.out.println("Finish writing " + numFiles + " files in "
+			       + ((double) t / 1000.0) + "sec.");
+	}
+	catch (Exception e) { e.printStackTrace(); }
+    }
+
+    /**
+     * Parses a number of bytes with an optional K, M or G suffix.
+     */
+    private static long parseSize(String size) {
+	long unit = 1;
+	char suffix = Character.toUpperCase(size.charAt(size.length() - 1));
+	if (suffix == 'K') unit = 1L << 10;
+	else if (suffix == 'M') unit = 1L << 20;
+	else if (suffix == 'G') unit = 1L << 30;
+	if (unit > 1) size = size.substring(0, size.length() - 1);
+
+	long result = Long.parseLong(size) * unit;
+	if (result <= 0)
+	    throw new IllegalArgumentException("Illegal size: " + size);
+	return result;
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import javax.management.*;
 
 import jackteng.pattree.*;
 import jackteng.util.*;
@@ -30,6 +31,39 @@ public class TermExtractor {
 	    OptionBuilder.withLongOpt("window-size")
 		.withDescription("Specify the window size")
 		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("index")
+		.withDescription("Use the index: PATTree, SuffixArray")
+		.hasArg().withArgName("name").create(),
+	    OptionBuilder.withLongOpt("encoding")
+		.withDescription("Specify the encoding of the corpus files (default: big5)")
+		.hasArg().withArgName("charset").create(),
+	    OptionBuilder.withLongOpt("chars")
+		.withDescription("Use the legal characters of terms: big5, gbk, unicode, english")
+		.hasArg().withArgName("name").create(),
+	    OptionBuilder.withLongOpt("merge")
+		.withDescription("Merge the corpus in the directory into the existing tree")
+		.hasArg().withArgName("dir").create(),
+	    OptionBuilder.withLongOpt("threads")
+		.withDescription("Specify the number of threads used to build the index and extract terms")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("top-k")
+		.withDescription("Keep only the num best terms of each n")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("rank-by")
+		.withDescription("Rank the terms by: freq, glue (default: freq)")
+		.hasArg().withArgName("name").create(),
+	    OptionBuilder.withLongOpt("bounded")
+		.withDescription("Bound the keys of the new tree to the n-grams needed by --max-n and --window-size")
+		.create(),
+	    OptionBuilder.withLongOpt("prune")
+		.withDescription("Prune the new tree at the minimum term frequency; a pruned tree cannot be merged into")
+		.create(),
+	    OptionBuilder.withLongOpt("pass-size")
+		.withDescription("Specify the most suffixes of each part when --prune builds a PAT tree part by part (default: from the maximum heap size)")
+		.hasArg().withArgName("num").create(),
+	    OptionBuilder.withLongOpt("metrics")
+		.withDescription("Measure the run, exposing the metrics through JMX, and dump them as JSON to the file")
+		.hasArg().withArgName("file").create(),
 	};
 
 	Options options = new Options();
@@ -57,10 +91,23 @@ public class TermExtractor {
 	//-------------------------------------------------- 
 	String inputPath = line.getOptionValue("input");
 	String outputPath = line.getOptionValue("output");
+	String mergePath = line.getOptionValue("merge");
+	String metricsPath = line.getOptionValue("metrics");
+	String encoding = line.getOptionValue("encoding", "big5");
 	int minFreq = Integer.parseInt(line.getOptionValue("min-freq", "2"));
 	int maxN = Integer.parseInt(line.getOptionValue("max-n", "12"));
 	int windowSize = Integer.parseInt(line.getOptionValue("window-size", "1"));
+	int numThreads = Integer.parseInt(line.getOptionValue("threads",
+		String.valueOf(Runtime.getRuntime().availableProcessors())));
+	int topK = Integer.parseInt(line.getOptionValue("top-k", "0"));
+	int rankBy = PATTermExtraction.BY_FREQUENCY;
+	boolean prune = line.hasOption("prune");
+	long passSize = Long.parseLong(line.getOptionValue("pass-size",
+		String.valueOf(PATTermExtraction.getDefaultPassSize(numThreads))));
+	int maxKeyLen = line.hasOption("bounded") ? maxN + windowSize + 1 : 0;
 	int langType = Strings.ChineseLike; // Dirty
+	int indexType = PATTermExtraction.PAT_TREE;
+	CharClassifier classifier = PATTermExtraction.getDefaultClassifier(langType);
 
 	if (inputPath == null) {
 	    System.err.println("The argument '--input' is required");
@@ -80,10 +127,22 @@ public class TermExtractor {
 	    (measure == "GMSCPCD")? PATTermExtraction.GMSCPCD:
 	    (measure == "CD")? PATTermExtraction.CD: PATTermExtraction.SCPCD;
 
+	try {
+	    indexType = PATTermExtraction.parseIndexType(line.getOptionValue("index", "PATTree"));
+	    rankBy = PATTermExtraction.parseRankBy(line.getOptionValue("rank-by", "freq"));
+	    if (line.hasOption("chars"))
+		classifier = CharTable.forName(line.getOptionValue("chars"));
+	}
+	catch (IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    System.exit(1);
+	}
+
 	//--------------------------------------------------
 	// Go!
 	//-------------------------------------------------- 
 	PATTermExtraction te = null;
+	Metrics metrics = null;
 
 	File inputDir = new File(inputPath);
 	if (!inputDir.isDirectory()) {
@@ -97,15 +156,60 @@ public class TermExtractor {
 	FileHandler treeFile = new FileHandler(outputDir, "tree");
 
 	try {
-	    if (treeFile.exists())
-		te = (PATTermExtraction)treeFile.readObject();
+	    if (metricsPath != null) {
+		metrics = new Metrics();
+		metrics.register("jackteng:type=TermExtractor");
+	    }
+
+	    if (treeFile.exists()) {
+		te = PATTermExtraction.fromFile(treeFile.getAbsolutePath());
+		te.setMetrics(metrics);
+	    }
+	    else if (prune && mergePath == null && indexType == PATTermExtraction.PAT_TREE) {
+		// Pruned part by part, so the whole tree is never built
+		te = PATTermExtraction.buildPruned(inputDir.getAbsolutePath(), langType, numThreads,
+						   encoding, classifier, maxKeyLen, minFreq, passSize,
+						   metrics);
+		te.toFile(treeFile.getAbsolutePath());
+	    }
 	    else {
-		te = new PATTermExtraction(inputDir.getAbsolutePath(), langType);
+		te = new PATTermExtraction(inputDir.getAbsolutePath(), langType, indexType, numThreads,
+					   encoding, classifier, maxKeyLen, metrics);
+		if (prune && mergePath == null) te.prune(minFreq);
 		te.toFile(treeFile.getAbsolutePath());
 	    }
 
-	    te.extract(associationMeasure, minFreq, maxN, windowSize, outputPath);
+	    if (mergePath != null) {
+		File mergeDir = new File(mergePath);
+		if (!mergeDir.isDirectory()) {
+		    System.err.println(mergeDir.getAbsolutePath() + " is not a directory");
+		    System.exit(1);
+		}
+		te.merge(new PATTermExtraction(mergeDir.getAbsolutePath(), te.getLangType(),
+					       te.getIndexType(), numThreads, encoding,
+					       classifier, te.getMaxKeyLength(), metrics));
+		te.setMetrics(metrics); // The merged corpus took over the gauges
+		if (prune) te.prune(minFreq);
+
+		// The old tree may still be mapped, so the merged one is written aside
+		FileHandler mergedFile = new FileHandler(outputDir, "tree.new");
+		te.toFile(mergedFile.getAbsolutePath());
+		if (!mergedFile.renameTo(treeFile))
+		    throw new IOException("Cannot replace " + treeFile.getAbsolutePath());
+	    }
+
+	    te.extract(associationMeasure, minFreq, maxN, windowSize, outputPath, numThreads,
+		       topK, rankBy);
+
+	    if (metrics != null)
+		new FileHandler(metricsPath).println(metrics.toJSON());
 	}
 	catch (Exception e) { e.printStackTrace(); }
+	finally {
+	    if (metrics != null) {
+		try { metrics.unregister(); }
+		catch (JMException e) { e.printStackTrace(); }
+	    }
+	}
     }
 }
@@ -0,0 +1,95 @@
+package jackteng.file;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * <p>Description: A reader of binary index images written by
+ *                 <code>ImageWriter</code>. Array sections are not copied but
+ *                 mapped through <code>FileChannel.map</code>, so that they can
+ *                 be queried straight against the mapped pages. The mappings
+ *                 stay valid after the reader is closed.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class ImageReader {
+    private RandomAccessFile raf = null;
+    private FileChannel channel = null;
+    private long pos = 0;
+    private ByteBuffer scalar = ByteBuffer.allocate(8);
+
+    public ImageReader(String fileName) throws IOException {
+	raf = new RandomAccessFile(fileName, "r");
+	channel = raf.getChannel();
+    }
+
+    private ByteBuffer read(int n) throws IOException {
+	scalar.clear();
+	scalar.limit(n);
+	while (scalar.hasRemaining()) {
+	    if (channel.read(scalar, pos + scalar.position()) < 0) {
+		throw (new EOFException());
+	    }
+	}
+	pos += n;
+	scalar.flip();
+	return scalar;
+    }
+
+    public int readInt() throws IOException {
+	return this.read(4).getInt();
+    }
+
+    public long readLong() throws IOException {
+	return this.read(8).getLong();
+    }
+
+    private ByteBuffer map(long size) throws IOException {
+	if (size > Integer.MAX_VALUE) {
+	    throw (new IOException("Image section too large to be mapped: " +
+				   size + " bytes"));
+	}
+	if (pos + size > channel.size()) {
+	    throw (new EOFException());
+	}
+	ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+	pos += size;
+	return result;
+    }
+
+    /**
+     * Maps the next <code>count</code> integers of the image.
+     *
+     * @param count the number of integers.
+     * @return the read-only mapped integers.
+     */
+    public IntBuffer mapInts(int count) throws IOException {
+	return this.map(4L * count).asIntBuffer();
+    }
+
+    /**
+     * Maps the next <code>count</code> bytes of the image.
+     *
+     * @param count the number of bytes.
+     * @return the read-only mapped bytes.
+     */
+    public ByteBuffer mapBytes(int count) throws IOException {
+	return this.map(count);
+    }
+
+    /**
+     * Maps the next <code>count</code> characters of the image.
+     *
+     * @param count the number of characters.
+     * @return the read-only mapped characters.
+     */
+    public CharBuffer mapChars(int count) throws IOException {
+	return this.map(2L * count).asCharBuffer();
+    }
+
+    public void close() throws IOException {
+	raf.close();
+    }
+}
@@ -0,0 +1,98 @@
+package jackteng.file;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * <p>Description: A writer of binary index images. Everything is written in
+ *                 big-endian order so that the sections can later be mapped
+ *                 and read in place by <code>ImageReader</code>.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class ImageWriter {
+    private FileOutputStream fos = null;
+    private FileChannel channel = null;
+    private ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+
+    public ImageWriter(String fileName) throws IOException {
+	fos = new FileOutputStream(fileName);
+	channel = fos.getChannel();
+    }
+
+    private void ensureRemaining(int n) throws IOException {
+	if (buf.remaining() < n) {
+	    this.flush();
+	}
+    }
+
+    private void flush() throws IOException {
+	buf.flip();
+	while (buf.hasRemaining()) {
+	    channel.write(buf);
+	}
+	buf.clear();
+    }
+
+    public void writeInt(int v) throws IOException {
+	this.ensureRemaining(4);
+	buf.putInt(v);
+    }
+
+    public void writeLong(long v) throws IOException {
+	this.ensureRemaining(8);
+	buf.putLong(v);
+    }
+
+    /**
+     * Writes the first <code>count</code> integers of the buffer, starting at
+     * index 0 regardless of the position of the buffer.
+     *
+     * @param ints the integers to be written.
+     * @param count the number of integers.
+     */
+    public void writeInts(IntBuffer ints, int count) throws IOException {
+	for (int i = 0; i < count; i++) {
+	    this.ensureRemaining(4);
+	    buf.putInt(ints.get(i));
+	}
+    }
+
+    /**
+     * Writes the first <code>count</code> bytes of the buffer, starting at
+     * index 0 regardless of the position of the buffer.
+     *
+     * @param bytes the bytes to be written.
+     * @param count the number of bytes.
+     */
+    public void writeBytes(ByteBuffer bytes, int count) throws IOException {
+	for (int i = 0; i < count; i++) {
+	    this.ensureRemaining(1);
+	    buf.put(bytes.get(i));
+	}
+    }
+
+    /**
+     * Writes the first <code>count</code> characters of the sequence as
+     * UTF-16 code units.
+     *
+     * @param chars the characters to be written.
+     * @param count the number of characters.
+     */
+    public void writeChars(CharSequence chars, int count) throws IOException {
+	for (int i = 0; i < count; i++) {
+	    this.ensureRemaining(2);
+	    buf.putChar(chars.charAt(i));
+	}
+    }
+
+    public void close() throws IOException {
+	try {
+	    this.flush();
+	} finally {
+	    fos.close();
+	}
+    }
+}
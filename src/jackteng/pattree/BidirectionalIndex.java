@@ -0,0 +1,170 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.file.*;
+
+/**
+ * <p>Description: An index of a corpus which answers both the right-context
+ *                 and the left-context queries, so that no index of the
+ *                 inversed strings is needed. The queries of SuffixIndex go
+ *                 to the forward index, a PAT-tree or a suffix array; the
+ *                 left contexts are read before the occurrences found in a
+ *                 suffix array of the same strings, which is the forward
+ *                 index itself when that is a suffix array, and shares the
+ *                 text store of a PAT-tree bulk-loaded from it.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class BidirectionalIndex implements SuffixIndex {
+    private SuffixIndex forward = null;
+    private SuffixArray contexts = null;
+
+    /**
+     * @param forward the forward index.
+     * @param contexts the suffix array of the same strings, which may be the
+     *        forward index itself.
+     * @throws IllegalArgumentException if the language types differ.
+     */
+    public BidirectionalIndex(SuffixIndex forward, SuffixArray contexts) {
+	if (forward.getLangType() != contexts.getLangType()) {
+	    throw (new IllegalArgumentException("Different language types"));
+	}
+	this.forward = forward;
+	this.contexts = contexts;
+    }
+
+    public SuffixIndex getForwardIndex() {
+	return this.forward;
+    }
+
+    /**
+     * Returns the suffix array which answers the left-context queries.
+     *
+     * @return the suffix array, which may be the forward index itself.
+     */
+    public SuffixArray getContextIndex() {
+	return this.contexts;
+    }
+
+    public void add(String data) {
+	this.add(data, 0, data.length());
+    }
+
+    public void add(CharSequence data, int from, int to) {
+	forward.add(data, from, to);
+	if (contexts != forward) {
+	    contexts.add(data, from, to);
+	}
+    }
+
+    public void merge(SuffixIndex other) {
+	if (!(other instanceof BidirectionalIndex)) {
+	    throw (new IllegalArgumentException("Not a bidirectional index"));
+	}
+	BidirectionalIndex index = (BidirectionalIndex) other;
+	forward.merge(index.forward);
+	if (contexts != forward) {
+	    contexts.merge(index.contexts);
+	}
+    }
+
+    public int getFrequency(String word) {
+	return forward.getFrequency(word);
+    }
+
+    public ArrayList getSuffixPerplexity(String word, int suffixLen) {
+	return forward.getSuffixPerplexity(word, suffixLen);
+    }
+
+    public int getSuccessorCount(String word) {
+	return forward.getSuccessorCount(word);
+    }
+
+    public int getMaxSuccessorFrequency(String word) {
+	return forward.getMaxSuccessorFrequency(word);
+    }
+
+    /**
+     * Returns the distinct strings of prefixLen characters (or words) which
+     * precede the given word, sorted by ascending frequency.
+     *
+     * @param word the target word.
+     * @param prefixLen the length of the preceding strings.
+     * @return the list of SuffixPerplexity.
+     */
+    public ArrayList getPrefixPerplexity(String word, int prefixLen) {
+	return contexts.getPrefixPerplexity(word, prefixLen);
+    }
+
+    public int getPredecessorCount(String word) {
+	return contexts.getPredecessorCount(word);
+    }
+
+    public int getMaxPredecessorFrequency(String word) {
+	return contexts.getMaxPredecessorFrequency(word);
+    }
+
+    public ArrayList getNGrams(int n) {
+	return forward.getNGrams(n);
+    }
+
+    public ArrayList[] getNGrams(int maxN, int minFreq) {
+	return forward.getNGrams(maxN, minFreq);
+    }
+
+    public void visitNGrams(int maxN, int minFreq, NGramVisitor visitor) {
+	forward.visitNGrams(maxN, minFreq, visitor);
+    }
+
+    public int getLangType() {
+	return forward.getLangType();
+    }
+
+    public void freeze() {
+	forward.freeze();
+	contexts.freeze();
+    }
+
+    public boolean isFrozen() {
+	return forward.isFrozen();
+    }
+
+    /**
+     * Writes the image of the forward index, followed by that of the suffix
+     * array unless it is the forward index, without the text store it shares
+     * with the forward index.
+     *
+     * @param out the image writer.
+     */
+    public void write(ImageWriter out) throws IOException {
+	forward.write(out);
+	if (contexts != forward) {
+	    boolean sharesText = ((forward instanceof PATTree) &&
+				  (((PATTree) forward).getText() == contexts.getText()));
+	    out.writeInt(sharesText ? 1 : 0);
+	    contexts.write(out, !sharesText);
+	}
+    }
+
+    /**
+     * Reads what write() wrote after the image of the forward index.
+     *
+     * @param forward the forward index read.
+     * @param in the image reader.
+     * @return the bidirectional index.
+     */
+    public static BidirectionalIndex read(SuffixIndex forward, ImageReader in)
+	throws IOException {
+	if (forward instanceof SuffixArray) {
+	    return new BidirectionalIndex(forward, (SuffixArray) forward);
+	}
+	boolean sharesText = (in.readInt() != 0);
+	SuffixArray contexts = SuffixArray.read(
+	    in, (sharesText ? ((PATTree) forward).shareText() : null));
+
+	return new BidirectionalIndex(forward, contexts);
+    }
+}
@@ -0,0 +1,232 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.file.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: A suffix index which remembers the frequencies of the most
+ *                 recently used words. The association measures look up the
+ *                 frequencies of the same sub n-grams over and over, both for
+ *                 different candidates and for the antecedents and successors
+ *                 of one candidate, so most lookups are answered by the cache.
+ *                 The least recently used word is evicted when the cache is
+ *                 full, and the cache is emptied whenever the index changes.
+ *                 Other queries go to the index directly. The cache is split
+ *                 into segments with locks of their own, so that threads
+ *                 querying a frozen index seldom wait for each other.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class CachedSuffixIndex implements SuffixIndex {
+    public final static int DEFAULT_CACHE_SIZE = 65536;
+    private final static int NUM_SEGMENTS = 16;
+
+    private SuffixIndex index = null;
+    private Segment[] segments = new Segment[NUM_SEGMENTS];
+    private Metrics.Timer frequencyTimer = null;          // null if not timed.
+    private Metrics.Timer perplexityTimer = null;
+
+    /**
+     * A least recently used map of frequencies with its counters, guarded by
+     * its own lock.
+     */
+    private static class Segment extends LinkedHashMap<String, Integer> {
+	private int capacity = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	public Segment(int capacity) {
+	    super(16, 0.75f, true);
+	    this.capacity = capacity;
+	}
+
+	protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+	    return (size() > capacity);
+	}
+    }
+
+    public CachedSuffixIndex(SuffixIndex index) {
+	this(index, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param index the index to be cached.
+     * @param cacheSize the maximum number of frequencies kept.
+     */
+    public CachedSuffixIndex(SuffixIndex index, int cacheSize) {
+	this.index = index;
+	for (int i = 0; i < NUM_SEGMENTS; i++) {
+	    segments[i] = new Segment(Math.max(1, cacheSize / NUM_SEGMENTS));
+	}
+    }
+
+    /**
+     * Returns the index behind the cache.
+     *
+     * @return the index.
+     */
+    public SuffixIndex getIndex() {
+	return this.index;
+    }
+
+    public void add(String data) {
+	this.invalidate();
+	index.add(data);
+    }
+
+    public void add(CharSequence data, int from, int to) {
+	this.invalidate();
+	index.add(data, from, to);
+    }
+
+    public void merge(SuffixIndex other) {
+	if (other instanceof CachedSuffixIndex) {
+	    other = ((CachedSuffixIndex) other).index;
+	}
+	this.invalidate();
+	index.merge(other);
+    }
+
+    /**
+     * Times the frequency lookups, cached or not, and the suffix perplexity
+     * queries in the query.frequency and query.suffixPerplexity timers of
+     * the metrics.
+     *
+     * @param metrics the metrics; null if nothing is timed.
+     */
+    public void setMetrics(Metrics metrics) {
+	frequencyTimer = ((metrics != null) ? metrics.timer("query.frequency") : null);
+	perplexityTimer = ((metrics != null) ?
+			   metrics.timer("query.suffixPerplexity") : null);
+    }
+
+    private void invalidate() {
+	for (int i = 0; i < NUM_SEGMENTS; i++) {
+	    synchronized (segments[i]) {
+		if (!segments[i].isEmpty()) {
+		    segments[i].clear();
+		}
+	    }
+	}
+    }
+
+    private Segment getSegment(String word) {
+	int h = word.hashCode();
+	return segments[(h ^ (h >>> 16)) & (NUM_SEGMENTS - 1)];
+    }
+
+    public int getFrequency(String word) {
+	if (frequencyTimer == null) {
+	    return this.lookUp(word);
+	}
+	long t = System.nanoTime();
+	int result = this.lookUp(word);
+	frequencyTimer.record(System.nanoTime() - t);
+
+	return result;
+    }
+
+    private int lookUp(String word) {
+	Segment segment = this.getSegment(word);
+	synchronized (segment) {
+	    Integer freq = segment.get(word);
+	    if (freq != null) {
+		segment.hits++;
+		return freq.intValue();
+	    }
+	    segment.misses++;
+	}
+
+	int result = index.getFrequency(word);
+	synchronized (segment) {
+	    segment.put(word, Integer.valueOf(result));
+	}
+
+	return result;
+    }
+
+    public ArrayList getSuffixPerplexity(String word, int suffixLen) {
+	if (perplexityTimer == null) {
+	    return index.getSuffixPerplexity(word, suffixLen);
+	}
+	long t = System.nanoTime();
+	ArrayList result = index.getSuffixPerplexity(word, suffixLen);
+	perplexityTimer.record(System.nanoTime() - t);
+
+	return result;
+    }
+
+    public int getSuccessorCount(String word) {
+	return index.getSuccessorCount(word);
+    }
+
+    public int getMaxSuccessorFrequency(String word) {
+	return index.getMaxSuccessorFrequency(word);
+    }
+
+    public ArrayList getNGrams(int n) {
+	return index.getNGrams(n);
+    }
+
+    public ArrayList[] getNGrams(int maxN, int minFreq) {
+	return index.getNGrams(maxN, minFreq);
+    }
+
+    public void visitNGrams(int maxN, int minFreq, NGramVisitor visitor) {
+	index.visitNGrams(maxN, minFreq, visitor);
+    }
+
+    public int getLangType() {
+	return index.getLangType();
+    }
+
+    public void freeze() {
+	index.freeze();
+    }
+
+    public boolean isFrozen() {
+	return index.isFrozen();
+    }
+
+    public void write(ImageWriter out) throws IOException {
+	index.write(out);
+    }
+
+    /**
+     * Returns the number of frequencies answered by the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+	long result = 0;
+
+	for (int i = 0; i < NUM_SEGMENTS; i++) {
+	    synchronized (segments[i]) {
+		result += segments[i].hits;
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the number of frequencies looked up in the index.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+	long result = 0;
+
+	for (int i = 0; i < NUM_SEGMENTS; i++) {
+	    synchronized (segments[i]) {
+		result += segments[i].misses;
+	    }
+	}
+
+	return result;
+    }
+}
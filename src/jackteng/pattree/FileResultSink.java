@@ -0,0 +1,95 @@
+package jackteng.pattree;
+
+import java.io.*;
+import jackteng.file.*;
+
+/**
+ * <p>Description: Writes the terms of each n to a file of its own, the prefix
+ *                 followed by n and "-gram.txt", a term and its frequency a
+ *                 line. The file of an n is opened on its first term and kept
+ *                 open behind a buffer until the sink is closed, so no file
+ *                 is made for an n without terms. The files left by an
+ *                 earlier run are deleted when the sink is created. The
+ *                 first file which cannot be written stops the writing, and
+ *                 its failure is thrown by close().</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class FileResultSink implements ResultSink {
+    private String prefix = null;
+    private BufferedWriter[] writers = null;
+    private IOException failure = null;          // the first one, thrown by close().
+
+    /**
+     * @param prefix the prefix of the file names.
+     * @param maxN the maximum number of characters (or words) of a term.
+     */
+    public FileResultSink(String prefix, int maxN) {
+	this.prefix = prefix;
+	this.writers = new BufferedWriter[maxN];
+
+	for (int n = 1; n <= maxN; n++) {
+	    FileHandler fh = this.getFile(n);
+	    if (fh.exists()) {
+		fh.delete();
+	    }
+	}
+    }
+
+    /**
+     * Returns the file the terms of n characters (or words) are written to.
+     *
+     * @param n the number of characters (or words).
+     * @return the file.
+     */
+    public FileHandler getFile(int n) {
+	return new FileHandler(prefix + n + "-gram.txt");
+    }
+
+    public void accept(int n, String term, int freq) {
+	if (failure != null) {
+	    return;
+	}
+	try {
+	    if (writers[n - 1] == null) {
+		writers[n - 1] = new BufferedWriter(new OutputStreamWriter(
+		    new FileOutputStream(this.getFile(n))));
+	    }
+	    writers[n - 1].write(term);
+	    writers[n - 1].write(' ');
+	    writers[n - 1].write(Integer.toString(freq));
+	    writers[n - 1].newLine();
+	} catch (IOException e) {
+	    failure = e;
+	}
+    }
+
+    /**
+     * Flushes and closes the files opened. Terms accepted afterwards open
+     * their files again, overwriting them.
+     *
+     * @throws IOException the first failure to write or to close a file
+     *         since the sink was created or last closed.
+     */
+    public void close() throws IOException {
+	for (int i = 0; i < writers.length; i++) {
+	    if (writers[i] != null) {
+		try {
+		    writers[i].close();
+		} catch (IOException e) {
+		    if (failure == null) {
+			failure = e;
+		    }
+		}
+		writers[i] = null;
+	    }
+	}
+	IOException result = failure;
+	failure = null;
+	if (result != null) {
+	    throw result;
+	}
+    }
+}
@@ -0,0 +1,24 @@
+package jackteng.pattree;
+
+/**
+ * <p>Description: Receives the n-grams an index enumerates, one at a time, as
+ *                 the enumeration finds them, so that they need not be
+ *                 collected into lists. The n-grams are passed from the
+ *                 thread which runs the enumeration, in the order of the
+ *                 index, not by frequency.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public interface NGramVisitor {
+
+    /**
+     * Receives an n-gram.
+     *
+     * @param n the number of characters (or words) of the n-gram.
+     * @param ngram the n-gram, as getNGrams(n) would list it.
+     * @param freq the frequency of the n-gram.
+     */
+    public void visit(int n, String ngram, int freq);
+}
@@ -1,7 +1,10 @@
 package jackteng.pattree;
 
 /**
- * <p>Description: The node of PAT-tree.</p>
+ * <p>Description: A snapshot of a node of PAT-tree. The nodes themselves are
+ *                 kept in the parallel arrays of <code>PATTree</code>; the
+ *                 children are therefore given as node indices rather than
+ *                 references.</p>
  * <p>Copyright: Copyright (c) 2003</p>
  * <p>Company: Institute of Information Science, Academia Sinica</p>
  * <p>Create Date: 2003/05/14</p>
@@ -10,18 +13,20 @@ package jackteng.pattree;
  * @version 1.0
  */
 public class PATNode implements java.io.Serializable {
+    public int index = 0;          // the index of the node in the tree.
     public int dataPos = 0;          // the real string.
     public int CB = 0;          // the comparison bit.
     public int freqOfExternalNodes = 1;          // total frequency of all external nodes.
     public int freq = 1;          // frequency.
-    public PATNode left = this;
-    public PATNode right = null;
+    public int left = 0;          // the index of the left child.
+    public int right = -1;          // the index of the right child, -1 if none.
 
     public PATNode() {
     }
 
-    public PATNode(int dataPos, int CB, int numExternalNodes, int freq,
-		   PATNode left, PATNode right) {
+    public PATNode(int index, int dataPos, int CB, int numExternalNodes,
+		   int freq, int left, int right) {
+	this.index = index;
 	this.dataPos = dataPos;
 	this.CB = CB;
 	this.freqOfExternalNodes = numExternalNodes;
@@ -2,6 +2,7 @@ package jackteng.pattree;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import jackteng.file.*;
 import jackteng.util.*;
 
@@ -14,7 +15,7 @@ import jackteng.util.*;
  * @author Jei-Wen Teng
  * @version 1.0
  */
-public class PATTermExtraction implements java.io.Serializable {
+public class PATTermExtraction {
 
     public final static int SCP = 0;        // Symmetric Conditional Probability.
     public final static int SCPCD = 1;      // SCP with Context Dependency.
@@ -22,28 +23,142 @@ public class PATTermExtraction implements java.io.Serializable {
     public final static int GMSCPCD = 3;    // Geometric Mean of SCP with Context Dependency.
     public final static int CD = 4;         // Context independency ratio.
 
+    public final static int PAT_TREE = 0;          // PAT-tree index.
+    public final static int SUFFIX_ARRAY = 1;          // suffix array index.
+
+    public final static int BY_FREQUENCY = 0;          // ranks the terms by frequency.
+    public final static int BY_GLUE = 1;          // ranks the terms by the association measure.
+
+    private final static int MAGIC = 0x50415445;          // "PATE".
+    private final static int VERSION = 5;
+    private final static int BATCH_SIZE = 1024;          // top-K candidates checked by a thread at a time.
+    private final static int FIRST_CANDIDATES = 8;          // times topK, the candidates kept by the first pass.
+    private final static int GLUE_CACHE_SIZE = 65536;          // the glues of all n kept by a top-K run.
+    private final static int BYTES_PER_SUFFIX = 96;          // the most a suffix of a part takes as its buffers and text grow.
+
     private int langType = Strings.ChineseLike;
-    private PATTree pattree = null;
-    private PATTree invpattree = null;
+    private int indexType = PAT_TREE;
+    private CharClassifier classifier = null;          // the legal characters of terms.
+    private CachedSuffixIndex pattree = null;
+    private CachedSuffixIndex invpattree = null;          // null if bidirectional, as all are but those of buildPruned().
+    private BidirectionalIndex bidirectional = null;          // the forward index, unless pruned by parts.
+    private Metrics metrics = null;          // null if nothing is measured.
+
+    private PATTermExtraction() { }
 
     public PATTermExtraction(String corpusDir, int langType) throws Exception {
+	this(corpusDir, langType, PAT_TREE);
+    }
+
+    /**
+     * Creates empty indexes, to which text is added by addFile() or add():
+     * a bidirectional index, made of a suffix array and, for PAT_TREE, a
+     * PAT-tree.
+     *
+     * @param langType the language type, either Chinese like or English like.
+     * @param indexType the index to be built, either PAT_TREE or SUFFIX_ARRAY.
+     */
+    public PATTermExtraction(int langType, int indexType) {
 	this.langType = langType;
-	pattree = new PATTree(langType);
-	invpattree = new PATTree(langType);
-	File f = new File(corpusDir);
+	this.indexType = indexType;
+	this.classifier = PATTermExtraction.getDefaultClassifier(langType);
+	SuffixArray sa = new SuffixArray(langType);
+	this.setIndexes(new BidirectionalIndex(
+	    ((indexType == SUFFIX_ARRAY) ? (SuffixIndex) sa : new PATTree(langType)),
+	    sa), null);
+    }
 
-	if (f.isDirectory()) {
-	    String[] files = f.list();
-	    for (int i = 0; i < files.length; i++) {
+    /**
+     * Builds the indexes of the corpus, using all available processors.
+     *
+     * @param corpusDir the corpus directory.
+     * @param langType the language type, either Chinese like or English like.
+     * @param indexType the index to be built, either PAT_TREE or SUFFIX_ARRAY.
+     */
+    public PATTermExtraction(String corpusDir, int langType, int indexType)
+	throws Exception {
+	this(corpusDir, langType, indexType,
+	     Runtime.getRuntime().availableProcessors());
+    }
 
-		System.out.println("Start to add file: " + files[i]);
-		long t = System.currentTimeMillis();
+    public PATTermExtraction(String corpusDir, int langType, int indexType,
+			     int numThreads) throws Exception {
+	this(corpusDir, langType, indexType, numThreads, "big5");
+    }
 
-		this.addFile(corpusDir + "/" + files[i]);
+    public PATTermExtraction(String corpusDir, int langType, int indexType,
+			     int numThreads, String charsetName)
+	throws Exception {
+	this(corpusDir, langType, indexType, numThreads, charsetName,
+	     PATTermExtraction.getDefaultClassifier(langType));
+    }
 
-		t = System.currentTimeMillis() - t;
-		System.out.println("Finish adding file: " + files[i] + " in " +
-				   ((double) t / 1000.0) + "sec.");
+    public PATTermExtraction(String corpusDir, int langType, int indexType,
+			     int numThreads, String charsetName,
+			     CharClassifier classifier) throws Exception {
+	this(corpusDir, langType, indexType, numThreads, charsetName,
+	     classifier, 0);
+    }
+
+    /**
+     * Builds the indexes of the corpus. Each file is added to suffix arrays of
+     * its own by one of numThreads threads, and these are merged in the order
+     * of the files, so the indexes do not depend on the number of threads.
+     * A PAT-tree is bulk-loaded from the merged suffix array at the end,
+     * sharing its text store. The suffix array is kept to answer the
+     * left-context queries, so no inverse index is built.
+     *
+     * @param corpusDir the corpus directory.
+     * @param langType the language type, either Chinese like or English like.
+     * @param indexType the index to be built, either PAT_TREE or SUFFIX_ARRAY.
+     * @param numThreads the number of threads.
+     * @param charsetName the encoding of the corpus files.
+     * @param classifier the legal characters of terms.
+     * @param maxKeyLen the maximum length of the keys of PAT-trees in
+     *        characters (or words), 0 if unbounded. Extracting n-grams of up
+     *        to maxN words with a window of windowSize needs keys of
+     *        maxN + windowSize + 1 words.
+     */
+    public PATTermExtraction(String corpusDir, int langType, int indexType,
+			     int numThreads, String charsetName,
+			     CharClassifier classifier, int maxKeyLen)
+	throws Exception {
+	this(corpusDir, langType, indexType, numThreads, charsetName,
+	     classifier, maxKeyLen, null);
+    }
+
+    /**
+     * Builds the indexes of the corpus as PATTermExtraction(corpusDir,
+     * langType, indexType, numThreads, charsetName, classifier, maxKeyLen)
+     * does, measuring the building and everything afterwards (see
+     * setMetrics()).
+     *
+     * @param metrics the metrics; null if nothing is measured.
+     */
+    public PATTermExtraction(String corpusDir, final int langType,
+			     int indexType, int numThreads,
+			     final String charsetName,
+			     final CharClassifier classifier, int maxKeyLen,
+			     final Metrics metrics)
+	throws Exception {
+	this.langType = langType;
+	this.indexType = indexType;
+	this.classifier = classifier;
+	File f = new File(corpusDir);
+
+	if (f.isDirectory()) {
+	    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+	    try {
+		SuffixArray forward =
+		    PATTermExtraction.addFiles(corpusDir, langType, pool, charsetName,
+					       classifier, metrics);
+		Future<SuffixIndex> fwd = pool.submit(PATTermExtraction.indexTask(forward, indexType,
+										  maxKeyLen));
+		this.setIndexes(new BidirectionalIndex(
+		    PATTermExtraction.waitFor(fwd), forward), null);
+		this.setMetrics(metrics);
+	    } finally {
+		pool.shutdown();
 	    }
 	} else {
 	    //System.out.println("Corpus directory does not exist!");
@@ -51,51 +166,618 @@ public class PATTermExtraction implements java.io.Serializable {
 	}
     }
 
-    public void addFile(String fileName) {
-	LineNumberReader lnr = null;
+    /**
+     * Adds each file of the corpus directory to a suffix array of its own by
+     * the threads of the pool, and merges these in the order of the files,
+     * so that the result does not depend on the number of threads. The
+     * suffixes are sorted when the suffix array is first queried.
+     *
+     * @return the suffix array.
+     */
+    private static SuffixArray addFiles(String corpusDir, final int langType,
+					ExecutorService pool,
+					final String charsetName,
+					final CharClassifier classifier,
+					final Metrics metrics)
+	throws Exception {
+	String[] files = new File(corpusDir).list();
+	List<Future<SuffixArray>> shards = new ArrayList<Future<SuffixArray>>();
+	for (int i = 0; i < files.length; i++) {
+	    final String name = files[i];
+	    final String fileName = corpusDir + "/" + files[i];
+	    shards.add(pool.submit(new Callable<SuffixArray>() {
+		public SuffixArray call() {
+		    SuffixArray result = new SuffixArray(langType);
+
+		    System.out.println("Start to add file: " + name);
+		    long t = System.currentTimeMillis();
+
+		    PATTermExtraction.addFile(fileName, charsetName,
+					      new Segmenter(langType, classifier,
+							    result, null, metrics));
+
+		    t = System.currentTimeMillis() - t;
+		    System.out.println("Finish adding file: " + name + " in " +
+				       ((double) t / 1000.0) + "sec.");
+		    return result;
+		}
+	    }));
+	}
+	SuffixArray result = new SuffixArray(langType);
+	for (int i = 0; i < shards.size(); i++) {
+	    result.merge(PATTermExtraction.waitFor(shards.get(i)));
+	    shards.set(i, null);
+	}
+
+	return result;
+    }
+
+    /**
+     * Builds a forward and an inverse PAT-tree index of the corpus pruned at
+     * minFreq, as if they were built whole and pruned by prune(), without
+     * ever building them whole or keeping the text of the corpus. The
+     * corpus is first read to count the suffixes of each index by their
+     * first characters. The characters are split in the order of their
+     * codes into parts of at most passSize suffixes, a character starting
+     * more making up a part of its own. The corpus is then read again for
+     * each part, by numThreads parts at once, into PAT-trees holding only
+     * the keys of the part (see PATTree.mergePart()), which are pruned at
+     * minFreq and merged into the indexes in the order of the parts. All
+     * the occurrences of a key belong to the part of its first character,
+     * so the frequencies and the successors of the words which occur at
+     * least minFreq times are exact. Those occurring less are pruned, so
+     * the glues of the MWUs compared with them (see isLocalMax()) are
+     * approximate, as those of prune() are.
+     * <p>
+     * The memory taken is bounded by BYTES_PER_SUFFIX bytes per suffix of
+     * the forward and inverse parts being built, and then by what the keys
+     * left by the pruning take (see PATTree), whatever the size of the
+     * corpus. Keys of bounded length keep little text; unbounded ones keep
+     * their data strings up to their ends.
+     *
+     * @param corpusDir the corpus directory.
+     * @param langType the language type, either Chinese like or English like.
+     * @param numThreads the number of threads.
+     * @param charsetName the encoding of the corpus files.
+     * @param classifier the legal characters of terms.
+     * @param maxKeyLen the maximum length of the keys in characters (or
+     *        words), 0 if unbounded.
+     * @param minFreq the minimum frequency of the n-grams kept.
+     * @param passSize the maximum number of suffixes of a part of each
+     *        index, unless one of its characters starts more.
+     * @param metrics the metrics; null if nothing is measured.
+     * @return the term extraction.
+     */
+    public static PATTermExtraction buildPruned(final String corpusDir,
+						final int langType,
+						int numThreads,
+						final String charsetName,
+						final CharClassifier classifier,
+						final int maxKeyLen,
+						final int minFreq, long passSize,
+						Metrics metrics)
+	throws Exception {
+	if (!new File(corpusDir).isDirectory()) {
+	    throw new Exception("Corpus directory does not exist!");
+	}
+	PATTermExtraction result = new PATTermExtraction();
+	result.langType = langType;
+	result.indexType = PAT_TREE;
+	result.classifier = classifier;
+
+	// counts the suffixes of the forward and the inverse indexes by their
+	// first characters, with PAT-trees which hold none of them.
+	final String[] files = new File(corpusDir).list();
+	long[][] counts = new long[2][];
+	PATTree[] counters = new PATTree[2];
+	for (int i = 0; i < 2; i++) {
+	    final long[] count = new long[Character.MAX_VALUE + 1];
+	    counts[i] = count;
+	    counters[i] = new PATTree(langType, maxKeyLen, new CharClassifier() {
+		public boolean isLegal(char c) {
+		    count[c]++;
+		    return false;
+		}
+	    });
+	}
+	Segmenter segmenter =
+	    new Segmenter(langType, classifier, counters[0], counters[1], metrics);
+	for (int i = 0; i < files.length; i++) {
+	    System.out.println("Start to add file: " + files[i]);
+	    long t = System.currentTimeMillis();
+
+	    PATTermExtraction.addFile(corpusDir + "/" + files[i], charsetName,
+				      segmenter);
+
+	    t = System.currentTimeMillis() - t;
+	    System.out.println("Finish adding file: " + files[i] + " in " +
+			       ((double) t / 1000.0) + "sec.");
+	}
+	final int[][] partOf = new int[2][];
+	int numParts = 0;
+	for (int i = 0; i < 2; i++) {
+	    partOf[i] = new int[Character.MAX_VALUE + 1];
+	    numParts = Math.max(numParts,
+				PATTermExtraction.split(counts[i], passSize, partOf[i]));
+	}
+	counts = null;
+
+	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
 	try {
-	//--------------------------------------------------
-	//     lnr = new LineNumberReader(new FileReader(fileName));
-	//-------------------------------------------------- 
-	    lnr = new LineNumberReader(new InputStreamReader(new FileInputStream(fileName), "big5"));
-	    for (String str = lnr.readLine(); str != null; str = lnr.readLine()) {
-		StringBuffer sb = new StringBuffer();
-		str = Strings.condenseSpace(str);
-
-		for (String temp = str; temp.length() > 0; temp = temp.substring(1)) {
-		    String word = temp.substring(0, 1);
-		//--------------------------------------------------
-		//     System.err.println(word + " " + word.length());
-		//-------------------------------------------------- 
-
-		    boolean isLegal = ((langType == Strings.ChineseLike) ?
-				       NGram.isChineseWord(word) :
-				       (NGram.isEnglishAlphabet(word)
-					|| word.equals(" ")));
-		    if (isLegal) {
-			sb.append(word);
-		    } else {
-			if (sb.length() > 0) {
-			    String term = sb.toString().trim();
-			    pattree.insert(term);
-			    invpattree.insert(Strings.inverse(term, langType));
+	    List<Future<PATTree[]>> parts = new ArrayList<Future<PATTree[]>>();
+	    for (int p = 0; p < numParts; p++) {
+		final int part = p;
+		final String name = (p + 1) + " of " + numParts;
+		parts.add(pool.submit(new Callable<PATTree[]>() {
+		    public PATTree[] call() {
+			System.out.println("Start to build part: " + name);
+			long t = System.currentTimeMillis();
+
+			PATTree[] result = new PATTree[2];
+			for (int i = 0; i < 2; i++) {
+			    final int[] of = partOf[i];
+			    result[i] = new PATTree(langType, maxKeyLen, new CharClassifier() {
+				public boolean isLegal(char c) {
+				    return (of[c] == part);
+				}
+			    });
+			}
+			Segmenter segmenter =
+			    new Segmenter(langType, classifier, result[0], result[1]);
+			for (int i = 0; i < files.length; i++) {
+			    PATTermExtraction.addFile(corpusDir + "/" + files[i],
+						      charsetName, segmenter);
 			}
-			sb = new StringBuffer();
+			result[0].prune(minFreq);
+			result[1].prune(minFreq);
+
+			t = System.currentTimeMillis() - t;
+			System.out.println("Finish building part: " + name + " in " +
+					   ((double) t / 1000.0) + "sec.");
+			return result;
 		    }
+		}));
+	    }
+	    PATTree forward = new PATTree(langType, maxKeyLen);
+	    PATTree inverse = new PATTree(langType, maxKeyLen);
+	    for (int p = 0; p < parts.size(); p++) {
+		PATTree[] part = PATTermExtraction.waitFor(parts.get(p));
+		parts.set(p, null);
+		forward.mergePart(part[0]);
+		inverse.mergePart(part[1]);
+	    }
+	    forward.trim();
+	    inverse.trim();
+	    result.setIndexes(forward, inverse);
+	    result.setMetrics(metrics);
+	} finally {
+	    pool.shutdown();
+	}
+
+	return result;
+    }
+
+    /**
+     * Splits the characters in the order of their codes into parts of at
+     * most passSize suffixes, a character starting more making up a part of
+     * its own.
+     *
+     * @param counts the number of suffixes of each character.
+     * @param partOf the part of each character, filled in.
+     * @return the number of parts.
+     */
+    private static int split(long[] counts, long passSize, int[] partOf) {
+	int result = 0;
+	long size = 0;
+
+	for (int c = 0; c < counts.length; c++) {
+	    if (counts[c] == 0) {
+		continue;
+	    }
+	    if ((result == 0) || ((size > 0) && (size + counts[c] > passSize))) {
+		result++;
+		size = 0;
+	    }
+	    partOf[c] = result - 1;
+	    size += counts[c];
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the number of suffixes of a part of buildPruned() which
+     * numThreads threads can build at once, forward and inverse, in a
+     * quarter of the maximum heap size, leaving the rest to the pruned
+     * indexes.
+     *
+     * @param numThreads the number of threads.
+     * @return the number of suffixes.
+     */
+    public static long getDefaultPassSize(int numThreads) {
+	return Math.max(1, Runtime.getRuntime().maxMemory() / 4 /
+			((long) Math.max(1, numThreads) * 2 * BYTES_PER_SUFFIX));
+    }
+
+    /**
+     * Returns a task which sorts the suffix array, or bulk-loads a PAT-tree
+     * of bounded keys from it sharing its text store, to make the index of
+     * the given type.
+     */
+    private static Callable<SuffixIndex> indexTask(final SuffixArray sa,
+						   final int indexType,
+						   final int maxKeyLen) {
+	return new Callable<SuffixIndex>() {
+	    public SuffixIndex call() {
+		if (indexType == PAT_TREE) {
+		    return PATTree.build(sa, maxKeyLen, true);
 		}
+		sa.size();
+		return sa;
+	    }
+	};
+    }
+
+    /**
+     * Waits for the result of a task, rethrowing what the task threw.
+     */
+    private static <T> T waitFor(Future<T> future) throws Exception {
+	try {
+	    return future.get();
+	} catch (ExecutionException ee) {
+	    Throwable cause = ee.getCause();
+	    if (cause instanceof Exception) {
+		throw ((Exception) cause);
+	    }
+	    throw ((Error) cause);
+	}
+    }
+
+    /**
+     * Puts a frequency cache in front of each of the indexes. The inverse
+     * index is null if the forward one is bidirectional.
+     */
+    private void setIndexes(SuffixIndex forward, SuffixIndex inverse) {
+	pattree = new CachedSuffixIndex(forward);
+	pattree.setMetrics(metrics);
+	if (inverse != null) {
+	    invpattree = new CachedSuffixIndex(inverse);
+	    invpattree.setMetrics(metrics);
+	} else {
+	    bidirectional = (BidirectionalIndex) forward;
+	}
+    }
+
+    /**
+     * Returns the indexes behind the caches, each once.
+     */
+    private List<SuffixIndex> getIndexes() {
+	List<SuffixIndex> result = new ArrayList<SuffixIndex>();
+	if (bidirectional != null) {
+	    result.add(bidirectional.getForwardIndex());
+	    if (bidirectional.getContextIndex() != bidirectional.getForwardIndex()) {
+		result.add(bidirectional.getContextIndex());
+	    }
+	} else {
+	    result.add(pattree.getIndex());
+	}
+	if (invpattree != null) {
+	    result.add(invpattree.getIndex());
+	}
+
+	return result;
+    }
+
+    private static SuffixIndex readIndex(int indexType, ImageReader in)
+	throws IOException {
+	if (indexType == SUFFIX_ARRAY) {
+	    return SuffixArray.read(in);
+	}
+	return PATTree.read(in);
+    }
+
+    /**
+     * Parses the name of an index type, either "PATTree" or "SuffixArray".
+     *
+     * @param name the name of the index type.
+     * @return the index type.
+     */
+    public static int parseIndexType(String name) {
+	if (name.equalsIgnoreCase("SuffixArray")) {
+	    return SUFFIX_ARRAY;
+	} else if (name.equalsIgnoreCase("PATTree")) {
+	    return PAT_TREE;
+	}
+	throw (new IllegalArgumentException("Unknown index type: " + name));
+    }
+
+    /**
+     * Parses the name of a ranking of terms: "freq" or "glue".
+     *
+     * @param name the name of the ranking.
+     * @return either BY_FREQUENCY or BY_GLUE.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static int parseRankBy(String name) {
+	if (name.equalsIgnoreCase("freq")) {
+	    return BY_FREQUENCY;
+	} else if (name.equalsIgnoreCase("glue")) {
+	    return BY_GLUE;
+	}
+	throw (new IllegalArgumentException("Unknown ranking: " + name));
+    }
+
+    /**
+     * Returns the classifier used by default for the given language type:
+     * the Chinese characters of Big5, or the English letters.
+     *
+     * @param langType the language type, either Chinese like or English like.
+     * @return the classifier.
+     */
+    public static CharClassifier getDefaultClassifier(int langType) {
+	return ((langType == Strings.ChineseLike) ?
+		(CharClassifier) CharTable.big5Chinese() :
+		(CharClassifier) CharTable.englishAlphabet());
+    }
+
+    /**
+     * Sets the legal characters of terms for the text added from now on.
+     * Spaces are always legal in English like text.
+     *
+     * @param classifier the classifier.
+     */
+    public void setClassifier(CharClassifier classifier) {
+	this.classifier = classifier;
+    }
+
+    public int getLangType() {
+	return this.langType;
+    }
+
+    public int getIndexType() {
+	return this.indexType;
+    }
+
+    /**
+     * Makes the forward and the inverse indexes read-only, so that they can be
+     * queried by several threads at once.
+     */
+    public void freeze() {
+	pattree.freeze();
+	if (invpattree != null) {
+	    invpattree.freeze();
+	}
+    }
+
+    /**
+     * Returns the maximum length of the keys of the forward index, 0 if they
+     * are unbounded or it is a suffix array.
+     *
+     * @return the maximum key length in characters (or words).
+     */
+    public int getMaxKeyLength() {
+	SuffixIndex forward = ((bidirectional != null) ?
+			       bidirectional.getForwardIndex() :
+			       pattree.getIndex());
+	return ((forward instanceof PATTree) ?
+		((PATTree) forward).getMaxKeyLength() : 0);
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the keys of the indexes are
+     * bounded below the given length.
+     */
+    private void checkKeyLength(int len) {
+	int maxKeyLen = this.getMaxKeyLength();
+	if ((maxKeyLen > 0) && (maxKeyLen < len)) {
+	    throw (new IllegalArgumentException(
+		"The index keys are bounded at " + maxKeyLen + ", " + len +
+		" needed"));
+	}
+    }
+
+    /**
+     * Prunes the PAT-tree indexes at the given frequency, which leaves them
+     * little more than the n-grams extract() can extract with that minimum
+     * frequency, their frequencies and successors exact (see
+     * PATTree.prune()). Suffix arrays are not pruned. A pruned index can be
+     * neither added to nor merged. The indexes are built whole first;
+     * buildPruned() builds them pruned without.
+     *
+     * @param minFreq the minimum frequency of the n-grams kept.
+     */
+    public void prune(int minFreq) {
+	SuffixIndex forward = pattree.getIndex();
+	SuffixIndex inverse = ((invpattree != null) ? invpattree.getIndex() : null);
+	SuffixIndex[] indexes = new SuffixIndex[] {
+	    ((bidirectional != null) ? bidirectional.getForwardIndex() : forward),
+	    inverse
+	};
+	for (int i = 0; i < indexes.length; i++) {
+	    if (indexes[i] instanceof PATTree) {
+		((PATTree) indexes[i]).prune(minFreq);
+	    }
+	}
+	// the caches may hold the frequencies pruned.
+	this.setIndexes(forward, inverse);
+    }
 
-		if (sb.length() > 0) {
-		    String term = sb.toString().trim();
-		    pattree.insert(term);
-		    invpattree.insert(Strings.inverse(term, langType));
+    /**
+     * Measures the text added and the queries and the extractions run from
+     * now on. The text is counted in the ingest.chars, ingest.segments and
+     * ingest.suffixes counters, the frequency lookups and the suffix
+     * perplexity queries are timed in the query.frequency and
+     * query.suffixPerplexity timers, and the candidates of each n checked by
+     * extract() and found to be terms are counted in extract.n&lt;n&gt;.candidates
+     * and extract.n&lt;n&gt;.accepted, before any top-K cut. The index.nodes,
+     * index.textBytes, cache.hits and cache.misses gauges read the sizes of
+     * the indexes and the counts of the caches, replacing those of another
+     * term extraction measured by the same metrics.
+     *
+     * @param metrics the metrics; null to measure nothing.
+     */
+    public void setMetrics(Metrics metrics) {
+	this.metrics = metrics;
+	pattree.setMetrics(metrics);
+	if (invpattree != null) {
+	    invpattree.setMetrics(metrics);
+	}
+	if (metrics == null) {
+	    return;
+	}
+
+	metrics.gauge("index.nodes", new Metrics.Gauge() {
+	    public long getValue() {
+		long result = 0;
+		for (SuffixIndex index: PATTermExtraction.this.getIndexes()) {
+		    if (index instanceof PATTree) {
+			result += ((PATTree) index).size();
+		    }
 		}
+		return result;
 	    }
+	});
+	metrics.gauge("index.textBytes", new Metrics.Gauge() {
+	    public long getValue() {
+		long result = 0;
+		// a text store shared by two indexes is counted once.
+		Map<TextStore, Boolean> counted = new IdentityHashMap<TextStore, Boolean>();
+		for (SuffixIndex index: PATTermExtraction.this.getIndexes()) {
+		    TextStore text = ((index instanceof PATTree) ?
+				      ((PATTree) index).getText() :
+				      ((SuffixArray) index).getText());
+		    if (counted.put(text, Boolean.TRUE) == null) {
+			result += text.getByteSize();
+		    }
+		}
+		return result;
+	    }
+	});
+	metrics.gauge("cache.hits", new Metrics.Gauge() {
+	    public long getValue() {
+		return PATTermExtraction.this.getCacheHits();
+	    }
+	});
+	metrics.gauge("cache.misses", new Metrics.Gauge() {
+	    public long getValue() {
+		return PATTermExtraction.this.getCacheMisses();
+	    }
+	});
+    }
+
+    public Metrics getMetrics() {
+	return this.metrics;
+    }
+
+    /**
+     * Returns the number of frequencies answered by the caches of the
+     * indexes.
+     *
+     * @return the number of cache hits.
+     */
+    public long getCacheHits() {
+	return (pattree.getHits() +
+		((invpattree != null) ? invpattree.getHits() : 0));
+    }
+
+    /**
+     * Returns the number of frequencies looked up in the indexes themselves.
+     *
+     * @return the number of cache misses.
+     */
+    public long getCacheMisses() {
+	return (pattree.getMisses() +
+		((invpattree != null) ? invpattree.getMisses() : 0));
+    }
+
+    /**
+     * Merges the forward and the inverse indexes of another term extraction
+     * into this one, as if its corpus were added to this one. Both must use
+     * the same language and index types. The indexes of buildPruned(), the
+     * only ones with an inverse index, are pruned and cannot be merged.
+     *
+     * @param other the term extraction to be merged.
+     */
+    public void merge(PATTermExtraction other) {
+	if ((other.langType != this.langType) ||
+	    (other.indexType != this.indexType)) {
+	    throw (new IllegalArgumentException(
+		"Different language or index types"));
+	}
+	if ((this.invpattree != null) || (other.invpattree != null)) {
+	    throw (new IllegalStateException("A pruned index cannot be merged"));
+	}
+	pattree.merge(other.pattree);
+    }
+
+    public void addFile(String fileName) {
+	this.addFile(fileName, "big5");
+    }
+
+    /**
+     * Adds the terms of a file to the indexes.
+     *
+     * @param fileName the file name.
+     * @param charsetName the encoding of the file.
+     */
+    public void addFile(String fileName, String charsetName) {
+	PATTermExtraction.addFile(fileName, charsetName, this.newSegmenter());
+    }
+
+    /**
+     * Adds the terms read from a stream. The stream is not closed.
+     *
+     * @param in the input stream.
+     * @param charsetName the encoding of the stream.
+     */
+    public void add(InputStream in, String charsetName) throws IOException {
+	this.add(new InputStreamReader(in, charsetName));
+    }
+
+    /**
+     * Adds the terms read from a reader, line by line. The reader is not
+     * closed.
+     *
+     * @param reader the reader.
+     */
+    public void add(Reader reader) throws IOException {
+	this.newSegmenter().add(reader);
+    }
+
+    /**
+     * Adds the terms of text blocks. A block may hold several lines, which
+     * are split as a reader would split them.
+     *
+     * @param texts the text blocks.
+     */
+    public void add(Iterator<? extends CharSequence> texts) {
+	Segmenter segmenter = this.newSegmenter();
+
+	while (texts.hasNext()) {
+	    segmenter.add(texts.next());
+	}
+    }
+
+    private Segmenter newSegmenter() {
+	return new Segmenter(this.langType, this.classifier, pattree, invpattree,
+			     metrics);
+    }
+
+    private static void addFile(String fileName, String charsetName,
+				Segmenter segmenter) {
+	Reader reader = null;
+	try {
+	//--------------------------------------------------
+	//     lnr = new LineNumberReader(new FileReader(fileName));
+	//-------------------------------------------------- 
+	    reader = new InputStreamReader(new FileInputStream(fileName), charsetName);
+	    segmenter.add(reader);
 	} catch (IOException ioe) {
 	    ioe.printStackTrace();
 	} finally {
-	    if (lnr != null) {
+	    if (reader != null) {
 		try {
-		    lnr.close();
+		    reader.close();
 		} catch (IOException ioe) {
 		    ioe.printStackTrace();
 		}
@@ -103,6 +785,41 @@ public class PATTermExtraction implements java.io.Serializable {
 	}
     }
 
+    /**
+     * Returns the distinct strings of k characters (or words) which precede
+     * the n-gram, sorted by ascending frequency, from the bidirectional index
+     * or from the inverse one.
+     */
+    private ArrayList getPrefixPerplexity(String ngram, int k) {
+	if (bidirectional != null) {
+	    return bidirectional.getPrefixPerplexity(ngram, k);
+	}
+
+	ArrayList result = invpattree.getSuffixPerplexity(
+	    Strings.inverse(ngram, this.langType), k);
+	for (int i = 0; i < result.size(); i++) {
+	    SuffixPerplexity sp = (SuffixPerplexity) result.get(i);
+	    sp.suffix = Strings.inverse(sp.suffix, this.langType);
+	}
+
+	return result;
+    }
+
+    private int getPredecessorCount(String ngram) {
+	if (bidirectional != null) {
+	    return bidirectional.getPredecessorCount(ngram);
+	}
+	return invpattree.getSuccessorCount(Strings.inverse(ngram, this.langType));
+    }
+
+    private int getMaxPredecessorFrequency(String ngram) {
+	if (bidirectional != null) {
+	    return bidirectional.getMaxPredecessorFrequency(ngram);
+	}
+	return invpattree.getMaxSuccessorFrequency(
+	    Strings.inverse(ngram, this.langType));
+    }
+
     /**
      * Calculates fair dispersion point normalization (FDPN) denominator value.
      *
@@ -185,11 +902,10 @@ public class PATTermExtraction implements java.io.Serializable {
 	double result = 0.0;
 
 	double freq = pattree.getFrequency(ngram);
-	ArrayList rc = pattree.getSuffixPerplexity(ngram, 1);
-	ArrayList lc = invpattree.getSuffixPerplexity(
-	    Strings.inverse(ngram, langType), 1);
-	double RC = ((rc.size() == 0) ? freq : rc.size());
-	double LC = ((lc.size() == 0) ? freq : lc.size());
+	int rc = pattree.getSuccessorCount(ngram);
+	int lc = this.getPredecessorCount(ngram);
+	double RC = ((rc == 0) ? freq : rc);
+	double LC = ((lc == 0) ? freq : lc);
 	double pxy = RC * LC;
 	double avp = this.Avp(ngram, langType);
 	result = pxy * pxy / avp;
@@ -212,11 +928,10 @@ public class PATTermExtraction implements java.io.Serializable {
 	double result = 0.0;
 
 	double freq = pattree.getFrequency(ngram);
-	ArrayList rc = pattree.getSuffixPerplexity(ngram, 1);
-	ArrayList lc = invpattree.getSuffixPerplexity(
-	    Strings.inverse(ngram, langType), 1);
-	double RC = ((rc.size() == 0) ? freq : rc.size());
-	double LC = ((lc.size() == 0) ? freq : lc.size());
+	int rc = pattree.getSuccessorCount(ngram);
+	int lc = this.getPredecessorCount(ngram);
+	double RC = ((rc == 0) ? freq : rc);
+	double LC = ((lc == 0) ? freq : lc);
 	result = (RC * LC) / (freq * freq);
 
 	return result;
@@ -276,11 +991,10 @@ public class PATTermExtraction implements java.io.Serializable {
 	    gm *= (px * py);
 	}
 	gm = Math.pow(gm, 1.0 / ((double) (n - 1)));
-	ArrayList rc = pattree.getSuffixPerplexity(ngram, 1);
-	ArrayList lc = invpattree.getSuffixPerplexity(
-	    Strings.inverse(ngram, langType), 1);
-	double RC = ((rc.size() == 0) ? freq : rc.size());
-	double LC = ((lc.size() == 0) ? freq : lc.size());
+	int rc = pattree.getSuccessorCount(ngram);
+	int lc = this.getPredecessorCount(ngram);
+	double RC = ((rc == 0) ? freq : rc);
+	double LC = ((lc == 0) ? freq : lc);
 	double pxy = RC * LC;
 	result = pxy / gm;
 
@@ -319,19 +1033,56 @@ public class PATTermExtraction implements java.io.Serializable {
     }
 
     public Map[] extract(int maxN, int minFreq, int kind, double freqRatio,
-			 String fileName) {
-	//--------------------------------------------------
-	// Map[] result = new HashMap[maxN];
-	//-------------------------------------------------- 
-	FileHandler[] fh = null;
+			 String fileName)
+	throws IOException {
+	return this.extract(maxN, minFreq, kind, freqRatio, fileName, 0);
+    }
 
+    /**
+     * Extracts the topK most frequent terms of each n as extract(maxN,
+     * minFreq, kind, freqRatio, fileName) does. The candidates are checked as
+     * passes over the index find them, the most frequent ones first, and the
+     * terms are offered to a bounded heap of each n, so neither the
+     * candidates nor the terms below the topK are kept; once a heap is full,
+     * the candidates which could not enter it are not checked. Of terms of
+     * equal frequency, the one the index enumerates first ranks higher. The
+     * maps iterate in the order of the ranks. With topK 0 all the candidates
+     * are checked in one pass, and only the terms are kept.
+     *
+     * @param topK the number of terms of each n kept, 0 for all.
+     * @throws IOException if an output file cannot be written.
+     */
+    public Map[] extract(int maxN, int minFreq, int kind, double freqRatio,
+			 String fileName, int topK)
+	throws IOException {
+	FileResultSink sink = null;
 	if (fileName != null) {
-	    fh = new FileHandler[maxN];
-	    for (int j = 0; j < maxN; j++) {
-		fh[j] = new FileHandler(fileName + "_" + (j + 1) + "-gram.txt");
-		if (fh[j].exists()) fh[j].delete();
+	    sink = new FileResultSink(fileName + "_", maxN);
+	}
+	try {
+	    return this.extract(maxN, minFreq, kind, freqRatio, topK, sink);
+	} finally {
+	    if (sink != null) {
+		sink.close();
 	    }
 	}
+    }
+
+    /**
+     * Extracts the topK most frequent terms of each n as extract(maxN,
+     * minFreq, kind, freqRatio, fileName, topK) does, passing each term to a
+     * sink as it is found instead of writing it to a file.
+     *
+     * @param topK the number of terms of each n kept, 0 for all.
+     * @param sink the sink of the terms; <code>null</code> if none. It is
+     *             not closed.
+     */
+    public Map[] extract(int maxN, int minFreq, int kind, double freqRatio,
+			 int topK, ResultSink sink) {
+	//--------------------------------------------------
+	// Map[] result = new HashMap[maxN];
+	//-------------------------------------------------- 
+	this.checkKeyLength(maxN + 1);
 
 	//--------------------------------------------------
 	// for (int j = 0; j < maxN; j++) {
@@ -342,40 +1093,267 @@ public class PATTermExtraction implements java.io.Serializable {
 	Map<String, Integer>[] result = (HashMap<String, Integer>[]) 
 	    java.lang.reflect.Array.newInstance(new HashMap<String, Integer>().getClass(), maxN);
 
-	for (int j = 0; j < maxN; ++j) result[j] = new HashMap<String, Integer>();
-
-	String word = "";
-	for (int i = 2; i <= maxN; i++) {
-	    ArrayList sps = pattree.getSuffixPerplexity(word, i);
-	    for (int j = (sps.size() - 1); j >= 0; j--) {
-		SuffixPerplexity sp = (SuffixPerplexity) sps.get(j);
-		String ngram = sp.suffix.trim();
-		if (sp.freq >= minFreq) {
-		    ArrayList rc = pattree.getSuffixPerplexity(ngram, 1);
-		    ArrayList lc = invpattree.getSuffixPerplexity(
-			Strings.inverse(ngram, this.langType), 1);
-		    double rfreq = ((rc.size() > 0) ?
-				    ((SuffixPerplexity) rc.get(rc.size() - 1)).freq :
-				    0.0);
-		    double lfreq = ((lc.size() > 0) ?
-				    ((SuffixPerplexity) lc.get(lc.size() - 1)).freq :
-				    0.0);
-		    double rratio = rfreq / ((double) sp.freq);
-		    double lratio = lfreq / ((double) sp.freq);
-		    if (((rc.size() >= kind) || (rc.size() == 0)) &&
-			((lc.size() >= kind) || (lc.size() == 0)) &&
-			((rratio <= freqRatio) || (rratio == 0)) &&
-			((lratio <= freqRatio) || (lratio == 0))) {
-			result[i - 1].put(ngram, new Integer(sp.freq));
-			if (fh != null) {
-			    fh[i - 1].println(ngram + " " + sp.freq, true);
-			}
+	for (int j = 0; j < maxN; ++j)
+	    result[j] = (topK > 0) ? new LinkedHashMap<String, Integer>() : new HashMap<String, Integer>();
+
+	ChienTopK topKs = new ChienTopK(maxN, topK, kind, freqRatio);
+	topKs.run(minFreq);
+	topKs.finish(result, sink);
+
+	return result;
+    }
+
+    /**
+     * Tests if the n-gram has at least kind distinct successors and
+     * predecessors, none of which follows (or precedes) it in more than
+     * freqRatio of its occurrences. An n-gram which is never followed (or
+     * preceded) passes that side.
+     */
+    private boolean isTerm(String ngram, int freq, int kind, double freqRatio) {
+	int rc = pattree.getSuccessorCount(ngram);
+	int lc = this.getPredecessorCount(ngram);
+	double rfreq = pattree.getMaxSuccessorFrequency(ngram);
+	double lfreq = this.getMaxPredecessorFrequency(ngram);
+	double rratio = rfreq / ((double) freq);
+	double lratio = lfreq / ((double) freq);
+
+	return (((rc >= kind) || (rc == 0)) &&
+		((lc >= kind) || (lc == 0)) &&
+		((rratio <= freqRatio) || (rratio == 0)) &&
+		((lratio <= freqRatio) || (lratio == 0)));
+    }
+
+    /**
+     * Collects the topK terms of each n from the candidates visitNGrams()
+     * passes it, those of the current band of frequencies of their n. The
+     * candidates are checked by add(), at once or in batches, and the terms
+     * are offered to a bounded heap of each n. With topK 0 all the terms are
+     * kept, from all the candidates of a single pass.
+     */
+    private abstract class TopK implements NGramVisitor {
+	protected int rankBy = BY_FREQUENCY;
+	private BoundedHeap<SuffixPerplexity>[] heaps = null;          // null if all are kept.
+	private List<SuffixPerplexity>[] all = null;          // the terms of each n if all are kept.
+	protected Metrics.Counter[] candidates = null;
+	protected Metrics.Counter[] accepted = null;
+	private int[] lowFreq = null;          // the band of each n, from lowFreq
+	private int[] highFreq = null;          // up to highFreq, exclusive.
+
+	@SuppressWarnings({"unchecked"})
+	public TopK(int maxN, int topK, int rankBy) {
+	    this.rankBy = rankBy;
+	    if (topK > 0) {
+		this.heaps = (BoundedHeap<SuffixPerplexity>[]) new BoundedHeap[maxN];
+	    } else {
+		this.all = (List<SuffixPerplexity>[]) new List[maxN];
+	    }
+	    this.candidates = new Metrics.Counter[maxN];
+	    this.accepted = new Metrics.Counter[maxN];
+	    this.lowFreq = new int[maxN];
+	    this.highFreq = new int[maxN];
+	    Arrays.fill(highFreq, Integer.MAX_VALUE);
+	    for (int i = 2; i <= maxN; i++) {
+		if (heaps != null) {
+		    heaps[i - 1] = new BoundedHeap<SuffixPerplexity>(topK);
+		} else {
+		    all[i - 1] = new ArrayList<SuffixPerplexity>();
+		}
+		if (metrics != null) {
+		    candidates[i - 1] = metrics.counter("extract.n" + i + ".candidates");
+		    accepted[i - 1] = metrics.counter("extract.n" + i + ".accepted");
+		}
+	    }
+	}
+
+	/**
+	 * Checks the candidates whose frequency is at least minFreq: all of
+	 * them in one pass if all the terms are kept or they are ranked by
+	 * glue, or else the most
+	 * frequent ones first. The first pass counts the candidates of each n
+	 * by frequency and keeps the FIRST_CANDIDATES * topK most frequent ones,
+	 * which are checked in rounds, the most frequent round first. The
+	 * candidates beyond them, if the heap of their n is not full yet, are
+	 * checked band by band in passes of their own. A round or a band holds
+	 * about as many candidates as have been checked before it, and at least
+	 * topK.
+	 */
+	@SuppressWarnings({"unchecked"})
+	public void run(int minFreq) {
+	    int maxN = candidates.length;
+	    if ((heaps == null) || (rankBy == BY_GLUE)) {
+		pattree.visitNGrams(maxN, minFreq, this);
+		this.check();
+		return;
+	    }
+
+	    final TreeMap<Integer, Integer>[] counts =
+		(TreeMap<Integer, Integer>[]) new TreeMap[maxN];
+	    final BoundedHeap<SuffixPerplexity>[] firsts =
+		(BoundedHeap<SuffixPerplexity>[]) new BoundedHeap[maxN];
+	    for (int i = 2; i <= maxN; i++) {
+		counts[i - 1] = new TreeMap<Integer, Integer>();
+		firsts[i - 1] = new BoundedHeap<SuffixPerplexity>(
+		    FIRST_CANDIDATES * heaps[i - 1].capacity());
+	    }
+	    pattree.visitNGrams(maxN, minFreq, new NGramVisitor() {
+		public void visit(int n, String ngram, int freq) {
+		    if (n < 2) {
+			return;
+		    }
+		    Integer key = Integer.valueOf(freq);
+		    Integer count = counts[n - 1].get(key);
+		    counts[n - 1].put(key, Integer.valueOf(
+			(count == null) ? 1 : (count.intValue() + 1)));
+		    if (firsts[n - 1].accepts(freq)) {
+			firsts[n - 1].offer(new SuffixPerplexity(ngram, freq), freq);
 		    }
 		}
+	    });
+
+	    // the candidates of the lowest frequency kept may have been cut
+	    // off, if the first ones were too many, so they are left to the
+	    // bands.
+	    List<SuffixPerplexity>[] lists = (List<SuffixPerplexity>[]) new List[maxN];
+	    long[] checked = new long[maxN];
+	    for (int i = 2; i <= maxN; i++) {
+		lists[i - 1] = firsts[i - 1].toList();
+		if (firsts[i - 1].isFull()) {
+		    int size = lists[i - 1].size();
+		    int low = lists[i - 1].get(size - 1).freq;
+		    while ((size > 0) && (lists[i - 1].get(size - 1).freq == low)) {
+			size--;
+		    }
+		    lists[i - 1] = lists[i - 1].subList(0, size);
+		    counts[i - 1].tailMap(Integer.valueOf(low + 1)).clear();
+		    lowFreq[i - 1] = low + 1;
+		} else {
+		    counts[i - 1].clear();
+		}
+	    }
+	    for (boolean more = true; more; ) {
+		more = false;
+		for (int i = 2; i <= maxN; i++) {
+		    int from = (int) checked[i - 1];
+		    int to = (int) Math.min(lists[i - 1].size(),
+					    from + Math.max(heaps[i - 1].capacity(), from));
+		    for (int j = from; (j < to) && heaps[i - 1].accepts(lists[i - 1].get(j).freq); j++) {
+			this.add(i, lists[i - 1].get(j));
+			more = true;
+		    }
+		    checked[i - 1] = to;
+		}
+		this.check();
+	    }
+
+	    for (boolean more = true; more; ) {
+		more = false;
+		for (int i = 2; i <= maxN; i++) {
+		    highFreq[i - 1] = lowFreq[i - 1];
+		    if (heaps[i - 1].isFull() || counts[i - 1].isEmpty()) {
+			continue;
+		    }
+		    long size = Math.max(heaps[i - 1].capacity(), checked[i - 1]);
+		    for (long n = 0; (n < size) && !counts[i - 1].isEmpty(); ) {
+			Map.Entry<Integer, Integer> entry = counts[i - 1].pollLastEntry();
+			lowFreq[i - 1] = entry.getKey().intValue();
+			n += entry.getValue().intValue();
+			checked[i - 1] += entry.getValue().intValue();
+		    }
+		    more = true;
+		}
+		if (more) {
+		    pattree.visitNGrams(maxN, minFreq, this);
+		    this.check();
+		}
 	    }
 	}
 
-	return result;
+	public void visit(int n, String ngram, int freq) {
+	    if ((n >= 2) && (freq >= lowFreq[n - 1]) && (freq < highFreq[n - 1]) &&
+		((heaps == null) || (rankBy != BY_FREQUENCY) || heaps[n - 1].accepts(freq))) {
+		this.add(n, new SuffixPerplexity(ngram, freq));
+	    }
+	}
+
+	/**
+	 * Checks a candidate, or adds it to those checked by the next call of
+	 * check().
+	 */
+	protected abstract void add(int n, SuffixPerplexity sp);
+
+	/**
+	 * Checks the candidates added but not checked yet.
+	 */
+	protected abstract void check();
+
+	/**
+	 * Keeps a term of n, or offers it to the heap of n.
+	 *
+	 * @param rank the score the heap ranks the term by.
+	 */
+	protected void accept(int n, SuffixPerplexity sp, double rank) {
+	    if (heaps != null) {
+		heaps[n - 1].offer(sp, rank);
+	    } else {
+		all[n - 1].add(sp);
+	    }
+	    if (accepted[n - 1] != null) {
+		accepted[n - 1].increment();
+	    }
+	}
+
+	/**
+	 * Puts the terms kept into the result, from the highest ranking one of
+	 * each n down, or if all are kept, from the most frequent one down and
+	 * of equal frequencies the one enumerated last first.
+	 */
+	public void finish(Map<String, Integer>[] result, ResultSink sink) {
+	    for (int i = 2; i <= candidates.length; i++) {
+		List<SuffixPerplexity> terms = null;
+		if (heaps != null) {
+		    terms = heaps[i - 1].toList();
+		} else {
+		    terms = all[i - 1];
+		    all[i - 1] = null;
+		    Collections.sort(terms, SuffixPerplexity.FREQ_ORDER);
+		    Collections.reverse(terms);
+		}
+		for (int j = 0; j < terms.size(); j++) {
+		    SuffixPerplexity sp = terms.get(j);
+		    result[i - 1].put(sp.suffix, Integer.valueOf(sp.freq));
+		    if (sink != null) {
+			sink.accept(i, sp.suffix, sp.freq);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Collects the topK most frequent terms of each n, or all of them,
+     * checking each candidate as it is added.
+     */
+    private class ChienTopK extends TopK {
+	private int kind = 0;
+	private double freqRatio = 0.0;
+
+	public ChienTopK(int maxN, int topK, int kind, double freqRatio) {
+	    super(maxN, topK, BY_FREQUENCY);
+	    this.kind = kind;
+	    this.freqRatio = freqRatio;
+	}
+
+	protected void add(int n, SuffixPerplexity sp) {
+	    String ngram = sp.suffix.trim();
+	    if (candidates[n - 1] != null) {
+		candidates[n - 1].increment();
+	    }
+	    if (PATTermExtraction.this.isTerm(ngram, sp.freq, kind, freqRatio)) {
+		this.accept(n, new SuffixPerplexity(ngram, sp.freq), sp.freq);
+	    }
+	}
+
+	protected void check() { }
     }
 
     /**
@@ -391,23 +1369,96 @@ public class PATTermExtraction implements java.io.Serializable {
      * @return the map of the MWUs.
      */
     public Map[] extract(int associationMeasure, int minFreq, int maxN,
-			 int windowSize, String fileName) {
-	//--------------------------------------------------
-	// Map[] result = new HashMap[maxN];
-	//-------------------------------------------------- 
-	FileHandler[] fh = null;
+			 int windowSize, String fileName)
+	throws IOException {
+	return this.extract(associationMeasure, minFreq, maxN, windowSize,
+			    fileName, 1);
+    }
 
+    /**
+     * Extracts multi-word units (MWUs) as extract(associationMeasure, minFreq,
+     * maxN, windowSize, fileName) does, checking the candidates on numThreads
+     * threads in batches as a pass over the index finds them, so that only
+     * the MWUs are kept (see extract(associationMeasure, minFreq, maxN,
+     * windowSize, fileName, numThreads, topK, rankBy)). The candidates of a
+     * batch are split into chunks whose MWUs are collected in the order of
+     * the chunks, so the result and the output files do not depend on the
+     * number of threads. With more than one thread the indexes are frozen
+     * first: no text can be added afterwards.
+     *
+     * @param associationMeasure the association measure to be used.
+     * @param minFreq the minimum frequency of a MWU.
+     * @param maxN the maximum number of words of a MWU.
+     * @param windowSize the comparison distance of localmaxs.
+     * @param fileName the output file name; <code>null</code> if no output file
+     *                 is required.
+     * @param numThreads the number of threads.
+     * @return the map of the MWUs.
+     */
+    public Map[] extract(int associationMeasure, int minFreq, int maxN,
+			 int windowSize, String fileName, int numThreads)
+	throws IOException {
+	return this.extract(associationMeasure, minFreq, maxN, windowSize,
+			    fileName, numThreads, 0, BY_FREQUENCY);
+    }
+
+    /**
+     * Extracts the topK MWUs of each n as extract(associationMeasure,
+     * minFreq, maxN, windowSize, fileName, numThreads) does, ranked by
+     * frequency or by glue. The candidates are checked in batches as a pass
+     * over the index finds them, and the MWUs are offered to a bounded heap
+     * of each n, so the memory taken stays that of the heaps, of one batch
+     * and of a count of the candidates by frequency however large the corpus
+     * is: neither the candidates nor all their glues are kept. Ranked by
+     * frequency, the candidates are checked in bands of frequencies, the
+     * most frequent band first and each band in a pass of its own, and the
+     * checks of each n stop once its heap is full. Of MWUs ranked equal, the
+     * one the index enumerates first ranks higher. The maps iterate in the
+     * order of the ranks.
+     *
+     * @param topK the number of MWUs of each n kept, 0 for all.
+     * @param rankBy either BY_FREQUENCY or BY_GLUE.
+     * @throws IOException if an output file cannot be written.
+     */
+    public Map[] extract(int associationMeasure, int minFreq, int maxN,
+			 int windowSize, String fileName, int numThreads,
+			 int topK, int rankBy)
+	throws IOException {
+	FileResultSink sink = null;
 	if (fileName != null) {
-	    fh = new FileHandler[maxN];
-	    for (int j = 0; j < maxN; j++) {
-		fh[j] = new FileHandler(fileName + "_localmaxs_" + associationMeasure +
-					"_" + windowSize + "_" + (j + 1) +
-					"-gram.txt");
-		if (fh[j].exists()) {
-		    fh[j].delete();
-		}
+	    sink = new FileResultSink(fileName + "_localmaxs_" + associationMeasure +
+				      "_" + windowSize + "_", maxN);
+	}
+	try {
+	    return this.extract(associationMeasure, minFreq, maxN, windowSize,
+				numThreads, topK, rankBy, sink);
+	} finally {
+	    if (sink != null) {
+		sink.close();
 	    }
 	}
+    }
+
+    /**
+     * Extracts the topK MWUs of each n as extract(associationMeasure,
+     * minFreq, maxN, windowSize, fileName, numThreads, topK, rankBy) does,
+     * passing each MWU to a sink as it enters the result instead of writing
+     * it to a file. The sink is called from this thread only.
+     *
+     * @param topK the number of MWUs of each n kept, 0 for all.
+     * @param rankBy either BY_FREQUENCY or BY_GLUE.
+     * @param sink the sink of the MWUs; <code>null</code> if none. It is not
+     *             closed.
+     */
+    public Map[] extract(final int associationMeasure, final int minFreq,
+			 int maxN, final int windowSize, int numThreads,
+			 int topK, int rankBy, ResultSink sink) {
+	//--------------------------------------------------
+	// Map[] result = new HashMap[maxN];
+	//-------------------------------------------------- 
+	// the longest strings compared are extended by windowSize words, and
+	// the measures look at their successors.
+	this.checkKeyLength(maxN + windowSize + 1);
 
 	//--------------------------------------------------
 	// for (int j = 0; j < maxN; j++) {
@@ -418,59 +1469,289 @@ public class PATTermExtraction implements java.io.Serializable {
 	Map<String, Integer>[] result = (Map<String, Integer>[]) 
 	    java.lang.reflect.Array.newInstance(new HashMap<String, Integer>().getClass(), maxN);
 
-	String word = "";
-	for (int i = 2; i <= maxN; i++) {
-	    ArrayList sps = pattree.getSuffixPerplexity(word, i);
-	    for (int j = (sps.size() - 1); j >= 0; j--) {
-		SuffixPerplexity sp = (SuffixPerplexity) sps.get(j);
-		boolean isMWU = true;
-		String ngram = sp.suffix;
-		if (sp.freq >= minFreq) {
-		    double g = this.glue(ngram, associationMeasure, this.langType);
-		    if (i >= 3) {
-			String[] antStrs = Strings.getAnt(ngram, langType);
-			if ((g<this.glue(antStrs[0], associationMeasure, this.langType)) ||
-			    (g<this.glue(antStrs[1], associationMeasure, this.langType))) {
-			    isMWU = false;
+	for (int j = 0; j < maxN; ++j)
+	    result[j] = (topK > 0) ? new LinkedHashMap<String, Integer>() : new HashMap<String, Integer>();
+
+	ExecutorService pool = null;
+	if (numThreads > 1) {
+	    this.freeze();
+	    pool = Executors.newFixedThreadPool(numThreads);
+	}
+	try {
+	    LocalMaxsTopK topKs = new LocalMaxsTopK(associationMeasure, maxN,
+						    windowSize, pool, numThreads,
+						    topK, rankBy);
+	    topKs.run(minFreq);
+	    topKs.finish(result, sink);
+	} finally {
+	    if (pool != null) {
+		pool.shutdown();
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Collects the topK MWUs of each n, ranked by frequency or by glue, or all
+     * of them. The candidates are checked a batch at a time, split into
+     * chunks run on the pool, and the MWUs are offered to the heaps in the
+     * order the candidates were passed, so the heaps do not depend on the
+     * number of threads. Only
+     * the GLUE_CACHE_SIZE glues most recently used are kept, split evenly
+     * among the levels, as the candidates of a batch share most of their
+     * antecedents and successors.
+     */
+    private class LocalMaxsTopK extends TopK {
+	private int associationMeasure = SCPCD;
+	private int windowSize = 0;
+	private ExecutorService pool = null;          // null to check in this thread.
+	private int numChunks = 1;
+	private Map<String, Double>[] glues = null;
+	private List<SuffixPerplexity> batch = null;
+	private int[] batchN = null;          // the n of each candidate of the batch.
+
+	@SuppressWarnings({"unchecked"})
+	public LocalMaxsTopK(int associationMeasure, int maxN, int windowSize,
+			     ExecutorService pool, int numThreads, int topK,
+			     int rankBy) {
+	    super(maxN, topK, rankBy);
+	    this.associationMeasure = associationMeasure;
+	    this.windowSize = windowSize;
+	    this.pool = pool;
+	    this.numChunks = Math.max(1, numThreads * 4);
+	    this.glues = (Map<String, Double>[]) new Map[maxN + windowSize + 1];
+	    final int capacity = Math.max(1, GLUE_CACHE_SIZE / glues.length);
+	    for (int i = 0; i < glues.length; i++) {
+		glues[i] = Collections.synchronizedMap(
+		    new LinkedHashMap<String, Double>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+			    return (size() > capacity);
 			}
-		    }
-		    for (int k = 1; (k <= windowSize) && isMWU; k++) {
-			ArrayList sufSuccStrs = pattree.getSuffixPerplexity(ngram, k);
-			ArrayList preSuccStrs = invpattree.getSuffixPerplexity(
-			    Strings.inverse(ngram, this.langType), k);
-			for (int m = 0; (m < sufSuccStrs.size()) && isMWU; m++) {
-			    String succStr = ngram +
-					     ((SuffixPerplexity) sufSuccStrs.get(m)).suffix;
-			    if (g <= this.glue(succStr, associationMeasure, this.langType)) {
-				isMWU = false;
+		    });
+	    }
+	    this.batchN = new int[BATCH_SIZE * Math.max(1, numThreads)];
+	    this.batch = new ArrayList<SuffixPerplexity>(batchN.length);
+	}
+
+	/**
+	 * Adds a candidate to the batch, which is checked once it is full.
+	 */
+	protected void add(int n, SuffixPerplexity sp) {
+	    batchN[batch.size()] = n;
+	    batch.add(sp);
+	    if (batch.size() == batchN.length) {
+		this.check();
+	    }
+	}
+
+	/**
+	 * Checks the batch and offers its MWUs to the heaps.
+	 */
+	protected void check() {
+	    List<Callable<double[]>> checks = new ArrayList<Callable<double[]>>();
+	    int size = batch.size();
+	    // whether each candidate of the batch is a MWU, apart from its rank,
+	    // which may be any double, NaN included.
+	    final boolean[] isMWU = new boolean[size];
+	    for (int c = 0; c < numChunks; c++) {
+		final int from = (int) ((long) size * c / numChunks);
+		final int to = (int) ((long) size * (c + 1) / numChunks);
+		if (from == to) {
+		    continue;
+		}
+		// the rank of each MWU.
+		checks.add(new Callable<double[]>() {
+		    public double[] call() {
+			double[] ranks = new double[to - from];
+			for (int j = from; j < to; j++) {
+			    SuffixPerplexity sp = batch.get(j);
+			    int n = batchN[j];
+			    if (candidates[n - 1] != null) {
+				candidates[n - 1].increment();
 			    }
-			}
-			for (int m = 0; (m < preSuccStrs.size()) && isMWU; m++) {
-			    String succStr = Strings.inverse(((SuffixPerplexity)
-							      preSuccStrs.get(m)).suffix,
-							     this.langType) +
-					     ngram;
-			    if (g <= this.glue(succStr, associationMeasure, this.langType)) {
-				isMWU = false;
+			    if (PATTermExtraction.this.isLocalMax(sp.suffix, n, glues,
+								  associationMeasure,
+								  windowSize)) {
+				isMWU[j] = true;
+				ranks[j - from] = ((rankBy == BY_GLUE) ?
+						   PATTermExtraction.this.glue(glues[n], sp.suffix,
+									       associationMeasure) :
+						   sp.freq);
 			    }
 			}
+			return ranks;
 		    }
-		    if (isMWU) {
-			result[i - 1].put(ngram, new Integer(sp.freq));
-			if (fh != null) {
-			    fh[i - 1].println(ngram + " " + sp.freq, true);
-			}
+		});
+	    }
+	    List<double[]> chunks = PATTermExtraction.invokeAll(pool, checks);
+	    int j = 0;
+	    for (int c = 0; c < chunks.size(); c++) {
+		double[] ranks = chunks.get(c);
+		for (int k = 0; k < ranks.length; k++, j++) {
+		    if (isMWU[j]) {
+			this.accept(batchN[j], batch.get(j), ranks[k]);
 		    }
 		}
 	    }
+	    batch.clear();
+	}
+    }
+
+    /**
+     * Tests if the glue of the n-gram is a local maximum: not less than the
+     * glues of its antecedents, and greater than the glues of the strings
+     * extending it by up to windowSize words on either side.
+     *
+     * @param ngram the target n-gram.
+     * @param n the number of words of the n-gram.
+     * @param glues the glues of the n-grams by n.
+     * @param associationMeasure the association measure to be used.
+     * @param windowSize the comparison distance of localmaxs.
+     * @return true if the n-gram is a MWU.
+     */
+    private boolean isLocalMax(String ngram, int n, Map<String, Double>[] glues,
+			       int associationMeasure, int windowSize) {
+	boolean isMWU = true;
+
+	double g = this.glue(glues[n], ngram, associationMeasure);
+	if (n >= 3) {
+	    String[] antStrs = Strings.getAnt(ngram, langType);
+	    if ((g<this.glue(glues[n - 1], antStrs[0], associationMeasure)) ||
+		(g<this.glue(glues[n - 1], antStrs[1], associationMeasure))) {
+		isMWU = false;
+	    }
+	}
+	for (int k = 1; (k <= windowSize) && isMWU; k++) {
+	    ArrayList sufSuccStrs = pattree.getSuffixPerplexity(ngram, k);
+	    ArrayList preSuccStrs = this.getPrefixPerplexity(ngram, k);
+	    for (int m = 0; (m < sufSuccStrs.size()) && isMWU; m++) {
+		String succStr = ngram +
+				 ((SuffixPerplexity) sufSuccStrs.get(m)).suffix;
+		if (g <= this.glue(glues[n + k], succStr, associationMeasure)) {
+		    isMWU = false;
+		}
+	    }
+	    for (int m = 0; (m < preSuccStrs.size()) && isMWU; m++) {
+		String succStr = ((SuffixPerplexity) preSuccStrs.get(m)).suffix +
+				 ngram;
+		if (g <= this.glue(glues[n + k], succStr, associationMeasure)) {
+		    isMWU = false;
+		}
+	    }
+	}
+
+	return isMWU;
+    }
+
+    /**
+     * Runs the tasks on the pool, or in this thread if there is no pool, and
+     * returns their results in the order of the tasks.
+     */
+    private static <T> List<T> invokeAll(ExecutorService pool,
+					  List<Callable<T>> tasks) {
+	List<T> result = new ArrayList<T>();
+
+	try {
+	    if (pool == null) {
+		for (int i = 0; i < tasks.size(); i++) {
+		    result.add(tasks.get(i).call());
+		}
+	    } else {
+		List<Future<T>> futures = pool.invokeAll(tasks);
+		for (int i = 0; i < futures.size(); i++) {
+		    result.add(PATTermExtraction.waitFor(futures.get(i)));
+		}
+	    }
+	} catch (RuntimeException re) {
+	    throw re;
+	} catch (Exception e) {
+	    throw (new RuntimeException(e));
 	}
 
 	return result;
     }
 
-    public void toFile(String fileName) {
-	FileHandler fh = new FileHandler(fileName);
-	fh.writeObject(this);
+    /**
+     * Returns the glue of the n-gram from the table of the glues of its
+     * level, computing it on the first request.
+     *
+     * @param table the glues of the level of the n-gram.
+     * @param ngram the target n-gram.
+     * @param associationMeasure the association measure to be used.
+     * @return the value of the association measure.
+     */
+    private double glue(Map<String, Double> table, String ngram,
+			int associationMeasure) {
+	Double result = table.get(ngram);
+
+	if (result == null) {
+	    result = Double.valueOf(this.glue(ngram, associationMeasure, this.langType));
+	    table.put(ngram, result);
+	}
+
+	return result.doubleValue();
+    }
+
+    /**
+     * Writes the binary image of the indexes, which can be mapped back by
+     * fromFile().
+     *
+     * @param fileName the image file name.
+     */
+    public void toFile(String fileName) throws IOException {
+	ImageWriter out = new ImageWriter(fileName);
+	try {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeInt(this.langType);
+	    out.writeInt(this.indexType);
+	    out.writeInt((bidirectional != null) ? 1 : 0);
+	    pattree.write(out);
+	    if (invpattree != null) {
+		invpattree.write(out);
+	    }
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Maps the image written by toFile(). Queries run against the mapped image
+     * directly, so nothing is deserialized.
+     *
+     * @param fileName the image file name.
+     * @return the term extraction.
+     */
+    public static PATTermExtraction fromFile(String fileName) throws IOException {
+	PATTermExtraction result = new PATTermExtraction();
+	ImageReader in = new ImageReader(fileName);
+	try {
+	    if (in.readInt() != MAGIC) {
+		throw (new IOException(fileName + " is not a PAT-tree image"));
+	    }
+	    int version = in.readInt();
+	    if (version != VERSION) {
+		throw (new IOException("Unsupported image version " + version +
+				       " in " + fileName));
+	    }
+	    result.langType = in.readInt();
+	    result.indexType = in.readInt();
+	    result.classifier =
+		PATTermExtraction.getDefaultClassifier(result.langType);
+	    boolean isBidirectional = (in.readInt() != 0);
+	    SuffixIndex forward = PATTermExtraction.readIndex(result.indexType, in);
+	    if (isBidirectional) {
+		result.setIndexes(BidirectionalIndex.read(forward, in), null);
+	    } else {
+		SuffixIndex inverse = PATTermExtraction.readIndex(result.indexType, in);
+		result.setIndexes(forward, inverse);
+	    }
+	} finally {
+	    in.close();
+	}
+
+	return result;
     }
 
     public static void main(String[] args) {
@@ -504,6 +1785,8 @@ public class PATTermExtraction implements java.io.Serializable {
 		if (lt.equals("EnglishLike")) {
 		    langType = Strings.EnglishLike;
 		}
+		int indexType = PATTermExtraction.parseIndexType(
+		    prop.getProperty("indexType", "PATTree"));
 		String am = prop.getProperty("associationMeasure", "SCPCD");
 		int associationMeasure = PATTermExtraction.SCPCD;
 		if (am.equals("SCP")) {
@@ -528,7 +1811,7 @@ public class PATTermExtraction implements java.io.Serializable {
 
 		    t = System.currentTimeMillis();
 
-		    patte = (PATTermExtraction) fh.readObject();
+		    patte = PATTermExtraction.fromFile(fh.getAbsolutePath());
 
 		    t = System.currentTimeMillis() - t;
 		    System.out.println("Finish reading PAT-tree in "
@@ -537,7 +1820,7 @@ public class PATTermExtraction implements java.io.Serializable {
 
 		    t = System.currentTimeMillis();
 
-		    patte = new PATTermExtraction(corpusDir, langType);
+		    patte = new PATTermExtraction(corpusDir, langType, indexType);
 
 		    t = System.currentTimeMillis() - t;
 		    System.out.println("Finish constructing PAT-tree in "
@@ -564,11 +1847,15 @@ public class PATTermExtraction implements java.io.Serializable {
 
 		//patte.extract(PATTermExtraction.SCPCD, 2, 12, 1, treeFile);
 		//patte.extract(PATTermExtraction.GMSCPCD, 2, 12, 1, treeFile);
-		patte.extract(associationMeasure, minFreq, maxN, windowSize, treeFile);
+		patte.extract(associationMeasure, minFreq, maxN, windowSize, treeFile,
+			      Runtime.getRuntime().availableProcessors());
 
 		t = System.currentTimeMillis() - t;
 		System.out.println("Finish extracting MWUs using PAT-localmaxs in "
 				   + ((double) t / 1000.0) + "sec.");
+		System.out.println("Frequency cache: " + patte.getCacheHits()
+				   + " hits, " + patte.getCacheMisses()
+				   + " misses.");
 	    } catch (Exception e) {
 		e.printStackTrace();
 	    } finally {
@@ -600,6 +1887,8 @@ public class PATTermExtraction implements java.io.Serializable {
 		if (lt.equals("EnglishLike")) {
 		    langType = Strings.EnglishLike;
 		}
+		int indexType = PATTermExtraction.parseIndexType(
+		    prop.getProperty("indexType", "PATTree"));
 		int minFreq = Integer.parseInt(prop.getProperty("minFreq", "2"));
 		int maxN = Integer.parseInt(prop.getProperty("maxN", "12"));
 		int kind = Integer.parseInt(prop.getProperty("kind", "3"));
@@ -615,7 +1904,7 @@ public class PATTermExtraction implements java.io.Serializable {
 
 		    t = System.currentTimeMillis();
 
-		    patte = (PATTermExtraction) fh.readObject();
+		    patte = PATTermExtraction.fromFile(fh.getAbsolutePath());
 
 		    t = System.currentTimeMillis() - t;
 		    System.out.println("Finish reading PAT-tree in "
@@ -624,7 +1913,7 @@ public class PATTermExtraction implements java.io.Serializable {
 
 		    t = System.currentTimeMillis();
 
-		    patte = new PATTermExtraction(corpusDir, langType);
+		    patte = new PATTermExtraction(corpusDir, langType, indexType);
 
 		    t = System.currentTimeMillis() - t;
 		    System.out.println("Finish constructing PAT-tree in "
@@ -1,5 +1,7 @@
 package jackteng.pattree;
 
+import java.io.*;
+import java.nio.*;
 import java.util.*;
 import jackteng.util.*;
 import jackteng.file.*;
@@ -13,33 +15,267 @@ import jackteng.file.*;
  * @author Jei-Wen Teng
  * @version 1.0
  */
-public class PATTree implements java.io.Serializable {
+public class PATTree implements SuffixIndex {
 
-    public PATNode tree = null;
-    protected int nextPos = 0;
-    protected String dataStrs = "";
+    /*
+     * The nodes are kept in parallel arrays and referred to by their indices,
+     * so that a tree of millions of nodes costs a handful of arrays instead of
+     * millions of small objects. Node 0 is the header node, whose right child
+     * is always NIL. The arrays are held as buffers so that a tree loaded by
+     * fromFile() can be queried straight against the mapped image. The data
+     * position of a node is an offset into the text store; its key runs from
+     * there to the end of the stored string, or to its maxKeyLen-th character
+     * (or word) if the keys are bounded. The keys below an internal node
+     * share their characters up to the one holding its comparison bit; the
+     * successors of a node are the distinct values of that character among
+     * them, found by computeContexts(). A node takes six ints, 24 bytes, and
+     * in a Chinese like tree a seventh for its successors, packed, plus two
+     * more for the few nodes whose successors do not fit in one. The buffers
+     * double as nodes are inserted, and are trimmed to the nodes by build(),
+     * merge() and freeze().
+     */
+    private final static int HEADER = 0;
+    private final static int NIL = -1;
+
+    private final static int MAGIC = 0x50415454;          // "PATT".
+    private final static int VERSION = 6;
+    private final static int FREQ_BITS = 20;          // of a packed successor frequency, below the count.
+
+    protected IntBuffer CB = IntBuffer.allocate(16);          // the comparison bit.
+    protected IntBuffer dataPos = IntBuffer.allocate(16);          // the real string.
+    protected IntBuffer freqOfExternalNodes = IntBuffer.allocate(16);          // total frequency of all external nodes.
+    protected IntBuffer freq = IntBuffer.allocate(16);          // frequency.
+    protected IntBuffer left = IntBuffer.allocate(16);
+    protected IntBuffer right = IntBuffer.allocate(16);
+    protected IntBuffer successors = IntBuffer.allocate(16);          // the successors of a Chinese like tree, packed.
+    protected IntBuffer overflow = IntBuffer.allocate(0);          // the successors which do not fit, in pairs.
+    protected int numNodes = 0;
+    private boolean contextsValid = true;          // false if the successors are out of date.
+    private int[] searchPath = null;
+    protected TextStore text = new TextStore();
     private int langType = Strings.ChineseLike;
-    private int bitLen = 16;
+    private int bitLen = Bits.CHAR_BITS;          // keys are read as UTF-16 code units.
+    private boolean frozen = false;
+    private int prunedFreq = 0;          // the frequency pruned at, 0 if none.
+    private int maxKeyLen = 0;          // the maximum length of the keys, 0 if unbounded.
+    private boolean sharesText = false;          // if the text store may be another's too.
+    private CharClassifier firstChars = null;          // the first characters of the keys, null if any.
 
     public PATTree() { }
 
     public PATTree(int langType) {
 	this.langType = langType;
-	if (langType == Strings.ChineseLike) {
-	    bitLen = 16;
-	} else if (langType == Strings.EnglishLike) {
-	    bitLen = 8;
+    }
+
+    /**
+     * Creates a PAT-tree whose keys are bounded: only the first maxKeyLen
+     * characters (or words) of each suffix are inserted. The frequencies and
+     * the successors of the words up to maxKeyLen characters (or words) long
+     * are those of an unbounded PAT-tree, and no longer word is found.
+     *
+     * @param langType the language type.
+     * @param maxKeyLen the maximum length of the keys, 0 if unbounded.
+     */
+    public PATTree(int langType, int maxKeyLen) {
+	this.langType = langType;
+	this.maxKeyLen = maxKeyLen;
+    }
+
+    /**
+     * Creates a PAT-tree which holds only the keys starting with characters
+     * legal by the classifier, an empty key starting with the separator, so
+     * that the keys of a corpus can be built part by part as its data
+     * strings are added again for each part. The text store keeps only the
+     * ranges of the data strings which the keys of the part reach.
+     *
+     * @param langType the language type.
+     * @param maxKeyLen the maximum length of the keys, 0 if unbounded.
+     * @param firstChars the first characters of the keys.
+     */
+    PATTree(int langType, int maxKeyLen, CharClassifier firstChars) {
+	this(langType, maxKeyLen);
+	this.firstChars = firstChars;
+    }
+
+    public int getLangType() {
+	return this.langType;
+    }
+
+    /**
+     * Makes the PAT-tree read-only. Queries only read the nodes and the text
+     * store, so a frozen PAT-tree can be queried by several threads at once.
+     */
+    public void freeze() {
+	this.computeContexts();
+	this.trim();
+	this.frozen = true;
+	this.searchPath = null;
+    }
+
+    public boolean isFrozen() {
+	return this.frozen;
+    }
+
+    private void checkNotFrozen() {
+	if (frozen) {
+	    throw (new IllegalStateException("The PAT-tree is frozen"));
+	}
+    }
+
+    private void checkNotPruned() {
+	if (prunedFreq > 0) {
+	    throw (new IllegalStateException("The PAT-tree is pruned"));
+	}
+    }
+
+    /**
+     * Returns the maximum length of the keys in characters (or words), 0 if
+     * they are unbounded.
+     *
+     * @return the maximum key length.
+     */
+    public int getMaxKeyLength() {
+	return this.maxKeyLen;
+    }
+
+    /**
+     * Returns the end of the key which starts at the given index of the data
+     * string, i.e. the end of the string or of its maxKeyLen-th character
+     * (or word).
+     */
+    private int keyEnd(CharSequence data, int from, int to) {
+	if ((maxKeyLen <= 0) || (to - from <= maxKeyLen)) {
+	    return to;
+	}
+	if (this.langType == Strings.EnglishLike) {
+	    int len = Strings.getSuffixLen(data, from, to, 0, maxKeyLen,
+					   this.langType);
+	    return ((len == -1) ? to : (from + len));
+	}
+	return from + maxKeyLen;
+    }
+
+    /**
+     * Returns the end of the key at the given data position.
+     */
+    private int keyEnd(int pos) {
+	return this.keyEnd(text, pos, text.end(pos));
+    }
+
+    /**
+     * Returns the frequency the PAT-tree was pruned at, 0 if it was not.
+     *
+     * @return the minimum frequency of prune().
+     */
+    public int getPrunedFrequency() {
+	return this.prunedFreq;
+    }
+
+    /**
+     * Returns the number of nodes in the PAT-tree.
+     *
+     * @return the number of nodes.
+     */
+    public int size() {
+	return this.numNodes;
+    }
+
+    TextStore getText() {
+	return this.text;
+    }
+
+    /**
+     * Returns the text store for another index of the same data strings to
+     * share, so that it is no longer appended to in place.
+     *
+     * @return the text store.
+     */
+    TextStore shareText() {
+	this.sharesText = true;
+	return this.text;
+    }
+
+    /**
+     * Returns a snapshot of the node at the given index.
+     *
+     * @param index the index of the node.
+     * @return the snapshot of the node.
+     */
+    public PATNode getNode(int index) {
+	if ((index < 0) || (index >= numNodes)) {
+	    throw (new IndexOutOfBoundsException());
+	}
+	return new PATNode(index, dataPos.get(index), CB.get(index),
+			   freqOfExternalNodes.get(index), freq.get(index),
+			   left.get(index), right.get(index));
+    }
+
+    private IntBuffer copyOf(IntBuffer buf, int capacity) {
+	int[] a = new int[capacity];
+	IntBuffer src = buf.duplicate();
+	src.clear();
+	src.get(a, 0, numNodes);
+	return IntBuffer.wrap(a);
+    }
+
+    /**
+     * Copies the nodes into larger heap buffers. This is also how a tree mapped
+     * by fromFile() becomes writable again.
+     *
+     * @param capacity the new capacity in nodes.
+     */
+    private void grow(int capacity) {
+	CB = this.copyOf(CB, capacity);
+	dataPos = this.copyOf(dataPos, capacity);
+	freqOfExternalNodes = this.copyOf(freqOfExternalNodes, capacity);
+	freq = this.copyOf(freq, capacity);
+	left = this.copyOf(left, capacity);
+	right = this.copyOf(right, capacity);
+	if (this.langType == Strings.ChineseLike) {
+	    successors = this.copyOf(successors, capacity);
+	}
+    }
+
+    /**
+     * Trims the buffers of the nodes, and the text store unless it is shared,
+     * to what they hold.
+     */
+    void trim() {
+	if (!CB.isReadOnly() && (CB.capacity() > Math.max(16, numNodes))) {
+	    this.grow(Math.max(16, numNodes));
+	}
+	if (!sharesText) {
+	    text.trim();
+	}
+    }
+
+    private int newNode(int pos, int cb, int numExternalNodes, int f) {
+	if (numNodes == CB.capacity()) {
+	    this.grow(Math.max(16, numNodes * 2));
 	}
+	int node = numNodes++;
+	CB.put(node, cb);
+	dataPos.put(node, pos);
+	freqOfExternalNodes.put(node, numExternalNodes);
+	freq.put(node, f);
+	left.put(node, node);
+	right.put(node, NIL);
+
+	return node;
     }
 
     public PATNode search(String str) {
-	PATNode result = null;
-	BitSet bits = Bits.toBitSet(str.getBytes());
+	int node = this.searchNode(str, 0, str.length());
+	return ((node == NIL) ? null : this.getNode(node));
+    }
+
+    private int searchNode(CharSequence str, int from, int to) {
+	int result = NIL;
 
-	if (tree != null) {
-	    result = tree.left;
+	if (numNodes > 0) {
+	    result = left.get(HEADER);
 	    int lastCB = 0;
-	    int currentCB = result.CB;
+	    int currentCB = CB.get(result);
 
 	    /*
 	     * traverses nodes until we find the external node which is the node whose
@@ -47,37 +283,23 @@ public class PATTree implements java.io.Serializable {
 	     * node.
 	     */
 	    while (currentCB > lastCB) {
-		if (bits.get(currentCB - 1)) {
-		    result = result.right;
+		if (Bits.getBit(str, from, to, currentCB - 1)) {
+		    result = right.get(result);
 		} else {
-		    result = result.left;
+		    result = left.get(result);
 		}
 		lastCB = currentCB;
-		currentCB = result.CB;
+		currentCB = CB.get(result);
 	    }
-	    int ei = dataStrs.indexOf(",", result.dataPos);
-	    if (ei == -1) {
-		ei = dataStrs.length();
-	    }
-	    if (!dataStrs.substring(result.dataPos, ei).equals(str)) {
-		result = null;
+	    int pos = dataPos.get(result);
+	    if (!text.regionMatches(pos, this.keyEnd(pos), str, from, to)) {
+		result = NIL;
 	    }
 	}
 
 	return result;
     }
 
-    private void updateDataStrs(String data) {
-	if (this.search(data) == null) {
-	    if (dataStrs.equals("")) {
-		dataStrs = data;
-	    } else {
-		dataStrs = dataStrs + "," + data;
-	    }
-	    nextPos = nextPos + 1 + data.length();
-	}
-    }
-
     /**
      * Inserts the data string and its suffix strings into the PAT-tree.
      *
@@ -86,96 +308,265 @@ public class PATTree implements java.io.Serializable {
      *         operation.
      */
     public PATNode insert(String data) {
-	PATNode result = null;
-	int dataPos = this.nextPos;
+	return this.getNode(this.insertNode(data, 0, data.length()));
+    }
 
-	this.updateDataStrs(data);
-	if (tree == null) {
-	    tree = new PATNode();
-	    result = tree;
-	} else {
-	    result = this.insertSuffixStr(data, dataPos);
+    private int insertNode(CharSequence data, int from, int to) {
+	int result = NIL;
+
+	this.checkNotFrozen();
+	this.checkNotPruned();
+	if (CB.isReadOnly()) {
+	    this.grow(Math.max(16, numNodes * 2));
+	}
+	if (sharesText) {
+	    this.compactText();
 	}
-	int n = Strings.getN(data, this.langType);
-	for (int i = 2; i <= n; i++) {
-	    this.insertSuffixStr(Strings.getSubNGram(data, i, n, this.langType),
-				 dataPos + this.getDataPosOffset(data, i - 1, this.langType));
+	if (firstChars != null) {
+	    this.insertPart(data, from, to);
+	    return NIL;
+	}
+	// the data string is kept only as far as the keys of the new nodes
+	// reach into it, which is all of it or nothing if the keys are unbounded.
+	int pos = text.append(data, from, to);
+	int n = numNodes;
+	int end = this.keyEnd(data, from, to);
+	result = this.insertSuffixStr(data, from, end, pos, 1);
+	int usedEnd = ((numNodes > n) ? end : NIL);
+	// the suffixes start at every character of a Chinese like string and
+	// after every space of an English like one.
+	for (int i = from + 1; i < to; i++) {
+	    if (this.langType == Strings.EnglishLike) {
+		if (data.charAt(i - 1) != ' ') {
+		    continue;
+		}
+	    }
+	    n = numNodes;
+	    end = this.keyEnd(data, i, to);
+	    this.insertSuffixStr(data, i, end, pos + (i - from), 1);
+	    if (numNodes > n) {
+		usedEnd = Math.max(usedEnd, end);
+	    }
+	}
+	if (usedEnd == NIL) {
+	    text.removeLast();
+	} else if (usedEnd < to) {
+	    text.truncateLast(pos + (usedEnd - from));
 	}
 
 	return result;
     }
 
-    private int getDataPosOffset(String data, int offset, int langType) {
-	int result = offset;
+    public void add(String data) {
+	this.insertNode(data, 0, data.length());
+    }
+
+    public void add(CharSequence data, int from, int to) {
+	this.insertNode(data, from, to);
+    }
+
+    /**
+     * Inserts the suffixes of the data string which start with characters
+     * legal by firstChars. Each run of them whose keys overlap is appended
+     * to the text store as a data string of its own, kept as far as the keys
+     * of the new nodes reach, so the text of a part is about that of its
+     * keys however few suffixes of each data string the part holds.
+     */
+    private void insertPart(CharSequence data, int from, int to) {
+	int runFrom = NIL;
+	int runEnd = from;
+	for (int i = from; (i < to) || (i == from); i++) {
+	    if (!this.startsKey(data, from, to, i)) {
+		continue;
+	    }
+	    if ((runFrom != NIL) && (i >= runEnd)) {
+		this.insertRun(data, runFrom, runEnd, to);
+		runFrom = NIL;
+	    }
+	    if (runFrom == NIL) {
+		runFrom = i;
+	    }
+	    runEnd = Math.max(runEnd, this.keyEnd(data, i, to));
+	}
+	if (runFrom != NIL) {
+	    this.insertRun(data, runFrom, runEnd, to);
+	}
+    }
+
+    /**
+     * Tests if a suffix of the data string starts at the given index, at
+     * every character of a Chinese like string and after every space of an
+     * English like one, with a character legal by firstChars.
+     */
+    private boolean startsKey(CharSequence data, int from, int to, int i) {
+	if ((i > from) && ((i == to) || ((this.langType == Strings.EnglishLike) &&
+					 (data.charAt(i - 1) != ' ')))) {
+	    return false;
+	}
+	return firstChars.isLegal((i < to) ? data.charAt(i) : TextStore.SEPARATOR);
+    }
 
-	if (langType == Strings.EnglishLike) {
-	    result = Strings.indexOf(data, " ", 0, offset) + 1;
+    /**
+     * Inserts the suffixes of a run of the data string ending at to, the
+     * run reaching from the first of them to the end of the last key.
+     */
+    private void insertRun(CharSequence data, int from, int end, int to) {
+	int pos = text.append(data, from, end);
+	int usedEnd = NIL;
+	for (int i = from; (i < end) || (i == from); i++) {
+	    if (this.startsKey(data, from, to, i)) {
+		int n = numNodes;
+		int keyEnd = this.keyEnd(data, i, to);
+		this.insertSuffixStr(data, i, keyEnd, pos + (i - from), 1);
+		if (numNodes > n) {
+		    usedEnd = Math.max(usedEnd, keyEnd);
+		}
+	    }
+	}
+	if (usedEnd == NIL) {
+	    text.removeLast();
+	} else if (usedEnd < end) {
+	    text.truncateLast(pos + (usedEnd - from));
 	}
+    }
 
-	return result;
+    /**
+     * Merges another PAT-tree into this one, as if its data strings were
+     * inserted into this one: its data strings are appended to the text store
+     * and each of its keys is inserted with its frequency, in the order the
+     * keys were created. The buffers are trimmed to the nodes afterwards.
+     *
+     * @param other the PAT-tree to be merged.
+     */
+    public void merge(SuffixIndex other) {
+	if (!(other instanceof PATTree)) {
+	    throw (new IllegalArgumentException("Not a PAT-tree"));
+	}
+	PATTree tree = (PATTree) other;
+	if (tree.langType != this.langType) {
+	    throw (new IllegalArgumentException("Different language types"));
+	}
+	this.checkNotFrozen();
+	this.checkNotPruned();
+	if (tree.prunedFreq > 0) {
+	    throw (new IllegalArgumentException("Cannot merge a pruned PAT-tree"));
+	}
+	if (tree.maxKeyLen != this.maxKeyLen) {
+	    throw (new IllegalArgumentException("Different maximum key lengths"));
+	}
+	this.insertKeys(tree);
+	this.trim();
+    }
+
+    /**
+     * Merges the keys of a part of the data strings, built by a PAT-tree of
+     * first characters which no key of this one starts with, as the other
+     * parts merged before it. Each of its keys is inserted with its
+     * frequency, which stays exact since all the occurrences of a key belong
+     * to the part of its first character, so the part may have been pruned:
+     * the result is the PAT-tree of all the parts, pruned at the highest
+     * frequency any of them was.
+     *
+     * @param part the PAT-tree of the part.
+     */
+    void mergePart(PATTree part) {
+	if ((part.langType != this.langType) || (part.maxKeyLen != this.maxKeyLen)) {
+	    throw (new IllegalArgumentException("Not a part of the same keys"));
+	}
+	this.checkNotFrozen();
+	this.insertKeys(part);
+	prunedFreq = Math.max(prunedFreq, part.prunedFreq);
+    }
+
+    /**
+     * Inserts each key of another PAT-tree with its frequency, in the order
+     * the keys were created, appending its text store to this one unless
+     * they are the same. The buffers grow to hold exactly the new keys.
+     */
+    private void insertKeys(PATTree tree) {
+	if (CB.isReadOnly() || (numNodes + tree.numNodes > CB.capacity())) {
+	    this.grow(Math.max(16, numNodes + tree.numNodes));
+	}
+	if (sharesText && (tree.text != this.text)) {
+	    this.compactText();
+	}
+	int offset = ((tree.text == this.text) ? 0 : text.appendAll(tree.text));
+	for (int i = 0; i < tree.numNodes; i++) {
+	    int pos = tree.dataPos.get(i) + offset;
+	    this.insertSuffixStr(text, pos, this.keyEnd(pos), pos,
+				 tree.freq.get(i));
+	}
     }
 
     /**
      * Inserts the suffix string into the PAT-tree.
      *
-     * @param data the suffix string to be inserted.
-     * @param dataPos the data position of the suffix string.
+     * @param data the data string.
+     * @param from the beginning index of the suffix string in the data string.
+     * @param to the ending index of the suffix string in the data string.
+     * @param pos the data position of the suffix string.
+     * @param count the number of occurrences of the suffix string.
      * @return the node generated for the suffix string after the insertion
      *         operation.
      */
-    private PATNode insertSuffixStr(String data, int dataPos) {
-	PATNode result = null;
-	BitSet bits = Bits.toBitSet(data.getBytes());
+    private int insertSuffixStr(CharSequence data, int from, int to, int pos,
+				int count) {
+	int result = NIL;
 
-	result = tree.left;
+	contextsValid = false;
+	if (numNodes == 0) {
+	    return this.newNode(pos, 0, count, count);
+	}
+	result = left.get(HEADER);
 	int lastCB = 0;
-	int currentCB = result.CB;
-	//--------------------------------------------------
-	// ArrayList searchList = new ArrayList();
-	//-------------------------------------------------- 
-	ArrayList<PATNode> searchList = new ArrayList<PATNode>();
-	searchList.add(tree);
-	searchList.add(result);
+	int currentCB = CB.get(result);
+	if (searchPath == null) {
+	    searchPath = new int[64];
+	}
+	int pathLen = 0;
+	searchPath[pathLen++] = HEADER;
+	searchPath[pathLen++] = result;
 
 	/*
 	 * traverses nodes until we find the external node which is the node whose
 	 * comparison bit is less than or equal to the parent (previous searched)
-	 * node and adds these nodes into a search list.
+	 * node and adds these nodes into a search path.
 	 */
 	while (currentCB > lastCB) {
-	    if (bits.get(currentCB - 1)) {
-		result = result.right;
+	    if (Bits.getBit(data, from, to, currentCB - 1)) {
+		result = right.get(result);
 	    } else {
-		result = result.left;
+		result = left.get(result);
 	    }
 	    lastCB = currentCB;
-	    currentCB = result.CB;
-	    searchList.add(result);
-	}
-	int ei = dataStrs.indexOf(",", result.dataPos);
-	if (ei == -1) {
-	    ei = dataStrs.length();
+	    currentCB = CB.get(result);
+	    if (pathLen == searchPath.length) {
+		searchPath = Arrays.copyOf(searchPath, pathLen * 2);
+	    }
+	    searchPath[pathLen++] = result;
 	}
-	String nodeData = dataStrs.substring(result.dataPos, ei);
-	if (nodeData.equals(data)) {
-	    result.freq++;
+	int nodePos = dataPos.get(result);
+	int nodeEnd = this.keyEnd(nodePos);
+	if (text.regionMatches(nodePos, nodeEnd, data, from, to)) {
+	    freq.put(result, freq.get(result) + count);
 
 	    // increments the frequency of external nodes of the searched internal
-	    // nodes in the search list (i.e. all nodes in the search list except the
+	    // nodes in the search path (i.e. all nodes in the search path except the
 	    // last one which is the external node found).
-	    for (int i = 0; i < searchList.size() - 1; i++) {
-		((PATNode) searchList.get(i)).freqOfExternalNodes++;
+	    for (int i = 0; i < pathLen - 1; i++) {
+		freqOfExternalNodes.put(searchPath[i],
+					freqOfExternalNodes.get(searchPath[i]) + count);
 	    }
 	} else {
 	    boolean found = false;
-	    PATNode childNode = null;                 // child of the new node.
-	    PATNode parentNode = null;                  // parent of the new node.
-	    currentCB = Bits.getComparisonBit(bits,
-					      Bits.toBitSet(nodeData.getBytes()));
-	    for (int i = 0; (i < searchList.size()) && !found; i++) {
+	    int childNode = NIL;                 // child of the new node.
+	    int parentNode = NIL;                  // parent of the new node.
+	    currentCB = Bits.getComparisonBit(data, from, to,
+					      text, nodePos, nodeEnd);
+	    for (int i = 0; (i < pathLen) && !found; i++) {
 		parentNode = childNode;
-		childNode = (PATNode) searchList.get(i);
-		if (childNode.CB >= currentCB) {                      // the position to insert the new node
+		childNode = searchPath[i];
+		if (CB.get(childNode) >= currentCB) {                      // the position to insert the new node
 		    // is found, which is before the node
 		    // whose comparison bit is larger than
 		    // or equal to the new node.
@@ -184,51 +575,470 @@ public class PATTree implements java.io.Serializable {
 		    // node.
 
 		    // increments the frequency of external nodes of the searched internal
-		    // nodes in the search list (i.e. all nodes in the search list except
+		    // nodes in the search path (i.e. all nodes in the search path except
 		    // the last one which is the external node found).
-		    if (i != (searchList.size() - 1)) {
-			childNode.freqOfExternalNodes++;
+		    if (i != (pathLen - 1)) {
+			freqOfExternalNodes.put(childNode,
+						freqOfExternalNodes.get(childNode) + count);
 		    }
 		}
 	    }
-	    result = new PATNode(dataPos, currentCB, 0, 1, null, null);
-	    if (bits.get(currentCB - 1)) {
-		result.left = childNode;
-		result.right = result;
+	    result = this.newNode(pos, currentCB, 0, count);
+	    if (Bits.getBit(data, from, to, currentCB - 1)) {
+		left.put(result, childNode);
+		right.put(result, result);
 	    } else {
-		result.left = result;
-		result.right = childNode;
+		left.put(result, result);
+		right.put(result, childNode);
 	    }
-	    if (currentCB < result.left.CB) {                 // the left child node is an internal
+	    int numExternalNodes = 0;
+	    if (currentCB < CB.get(left.get(result))) {                 // the left child node is an internal
 		// node.
-		result.freqOfExternalNodes += result.left.freqOfExternalNodes;
+		numExternalNodes += freqOfExternalNodes.get(left.get(result));
 	    } else {                 // the left child node is an external node.
-		result.freqOfExternalNodes += result.left.freq;
+		numExternalNodes += freq.get(left.get(result));
 	    }
-	    if (currentCB < result.right.CB) {                 // the right child node is an internal
+	    if (currentCB < CB.get(right.get(result))) {                 // the right child node is an internal
 		// node.
-		result.freqOfExternalNodes += result.right.freqOfExternalNodes;
+		numExternalNodes += freqOfExternalNodes.get(right.get(result));
 	    } else {                 // the right child node is an external node.
-		result.freqOfExternalNodes += result.right.freq;
+		numExternalNodes += freq.get(right.get(result));
+	    }
+	    freqOfExternalNodes.put(result, numExternalNodes);
+	    if ((CB.get(parentNode) == 0) ||
+		(!Bits.getBit(data, from, to, CB.get(parentNode) - 1))) {
+		left.put(parentNode, result);
+	    } else {
+		right.put(parentNode, result);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Bulk-loads a PAT-tree from the sorted suffixes of a suffix array in one
+     * pass, without searching the tree. The result is the tree that inserting
+     * the data strings of the suffix array in order would build, node for
+     * node: the internal nodes form the Cartesian tree of the comparison bits
+     * of neighbouring keys, and each node holds the key whose first occurrence
+     * created it.
+     *
+     * @param index the suffix array.
+     * @return the PAT-tree.
+     */
+    public static PATTree build(SuffixArray index) {
+	return PATTree.build(index, 0);
+    }
+
+    /**
+     * Bulk-loads a PAT-tree of bounded keys from a suffix array, the tree that
+     * inserting the data strings in order into new PATTree(langType,
+     * maxKeyLen) would build. The suffixes sharing a key are neighbours in
+     * the suffix array, unless English like text holds characters below the
+     * space.
+     *
+     * @param index the suffix array.
+     * @param maxKeyLen the maximum length of the keys, 0 if unbounded.
+     * @return the PAT-tree.
+     */
+    public static PATTree build(SuffixArray index, int maxKeyLen) {
+	return PATTree.build(index, maxKeyLen, false);
+    }
+
+    /**
+     * Bulk-loads a PAT-tree of bounded keys from a suffix array, sharing its
+     * text store if sharesText is true rather than copying the data strings
+     * as far as the keys reach, so that the suffix array can be kept beside
+     * the PAT-tree for little more than its sorted suffixes.
+     *
+     * @param index the suffix array.
+     * @param maxKeyLen the maximum length of the keys, 0 if unbounded.
+     * @param sharesText true if the text store of the suffix array is shared.
+     * @return the PAT-tree.
+     */
+    static PATTree build(SuffixArray index, int maxKeyLen, boolean sharesText) {
+	TextStore src = index.getText();
+	PATTree result = new PATTree(index.getLangType(), maxKeyLen);
+	if (sharesText) {
+	    result.text = src;
+	    result.sharesText = true;
+	}
+	int n = src.length();
+	int numSuffixes = index.size();
+
+	// groups the sorted suffixes into distinct keys. Empty data strings make
+	// up the empty key, which sorts before every other key.
+	int[] keyEnd = new int[n];
+	for (int p = n - 1, end = n; p >= 0; p--) {
+	    if (src.charAt(p) == TextStore.SEPARATOR) {
+		end = p;
+	    }
+	    keyEnd[p] = end;
+	}
+	int[] keyAt = new int[n];
+	Arrays.fill(keyAt, NIL);
+	int numEmpty = 0;
+	int firstEmpty = NIL;
+	for (int p = 0; p < n; p = keyEnd[p] + 1) {
+	    if (keyEnd[p] == p) {
+		if (numEmpty++ == 0) {
+		    firstEmpty = p;
+		}
+		keyAt[p] = 0;
+	    }
+	}
+	int[] keyPos = new int[numSuffixes + 1];          // the first occurrence.
+	int[] keyFreq = new int[numSuffixes + 1];
+	int[] keyCB = new int[numSuffixes + 1];          // the comparison bit with the previous key.
+	int m = 0;
+	int prevPos = firstEmpty;
+	int prevEnd = firstEmpty;
+	if (numEmpty > 0) {
+	    keyPos[0] = firstEmpty;
+	    keyFreq[0] = numEmpty;
+	    m = 1;
+	}
+	for (int i = 0; i < numSuffixes; i++) {
+	    int pos = index.getSuffix(i);
+	    int end = result.keyEnd(src, pos, keyEnd[pos]);
+	    int h = ((i == 0) ? 0 : index.getLcp(i));
+	    h = Math.min(h, Math.min(end - pos, prevEnd - prevPos));
+	    if ((i > 0) && (h == end - pos) && (h == prevEnd - prevPos)) {
+		keyFreq[m - 1]++;
+		keyPos[m - 1] = Math.min(keyPos[m - 1], pos);
+	    } else {
+		keyCB[m] = ((m == 0) ? 0 :
+			    (h * Bits.CHAR_BITS +
+			     Bits.getComparisonBit(src, prevPos + h, prevEnd,
+						   src, pos + h, end)));
+		keyPos[m] = pos;
+		keyFreq[m] = 1;
+		m++;
+	    }
+	    keyAt[pos] = m - 1;
+	    prevPos = pos;
+	    prevEnd = end;
+	}
+
+	// a key becomes a node when it first occurs, so the nodes are numbered
+	// in that order. A data string is stored only as far as the keys which
+	// first occur in it reach, which leaves every first occurrence in a
+	// stored string. Unbounded keys store a data string whole if it has not
+	// occurred before, neither as a data string nor as a suffix. A shared
+	// text store is used as it is.
+	int[] node = new int[m];
+	int numNodes = 0;
+	for (int p = 0; p < n; ) {
+	    int end = keyEnd[p];
+	    int usedEnd = NIL;
+	    for (int q = p; q <= end; q++) {
+		int k = keyAt[q];
+		if ((k != NIL) && (keyPos[k] == q)) {
+		    usedEnd = Math.max(usedEnd, result.keyEnd(src, q, end));
+		}
+	    }
+	    int shift = 0;
+	    if ((usedEnd != NIL) && !sharesText) {
+		shift = p - result.text.append(src, p, usedEnd);
+	    }
+	    for (int q = p; q <= end; q++) {
+		int k = keyAt[q];
+		if ((k != NIL) && (keyPos[k] == q)) {
+		    node[k] = numNodes++;
+		    keyPos[k] = q - shift;
+		}
+	    }
+	    p = end + 1;
+	}
+
+	// builds the Cartesian tree of the comparison bits, where split i lies
+	// between keys i - 1 and i. Every key but the empty one starts a suffix,
+	// and a data string ends in a character which does not, so there are no
+	// more keys than characters, and the children go where the keys ended.
+	int[] lc = keyEnd;
+	int[] rc = keyAt;
+	int[] s = new int[m];
+	int top = 0;
+	Arrays.fill(lc, 0, m, NIL);
+	Arrays.fill(rc, 0, m, NIL);
+	for (int i = 1; i < m; i++) {
+	    int last = NIL;
+	    while ((top > 0) && (keyCB[s[top - 1]] > keyCB[i])) {
+		last = s[--top];
+	    }
+	    lc[i] = last;
+	    if (top > 0) {
+		rc[s[top - 1]] = i;
+	    }
+	    s[top++] = i;
+	}
+	int root = ((top > 0) ? s[0] : NIL);
+
+	// lists the splits parents first, so that walking the list backwards
+	// visits both children of a split before the split itself.
+	int count = 0;
+	top = 0;
+	if (root != NIL) {
+	    s[top++] = root;
+	}
+	int[] order = new int[m];
+	while (top > 0) {
+	    int i = s[--top];
+	    order[count++] = i;
+	    if (lc[i] != NIL) {
+		s[top++] = lc[i];
+	    }
+	    if (rc[i] != NIL) {
+		s[top++] = rc[i];
 	    }
-	    if ((parentNode.CB == 0) || (!bits.get(parentNode.CB - 1))) {
-		parentNode.left = result;
+	}
+
+	// of the first keys of the two halves of a split, the later one created
+	// the node of the split. The stack is done with, and keeps the first
+	// keys; the sum of the frequencies of a split is read from its node.
+	int[] first = s;
+	int[] holder = new int[m];
+	result.grow(Math.max(16, m));
+	result.numNodes = m;
+	for (int j = count - 1; j >= 0; j--) {
+	    int i = order[j];
+	    int lf = ((lc[i] != NIL) ? first[lc[i]] : (i - 1));
+	    int rf = ((rc[i] != NIL) ? first[rc[i]] : i);
+	    int ls = ((lc[i] != NIL) ?
+		      result.freqOfExternalNodes.get(node[holder[lc[i]]]) : keyFreq[i - 1]);
+	    int rs = ((rc[i] != NIL) ?
+		      result.freqOfExternalNodes.get(node[holder[rc[i]]]) : keyFreq[i]);
+	    if (keyPos[lf] < keyPos[rf]) {
+		first[i] = lf;
+		holder[i] = rf;
 	    } else {
-		parentNode.right = result;
+		first[i] = rf;
+		holder[i] = lf;
 	    }
+	    int t = node[holder[i]];
+	    result.CB.put(t, keyCB[i]);
+	    result.dataPos.put(t, keyPos[holder[i]]);
+	    result.freqOfExternalNodes.put(t, ls + rs);
+	    result.freq.put(t, keyFreq[holder[i]]);
+	    result.left.put(t, node[(lc[i] != NIL) ? holder[lc[i]] : (i - 1)]);
+	    result.right.put(t, node[(rc[i] != NIL) ? holder[rc[i]] : i]);
 	}
+	if (m > 0) {
+	    int k = ((root != NIL) ? first[root] : 0);
+	    result.CB.put(HEADER, 0);
+	    result.dataPos.put(HEADER, keyPos[k]);
+	    result.freqOfExternalNodes.put(HEADER, ((root != NIL) ?
+						    result.freqOfExternalNodes.get(node[holder[root]]) :
+						    keyFreq[k]));
+	    result.freq.put(HEADER, keyFreq[k]);
+	    result.left.put(HEADER, ((root != NIL) ? node[holder[root]] : HEADER));
+	    result.right.put(HEADER, NIL);
+	}
+	// the successors are counted when first asked for, as after insert().
+	result.contextsValid = false;
+	result.trim();
 
 	return result;
     }
 
+    /**
+     * Prunes the subtrees whose keys occur less than minFreq times in all, so
+     * that the PAT-tree keeps little more than the words which occur at least
+     * minFreq times. A pruned subtree is replaced by its one key held by a
+     * node above it, whose frequency becomes that of the whole subtree. Only
+     * subtrees whose keys share the character their parent node compares (and
+     * in an English like tree the word after it) are pruned, so the frequency
+     * of a word which occurs at least minFreq times and its successors stay
+     * exact, while a word which occurs less often is still found less than
+     * minFreq times. The nodes left are moved into new buffers, and the text
+     * store keeps only the ranges the keys left reach (see compactText()),
+     * unless it is shared. A pruned PAT-tree can be neither added to nor
+     * merged.
+     *
+     * @param minFreq the minimum frequency of the subtrees kept.
+     */
+    public void prune(int minFreq) {
+	this.checkNotFrozen();
+	if ((numNodes == 0) || (minFreq <= 1)) {
+	    return;
+	}
+	if (CB.isReadOnly()) {
+	    this.grow(Math.max(16, numNodes));
+	}
+
+	boolean[] removed = new boolean[numNodes];
+	int[] s = new int[32];
+	int top = 0;
+	s[top++] = HEADER;
+	while (top > 0) {
+	    int parent = s[--top];
+	    for (int i = 0; i < 2; i++) {
+		int child = ((i == 0) ? left.get(parent) : right.get(parent));
+		if ((child == NIL) || (CB.get(child) <= CB.get(parent))) {
+		    continue;          // an external node.
+		}
+		if ((freqOfExternalNodes.get(child) < minFreq) &&
+		    this.isPrunable(parent, child)) {
+		    int key = this.removeSubtree(child, removed);
+		    freq.put(key, freqOfExternalNodes.get(child));
+		    if (i == 0) {
+			left.put(parent, key);
+		    } else {
+			right.put(parent, key);
+		    }
+		} else {
+		    if (top == s.length) {
+			s = Arrays.copyOf(s, s.length * 2);
+		    }
+		    s[top++] = child;
+		}
+	    }
+	}
+
+	// numbers the nodes left in their old order.
+	int[] index = new int[numNodes];
+	int m = 0;
+	for (int node = 0; node < numNodes; node++) {
+	    index[node] = (removed[node] ? NIL : m++);
+	}
+	CB = this.compact(CB, index, m);
+	dataPos = this.compact(dataPos, index, m);
+	freqOfExternalNodes = this.compact(freqOfExternalNodes, index, m);
+	freq = this.compact(freq, index, m);
+	left = this.compact(left, index, m);
+	right = this.compact(right, index, m);
+	if (this.langType == Strings.ChineseLike) {
+	    successors = IntBuffer.allocate(Math.max(16, m));
+	}
+	numNodes = m;
+	for (int node = 0; node < numNodes; node++) {
+	    left.put(node, index[left.get(node)]);
+	    if (right.get(node) != NIL) {
+		right.put(node, index[right.get(node)]);
+	    }
+	}
+	if (!sharesText) {
+	    this.compactText();
+	}
+	prunedFreq = Math.max(prunedFreq, minFreq);
+	searchPath = null;
+	contextsValid = false;
+	this.computeContexts();
+    }
+
+    /**
+     * Moves the ranges of the data strings which the keys reach, from the
+     * first key in each string to the end of the last one, into a text store
+     * of its own, dropping the strings which hold no key.
+     */
+    void compactText() {
+	int count = text.count();
+	int[] from = new int[count];
+	int[] to = new int[count];
+	Arrays.fill(from, Integer.MAX_VALUE);
+	Arrays.fill(to, NIL);
+	for (int node = 0; node < numNodes; node++) {
+	    int pos = dataPos.get(node);
+	    int i = text.indexOf(pos);
+	    from[i] = Math.min(from[i], pos);
+	    to[i] = Math.max(to[i], this.keyEnd(pos));
+	}
+
+	TextStore store = new TextStore();
+	int[] shift = from;
+	for (int i = 0; i < count; i++) {
+	    if (to[i] != NIL) {
+		shift[i] = from[i] - store.append(text, from[i], to[i]);
+	    }
+	}
+	for (int node = 0; node < numNodes; node++) {
+	    int pos = dataPos.get(node);
+	    dataPos.put(node, pos - shift[text.indexOf(pos)]);
+	}
+	text = store;
+	sharesText = false;
+    }
+
+    /**
+     * Tests if the keys below an internal node share the character its parent
+     * compares and, in an English like tree, a whole word after it, so that
+     * the successors of the nodes above do not depend on the subtree.
+     */
+    private boolean isPrunable(int parent, int child) {
+	// the header counts as comparing the first character, so that the
+	// keys of different first characters are never pruned into one, and
+	// a part of the keys (see mergePart()) is pruned as in the whole.
+	int parentPos = ((parent == HEADER) ? 0 :
+			 ((CB.get(parent) - 1) / this.bitLen));
+	int len = (CB.get(child) - 1) / this.bitLen;          // the characters shared.
+	if (len <= parentPos) {
+	    return false;
+	}
+	if (this.langType == Strings.EnglishLike) {
+	    int pos = dataPos.get(child);
+	    int end = Math.min(this.keyEnd(pos), pos + len);
+	    for (int i = pos + parentPos + 1; i < end; i++) {
+		if (text.charAt(i) == ' ') {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	return true;
+    }
+
+    /**
+     * Marks the internal nodes of a subtree as removed and returns the node
+     * above the subtree which holds its remaining key.
+     */
+    private int removeSubtree(int root, boolean[] removed) {
+	int result = NIL;
+	int[] s = new int[16];
+	int top = 0;
+
+	s[top++] = root;
+	while (top > 0) {
+	    int node = s[--top];
+	    removed[node] = true;
+	    for (int i = 0; i < 2; i++) {
+		int child = ((i == 0) ? left.get(node) : right.get(node));
+		if (CB.get(child) > CB.get(node)) {
+		    if (top == s.length) {
+			s = Arrays.copyOf(s, s.length * 2);
+		    }
+		    s[top++] = child;
+		} else if (CB.get(child) < CB.get(root)) {
+		    result = child;
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Copies the values of the nodes left into a new heap buffer.
+     */
+    private IntBuffer compact(IntBuffer buf, int[] index, int capacity) {
+	int[] a = new int[Math.max(16, capacity)];
+	for (int node = 0; node < index.length; node++) {
+	    if (index[node] != NIL) {
+		a[index[node]] = buf.get(node);
+	    }
+	}
+	return IntBuffer.wrap(a);
+    }
+
     public int getFrequency(String word) {
 	int result = 0;
-	BitSet bits = Bits.toBitSet(word.getBytes());
-	int wordBitLen = word.getBytes().length * 8;
+	int len = word.length();
+	int wordBitLen = len * Bits.CHAR_BITS;
 
-	PATNode node = tree.left;
+	int node = left.get(HEADER);
 	int lastCB = 0;
-	int currentCB = node.CB;
+	int currentCB = CB.get(node);
 
 	/*
 	 * traverses nodes until we find the external node, which is the node whose
@@ -237,70 +1047,217 @@ public class PATTree implements java.io.Serializable {
 	 * of bits in the word.
 	 */
 	while ((currentCB > lastCB) && (currentCB <= wordBitLen)) {
-	    if (bits.get(currentCB - 1)) {
-		node = node.right;
+	    if (Bits.getBit(word, 0, len, currentCB - 1)) {
+		node = right.get(node);
 	    } else {
-		node = node.left;
+		node = left.get(node);
 	    }
 	    lastCB = currentCB;
-	    currentCB = node.CB;
+	    currentCB = CB.get(node);
 	}
-	int ei = node.dataPos + word.length();
-	if ((ei <= dataStrs.length()) &&
-	    dataStrs.substring(node.dataPos, ei).equals(word)) {                          // word is found.
+	int pos = dataPos.get(node);
+	if (text.startsWith(pos, this.keyEnd(pos), word)) {                          // word is found.
 	    if (currentCB > wordBitLen) {                 // the node matching the word is an internal
 		// node.
-		result = node.freqOfExternalNodes;
+		result = freqOfExternalNodes.get(node);
 	    } else {                  // the node matching the word is an external node.
-		result = node.freq;
+		result = freq.get(node);
 	    }
 	}
 
 	return result;
     }
 
-    private int getSuffixLen(String data, String word, int suffixLen,
-			     int langType) {
-	int result = suffixLen;
+    /**
+     * Finds the successors of every internal node of a Chinese like PAT-tree:
+     * the subtrees (or external nodes) below the node where its keys first
+     * differ in the character holding its comparison bit. Keys which end
+     * before that character are not successors. The walk from a node stays
+     * within its character, so a node is walked from by at most bitLen
+     * ancestors. The number of successors and the highest frequency among
+     * them are packed into one int, its upper bits holding the number, or if
+     * either does not fit, the pair is kept in the overflow buffer and the
+     * int is -1 minus its index there. An English like tree enumerates its
+     * successors instead (see getSuccessors()).
+     */
+    private void computeContexts() {
+	if (contextsValid || (this.langType == Strings.EnglishLike)) {
+	    return;
+	}
+	if (CB.isReadOnly()) {
+	    this.grow(Math.max(16, numNodes));
+	}
 
-	if (langType == Strings.EnglishLike) {
-	    if (data.length() <= word.length()) {
-		result = -1;
-	    } else {
-		if (data.charAt(word.length()) != ' ') {
-		    result = suffixLen - 1;
-		}
-		int prevIndex = ((result == 0) ? word.length() :
-				 Strings.indexOf(data, " ", word.length(), result));
-		int nextIndex = Strings.indexOf(data, " ", word.length(), result + 1);
-		if (nextIndex == -1) {
-		    if (prevIndex == -1) {
-			result = -1;
-		    } else {
-			result = data.length() - word.length();
+	int[] s = new int[16];
+	int[] pairs = new int[16];
+	int numPairs = 0;
+	for (int node = 0; node < numNodes; node++) {
+	    int count = 0;
+	    int max = 0;
+	    int cb = CB.get(node);
+	    if (cb > 0) {
+		int pos = (cb - 1) / this.bitLen;          // the character which differs.
+		int maxCB = (pos + 1) * this.bitLen;
+		int top = 0;
+		s[top++] = node;
+		while (top > 0) {
+		    int parent = s[--top];
+		    for (int i = 0; i < 2; i++) {
+			int child = ((i == 0) ? left.get(parent) : right.get(parent));
+			int f = 0;
+			if (CB.get(child) <= CB.get(parent)) {          // an external node.
+			    int p = dataPos.get(child);
+			    if (this.keyEnd(p) - p > pos) {
+				f = freq.get(child);
+			    }
+			} else if (CB.get(child) > maxCB) {
+			    f = freqOfExternalNodes.get(child);
+			} else {
+			    if (top == s.length) {
+				s = Arrays.copyOf(s, s.length * 2);
+			    }
+			    s[top++] = child;
+			}
+			if (f > 0) {
+			    count++;
+			    max = Math.max(max, f);
+			}
 		    }
-		} else {
-		    result = nextIndex - word.length();
 		}
 	    }
+	    if ((count < (1 << (31 - FREQ_BITS))) && (max < (1 << FREQ_BITS))) {
+		successors.put(node, (count << FREQ_BITS) | max);
+	    } else {
+		if (2 * numPairs == pairs.length) {
+		    pairs = Arrays.copyOf(pairs, pairs.length * 2);
+		}
+		successors.put(node, -1 - numPairs);
+		pairs[2 * numPairs] = count;
+		pairs[2 * numPairs + 1] = max;
+		numPairs++;
+	    }
 	}
+	overflow = IntBuffer.wrap(Arrays.copyOf(pairs, 2 * numPairs));
+	contextsValid = true;
+    }
 
-	return result;
+    /**
+     * Returns the number of distinct characters (or words) following the word,
+     * i.e. getSuffixPerplexity(word, 1).size(), or the highest frequency among
+     * them if max is true. A Chinese like PAT-tree answers from the node where
+     * the search for the word ends; an English like one enumerates them. The
+     * successor words of a node depend on where the word searched for ends,
+     * which the node does not know: a word ending in the character the node
+     * compares is followed by the words after the space there, and a shorter
+     * one by the rest of that word, so no count of its own would do.
+     */
+    private int getSuccessors(String word, boolean max) {
+	if (this.langType == Strings.EnglishLike) {
+	    ArrayList sps = this.getSuffixPerplexity(word, 1);
+	    return ((sps.size() == 0) ? 0 : (max ?
+		    ((SuffixPerplexity) sps.get(sps.size() - 1)).freq :
+		    sps.size()));
+	}
+	if (numNodes == 0) {
+	    return 0;
+	}
+	this.computeContexts();
+
+	int len = word.length();
+	int wordBitLen = len * Bits.CHAR_BITS;
+	int node = left.get(HEADER);
+	int lastCB = 0;
+	int currentCB = CB.get(node);
+	while ((currentCB > lastCB) && (currentCB <= wordBitLen)) {
+	    if (Bits.getBit(word, 0, len, currentCB - 1)) {
+		node = right.get(node);
+	    } else {
+		node = left.get(node);
+	    }
+	    lastCB = currentCB;
+	    currentCB = CB.get(node);
+	}
+	int pos = dataPos.get(node);
+	if (!text.startsWith(pos, this.keyEnd(pos), word)) {
+	    return 0;
+	}
+	if (currentCB <= lastCB) {                  // an external node.
+	    if (this.keyEnd(pos) - pos <= len) {
+		return 0;
+	    }
+	    return (max ? freq.get(node) : 1);
+	}
+	if (currentCB > wordBitLen + this.bitLen) {          // the keys share the next character.
+	    return (max ? freqOfExternalNodes.get(node) : 1);
+	}
+	int packed = successors.get(node);
+	if (packed < 0) {
+	    return overflow.get(2 * (-1 - packed) + (max ? 1 : 0));
+	}
+	return (max ? (packed & ((1 << FREQ_BITS) - 1)) : (packed >>> FREQ_BITS));
+    }
+
+    /**
+     * Returns the number of distinct characters (or words) which follow the
+     * word. A Chinese like PAT-tree reads it from the node where the search
+     * for the word ends, computed once for all nodes (see computeContexts());
+     * an English like one has no such counts and enumerates the successors
+     * by getSuffixPerplexity(word, 1), in time and garbage linear in the
+     * branch below the word.
+     *
+     * @param word the target word.
+     * @return the number of successors.
+     */
+    public int getSuccessorCount(String word) {
+	return this.getSuccessors(word, false);
+    }
+
+    /**
+     * Returns the frequency of the most frequent character (or word) which
+     * follows the word, 0 if there is none, from the node as
+     * getSuccessorCount() does, or by enumerating the successors of an
+     * English like word.
+     *
+     * @param word the target word.
+     * @return the frequency of the most frequent successor.
+     */
+    public int getMaxSuccessorFrequency(String word) {
+	return this.getSuccessors(word, true);
+    }
+
+    private int getSuffixLen(String data, String word, int suffixLen,
+			     int langType) {
+	return Strings.getSuffixLen(data, 0, data.length(), word.length(),
+				    suffixLen, langType);
     }
 
+    /**
+     * Returns the distinct strings of suffixLen characters (or words) which
+     * follow the word, sorted by ascending frequency. The strings are found
+     * in the order of the keys, at the first node of a branch whose keys
+     * share them, or at an external node above that. An English like string
+     * ends at a space or at the end of a key, so the keys must share the
+     * character after it too; equal strings found one after the other, those
+     * of a key ending with the string and of the keys going on past a space,
+     * are summed up, as a suffix array sums them.
+     *
+     * @param word the word.
+     * @param suffixLen the number of characters (or words) of the strings.
+     * @return the list of SuffixPerplexity.
+     */
     public ArrayList getSuffixPerplexity(String word, int suffixLen) {
 	//--------------------------------------------------
 	// ArrayList result = new ArrayList();
 	//-------------------------------------------------- 
 	ArrayList<SuffixPerplexity> result = new ArrayList<SuffixPerplexity>();
-	BitSet bits = Bits.toBitSet(word.getBytes());
-	int wordBitLen = word.getBytes().length * 8;
+	int len = word.length();
+	int wordBitLen = len * Bits.CHAR_BITS;
 	//int maxCB = wordBitLen + suffixLen * this.bitLen;
 
-	if (tree != null) {
-	    PATNode node = tree.left;
+	if (numNodes > 0) {
+	    int node = left.get(HEADER);
 	    int lastCB = 0;
-	    int currentCB = node.CB;
+	    int currentCB = CB.get(node);
 
 	    /*
 	     * traverses nodes until we find the external node, which is the node
@@ -309,138 +1266,417 @@ public class PATTree implements java.io.Serializable {
 	     * number of bits in the word.
 	     */
 	    while ( (currentCB > lastCB) && (currentCB <= wordBitLen)) {
-		if (bits.get(currentCB - 1)) {
-		    node = node.right;
+		if (Bits.getBit(word, 0, len, currentCB - 1)) {
+		    node = right.get(node);
 		}
 		else {
-		    node = node.left;
+		    node = left.get(node);
 		}
 		lastCB = currentCB;
-		currentCB = node.CB;
-	    }
-	    int ei = node.dataPos + word.length();
-	    if ( (ei <= dataStrs.length()) &&
-		 dataStrs.substring(node.dataPos, ei).equals(word)) {                            // word is found.
-		ei = dataStrs.indexOf(",", node.dataPos);
-		if (ei == -1) {
-		    ei = dataStrs.length();
-		}
-		String data = dataStrs.substring(node.dataPos, ei);
-		if (currentCB <= lastCB) {                     // the word is found in an external node.
-		    int realSuffixLen = this.getSuffixLen(data, word, suffixLen,
-							  this.langType);
-		    if ( (data.length() >= (word.length() + realSuffixLen)) &&
-			 (realSuffixLen != -1)) {
-			String suffix = data.substring(word.length(),
-						       word.length() + realSuffixLen);
-			result.add(new SuffixPerplexity(suffix, node.freq));
-		    }
-		}
-		else {                     // the word is found in an internal node.
-		//--------------------------------------------------
-		//     Stack s = new Stack();
-		//-------------------------------------------------- 
-		    Stack<PATNode> s = new Stack<PATNode>();
-		    s.push(node);
-		    while (!s.empty()) {
-			node = (PATNode) s.pop();
-			ei = dataStrs.indexOf(",", node.dataPos);
-			if (ei == -1) {
-			    ei = dataStrs.length();
-			}
-			data = dataStrs.substring(node.dataPos, ei);
+		currentCB = CB.get(node);
+	    }
+	    int pos = dataPos.get(node);
+	    if (text.startsWith(pos, this.keyEnd(pos), word)) {                            // word is found.
+		// the nodes to be visited, ~node for an external one, the
+		// leftmost on top.
+		int[] s = new int[16];
+		int top = 0;
+		s[top++] = ((currentCB <= lastCB) ? ~node : node);
+		while (top > 0) {
+		    node = s[--top];
+		    if (node < 0) {                     // an external node.
+			node = ~node;
+			String data = this.getData(node);
 			int realSuffixLen = this.getSuffixLen(data, word, suffixLen,
 							      this.langType);
-			int maxCB = wordBitLen + realSuffixLen * this.bitLen;
-			if ( (node.CB > maxCB) && (realSuffixLen != -1)) {
-			    String suffix = data.substring(word.length(),
-							   word.length() + realSuffixLen);
-			    result.add(new SuffixPerplexity(suffix,node.freqOfExternalNodes));
+			if ( (data.length() >= (word.length() + realSuffixLen)) &&
+			     (realSuffixLen != -1)) {
+			    PATTree.addSuffix(result, data.substring(word.length(),
+								     word.length() + realSuffixLen),
+					      freq.get(node));
 			}
-			else {
-			    ei = dataStrs.indexOf(",", node.left.dataPos);
-			    if (ei == -1) {
-				ei = dataStrs.length();
-			    }
-			    data = dataStrs.substring(node.left.dataPos, ei);
-			    realSuffixLen = this.getSuffixLen(data, word, suffixLen,
-							      this.langType);
-			    if (node.left.CB > node.CB) {
-				s.push(node.left);
-			    }
-			    else {
-				if ( (data.length() >= (word.length() + realSuffixLen)) &&
-				     (realSuffixLen != -1)) {
-				    String suffix = data.substring(word.length(),
-								   word.length() + realSuffixLen);
-				    result.add(new SuffixPerplexity(suffix, node.left.freq));
-				}
-			    }
-			    ei = dataStrs.indexOf(",", node.right.dataPos);
-			    if (ei == -1) {
-				ei = dataStrs.length();
-			    }
-			    data = dataStrs.substring(node.right.dataPos, ei);
-			    realSuffixLen = this.getSuffixLen(data, word, suffixLen,
-							      this.langType);
-			    if (node.right.CB > node.CB) {
-				s.push(node.right);
-			    }
-			    else {
-				if ( (data.length() >= (word.length() + realSuffixLen)) &&
-				     (realSuffixLen != -1)) {
-				    String suffix = data.substring(word.length(),
-								   word.length() + realSuffixLen);
-				    result.add(new SuffixPerplexity(suffix, node.right.freq));
-				}
-			    }
+			continue;
+		    }
+		    String data = this.getData(node);
+		    int realSuffixLen = this.getSuffixLen(data, word, suffixLen,
+							  this.langType);
+		    if ((realSuffixLen != -1) &&
+			(CB.get(node) > wordBitLen + this.getSharedLen(realSuffixLen) * this.bitLen)) {
+			PATTree.addSuffix(result, data.substring(word.length(),
+								 word.length() + realSuffixLen),
+					  freqOfExternalNodes.get(node));
+		    }
+		    else {
+			if (top + 2 > s.length) {
+			    s = Arrays.copyOf(s, s.length * 2);
 			}
+			int child = right.get(node);
+			s[top++] = ((CB.get(child) > CB.get(node)) ? child : ~child);
+			child = left.get(node);
+			s[top++] = ((CB.get(child) > CB.get(node)) ? child : ~child);
 		    }
 		}
 	    }
 
-	    Collections.sort(result, new Comparator<SuffixPerplexity>() {
-		public int compare(SuffixPerplexity lhs, SuffixPerplexity rhs) {
-		    return lhs.freq - rhs.freq;
-		}
-	    });
+	    Collections.sort(result, SuffixPerplexity.FREQ_ORDER);
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the number of characters the keys must share for a string of
+     * len characters to be the same in all of them: an English like string
+     * must be followed by the same space, or end, in all of them.
+     */
+    private int getSharedLen(int len) {
+	return ((this.langType == Strings.EnglishLike) ? (len + 1) : len);
+    }
+
+    /**
+     * Adds a string to the list of strings found in the order of the keys,
+     * summing up its frequency with the last one if they are equal.
+     */
+    private static void addSuffix(List<SuffixPerplexity> result, String suffix,
+				  int freq) {
+	int last = result.size() - 1;
+	if ((last >= 0) && result.get(last).suffix.equals(suffix)) {
+	    result.get(last).freq += freq;
+	} else {
+	    result.add(new SuffixPerplexity(suffix, freq));
+	}
+    }
+
+    public ArrayList getNGrams(int n) {
+	return this.getSuffixPerplexity("", n);
+    }
+
+    /**
+     * Enumerates the n-grams of every n up to maxN in one pass, as
+     * visitNGrams() finds them, and sorts the list of each n.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @return the lists of SuffixPerplexity, the n-grams of n at n - 1.
+     */
+    public ArrayList[] getNGrams(int maxN, int minFreq) {
+	@SuppressWarnings({"unchecked"})
+	final ArrayList<SuffixPerplexity>[] result =
+	    (ArrayList<SuffixPerplexity>[]) new ArrayList[maxN];
+
+	for (int i = 0; i < maxN; i++) {
+	    result[i] = new ArrayList<SuffixPerplexity>();
+	}
+	this.visitNGrams(maxN, minFreq, new NGramVisitor() {
+	    public void visit(int n, String ngram, int freq) {
+		result[n - 1].add(new SuffixPerplexity(ngram, freq));
+	    }
+	});
+	for (int i = 0; i < maxN; i++) {
+	    Collections.sort(result[i], SuffixPerplexity.FREQ_ORDER);
 	}
 
 	return result;
     }
 
+    /**
+     * Passes the n-grams of every n up to maxN to a visitor in one
+     * depth-first traversal, in the order of the keys. The n-grams of n are
+     * found where the traversal of getSuffixPerplexity("", n) would find
+     * them: at the first node of a branch whose keys share n characters (or
+     * words), or at an external node above that. Going down a branch only
+     * adds to the least n for which its nodes are reached, so each node
+     * carries that n, and no branch whose keys occur less than minFreq times
+     * is entered, unless it may share an English like n-gram with the keys
+     * next to it (see mayShareNGrams()). Equal English like n-grams found one
+     * after the other are passed as one once their frequencies are summed
+     * up. The traversal keeps only its stack of nodes and the last n-gram of
+     * each n.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @param visitor the visitor of the n-grams.
+     */
+    public void visitNGrams(int maxN, int minFreq, NGramVisitor visitor) {
+	if (numNodes == 0) {
+	    return;
+	}
+
+	NGramRuns runs = null;
+	if (this.langType == Strings.EnglishLike) {
+	    runs = new NGramRuns(maxN, minFreq, visitor);
+	    visitor = runs;
+	}
+	int node = left.get(HEADER);
+	// pairs of a node, ~node for an external one, and the least n for
+	// which it is reached, the leftmost on top.
+	int[] s = new int[32];
+	int top = 0;
+	if (CB.get(node) <= 0) {
+	    if (freq.get(node) >= minFreq) {
+		s[top++] = ~node;
+		s[top++] = 1;
+	    }
+	} else if (freqOfExternalNodes.get(node) >= minFreq) {
+	    s[top++] = node;
+	    s[top++] = 1;
+	}
+	while (top > 0) {
+	    int n = s[--top];
+	    node = s[--top];
+	    if (node < 0) {
+		this.visitNGrams(~node, n, maxN, visitor);
+		continue;
+	    }
+	    int f = freqOfExternalNodes.get(node);
+	    String data = this.getData(node);
+	    for (; n <= maxN; n++) {
+		int realSuffixLen = this.getSuffixLen(data, "", n,
+						      this.langType);
+		if ((realSuffixLen == -1) ||
+		    (CB.get(node) <= this.getSharedLen(realSuffixLen) * this.bitLen)) {
+		    break;
+		}
+		visitor.visit(n, data.substring(0, realSuffixLen), f);
+	    }
+	    if (n > maxN) {
+		continue;
+	    }
+	    // the children are reached for n onwards.
+	    if (top + 4 > s.length) {
+		s = Arrays.copyOf(s, s.length * 2);
+	    }
+	    top = this.push(s, top, node, right.get(node), n, minFreq);
+	    top = this.push(s, top, node, left.get(node), n, minFreq);
+	}
+	if (runs != null) {
+	    runs.flush();
+	}
+    }
+
+    /**
+     * Pushes a child of the node for visitNGrams(), ~child if it is external,
+     * unless its keys occur less than minFreq times and it cannot share an
+     * n-gram with the keys next to it.
+     *
+     * @return the new top of the stack.
+     */
+    private int push(int[] s, int top, int node, int child, int n, int minFreq) {
+	boolean isExternal = (CB.get(child) <= CB.get(node));
+	int f = (isExternal ? freq.get(child) : freqOfExternalNodes.get(child));
+
+	if ((f >= minFreq) || this.mayShareNGrams(node, child)) {
+	    s[top++] = (isExternal ? ~child : child);
+	    s[top++] = n;
+	}
+
+	return top;
+    }
+
+    /**
+     * Tests if a child of the node may share an English like n-gram with
+     * keys outside of it. An n-gram shared by two keys ends where one of
+     * them ends and the other goes on with a space, the code units 0 and 32,
+     * which first differ in the bit of 32; but above the child, keys sharing
+     * an n-gram and a space after it share the n-gram as a branch already.
+     * So the node must compare a bit of 32 or less, in a character in which
+     * the keys of the child have none of the bits above 32.
+     */
+    private boolean mayShareNGrams(int node, int child) {
+	if (this.langType != Strings.EnglishLike) {
+	    return false;
+	}
+	int cb = CB.get(node) - 1;
+	if (cb % this.bitLen < this.bitLen - 6) {
+	    return false;
+	}
+	int pos = dataPos.get(child);
+	int i = pos + cb / this.bitLen;
+
+	return ((i >= this.keyEnd(pos)) || (text.charAt(i) < 64));
+    }
+
+    /**
+     * Passes the n-grams of the key of an external node for n from the given
+     * one up to the length of the key, or up to maxN.
+     */
+    private void visitNGrams(int node, int n, int maxN, NGramVisitor visitor) {
+	int f = freq.get(node);
+	String data = this.getData(node);
+
+	for (; n <= maxN; n++) {
+	    int realSuffixLen = this.getSuffixLen(data, "", n, this.langType);
+	    if ((realSuffixLen == -1) || (data.length() < realSuffixLen)) {
+		break;
+	    }
+	    visitor.visit(n, data.substring(0, realSuffixLen), f);
+	}
+    }
+
+    /**
+     * Passes on the n-grams passed to it, summing up the frequencies of
+     * equal n-grams passed one after the other, and leaving out those which
+     * occur less than minFreq times.
+     */
+    private static class NGramRuns implements NGramVisitor {
+	private NGramVisitor visitor = null;
+	private int minFreq = 0;
+	private String[] ngrams = null;          // the last n-gram of each n,
+	private int[] freqs = null;          // and its frequency so far.
+
+	public NGramRuns(int maxN, int minFreq, NGramVisitor visitor) {
+	    this.visitor = visitor;
+	    this.minFreq = minFreq;
+	    this.ngrams = new String[maxN];
+	    this.freqs = new int[maxN];
+	}
+
+	public void visit(int n, String ngram, int freq) {
+	    if (ngram.equals(ngrams[n - 1])) {
+		freqs[n - 1] += freq;
+		return;
+	    }
+	    this.flush(n);
+	    ngrams[n - 1] = ngram;
+	    freqs[n - 1] = freq;
+	}
+
+	private void flush(int n) {
+	    if ((ngrams[n - 1] != null) && (freqs[n - 1] >= minFreq)) {
+		visitor.visit(n, ngrams[n - 1], freqs[n - 1]);
+	    }
+	    ngrams[n - 1] = null;
+	}
+
+	/**
+	 * Passes on the last n-gram of each n.
+	 */
+	public void flush() {
+	    for (int n = 1; n <= ngrams.length; n++) {
+		this.flush(n);
+	    }
+	}
+    }
+
+    /**
+     * Returns the data string (i.e. the key) of the given node.
+     *
+     * @param node the index of the node.
+     * @return the data string.
+     */
+    private String getData(int node) {
+	int pos = dataPos.get(node);
+	return text.substring(pos, this.keyEnd(pos));
+    }
+
     public String getDataStrs() {
-	return this.dataStrs;
+	return this.text.toString();
     }
 
     public void print() {
-	if (tree != null) {
-	    System.out.println("Data Stream: " + dataStrs);
-	    System.out.println(tree.dataPos + "(" + tree.CB + ", " +
-			       tree.freqOfExternalNodes + ", " + tree.freq + ")");
-	    System.out.println("left: " + tree.left.dataPos);
-	    if (tree.left.CB > tree.CB) {
-		this.printTree(tree.left);
+	if (numNodes > 0) {
+	    System.out.println("Data Stream: " + text);
+	    System.out.println(dataPos.get(HEADER) + "(" + CB.get(HEADER) + ", " +
+			       freqOfExternalNodes.get(HEADER) + ", " +
+			       freq.get(HEADER) + ")");
+	    System.out.println("left: " + dataPos.get(left.get(HEADER)));
+	    if (CB.get(left.get(HEADER)) > CB.get(HEADER)) {
+		this.printTree(left.get(HEADER));
 	    }
 	}
     }
 
-    private void printTree(PATNode t) {
-	System.out.println(t.dataPos + "(" + t.CB + ", " +
-			   t.freqOfExternalNodes + ", " + t.freq + ")");
-	System.out.println("left: " + t.left.dataPos);
-	System.out.println("right: " + t.right.dataPos);
-	if (t.left.CB > t.CB) {
-	    this.printTree(t.left);
+    private void printTree(int t) {
+	System.out.println(dataPos.get(t) + "(" + CB.get(t) + ", " +
+			   freqOfExternalNodes.get(t) + ", " + freq.get(t) + ")");
+	System.out.println("left: " + dataPos.get(left.get(t)));
+	System.out.println("right: " + dataPos.get(right.get(t)));
+	if (CB.get(left.get(t)) > CB.get(t)) {
+	    this.printTree(left.get(t));
+	}
+	if (CB.get(right.get(t)) > CB.get(t)) {
+	    this.printTree(right.get(t));
+	}
+    }
+
+    /**
+     * Writes the binary image of the PAT-tree.
+     *
+     * @param out the image writer.
+     */
+    public void write(ImageWriter out) throws IOException {
+	this.computeContexts();
+	out.writeInt(MAGIC);
+	out.writeInt(VERSION);
+	out.writeInt(this.langType);
+	out.writeInt(this.numNodes);
+	out.writeInt(this.prunedFreq);
+	out.writeInt(this.maxKeyLen);
+	out.writeInts(CB, numNodes);
+	out.writeInts(dataPos, numNodes);
+	out.writeInts(freqOfExternalNodes, numNodes);
+	out.writeInts(freq, numNodes);
+	out.writeInts(left, numNodes);
+	out.writeInts(right, numNodes);
+	if (this.langType == Strings.ChineseLike) {
+	    out.writeInts(successors, numNodes);
+	    out.writeInt(overflow.capacity());
+	    out.writeInts(overflow, overflow.capacity());
+	}
+	text.write(out);
+    }
+
+    /**
+     * Reads a PAT-tree from its binary image. Nothing is copied: the nodes and
+     * the data stream stay in the mapped image until the tree is modified.
+     *
+     * @param in the image reader.
+     * @return the PAT-tree.
+     */
+    public static PATTree read(ImageReader in) throws IOException {
+	if (in.readInt() != MAGIC) {
+	    throw (new IOException("Not a PAT-tree image"));
+	}
+	int version = in.readInt();
+	if (version != VERSION) {
+	    throw (new IOException("Unsupported PAT-tree image version: " +
+				   version));
 	}
-	if (t.right.CB > t.CB) {
-	    this.printTree(t.right);
+	PATTree result = new PATTree(in.readInt());
+	result.numNodes = in.readInt();
+	result.prunedFreq = in.readInt();
+	result.maxKeyLen = in.readInt();
+	result.CB = in.mapInts(result.numNodes);
+	result.dataPos = in.mapInts(result.numNodes);
+	result.freqOfExternalNodes = in.mapInts(result.numNodes);
+	result.freq = in.mapInts(result.numNodes);
+	result.left = in.mapInts(result.numNodes);
+	result.right = in.mapInts(result.numNodes);
+	if (result.langType == Strings.ChineseLike) {
+	    result.successors = in.mapInts(result.numNodes);
+	    result.overflow = in.mapInts(in.readInt());
+	}
+	result.text = TextStore.read(in);
+
+	return result;
+    }
+
+    public void toFile(String fileName) throws IOException {
+	ImageWriter out = new ImageWriter(fileName);
+	try {
+	    this.write(out);
+	} finally {
+	    out.close();
 	}
     }
 
-    public void toFile(String fileName) {
-	FileHandler fh = new FileHandler(fileName);
-	fh.writeObject(this);
+    public static PATTree fromFile(String fileName) throws IOException {
+	ImageReader in = new ImageReader(fileName);
+	try {
+	    return PATTree.read(in);
+	} finally {
+	    in.close();
+	}
     }
 
 }
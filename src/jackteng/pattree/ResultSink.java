@@ -0,0 +1,23 @@
+package jackteng.pattree;
+
+/**
+ * <p>Description: Receives the terms extract() finds, one at a time, in the
+ *                 order they enter the result maps. The terms are passed
+ *                 from the thread which runs extract(), so a sink need not
+ *                 be thread-safe.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public interface ResultSink {
+
+    /**
+     * Receives a term.
+     *
+     * @param n the number of characters (or words) of the term.
+     * @param term the term.
+     * @param freq the frequency of the term.
+     */
+    public void accept(int n, String term, int freq);
+}
@@ -0,0 +1,241 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.nio.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Splits text into the runs of legal characters and adds them
+ *                 to a forward index and, if any, an inverse index. Each line
+ *                 is trimmed and its runs of white spaces condensed into
+ *                 single spaces, the way Strings.condenseSpace() does, but in
+ *                 place in a buffer reused for every line, and the terms are
+ *                 added as ranges of that buffer. So it takes a single pass
+ *                 over the text whatever the length of the lines.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+class Segmenter {
+    private int langType = Strings.ChineseLike;
+    private CharClassifier classifier = null;
+    private SuffixIndex pattree = null;
+    private SuffixIndex invpattree = null;
+    private Metrics.Counter chars = null;          // null if not counted.
+    private Metrics.Counter segments = null;
+    private Metrics.Counter suffixes = null;
+
+    private char[] line = new char[256];          // the current line.
+    private int lineLen = 0;
+    private CharBuffer lineBuf = CharBuffer.wrap(line);
+    private char[] inv = new char[256];          // the inverse of a term.
+    private CharBuffer invBuf = CharBuffer.wrap(inv);
+
+    /**
+     * @param langType the language type, either Chinese like or English like.
+     * @param classifier the legal characters of terms. Spaces are always
+     *        legal in English like text.
+     * @param pattree the forward index.
+     * @param invpattree the inverse index; null if the forward index answers
+     *        the left-context queries too. Only the parts of
+     *        PATTermExtraction.buildPruned() have one, as a forward part
+     *        holds only the keys starting with its characters and so
+     *        cannot answer the left contexts of the others.
+     */
+    public Segmenter(int langType, CharClassifier classifier,
+		     SuffixIndex pattree, SuffixIndex invpattree) {
+	this.langType = langType;
+	this.classifier = classifier;
+	this.pattree = pattree;
+	this.invpattree = invpattree;
+    }
+
+    /**
+     * Counts the characters, the segments and the suffixes added in the
+     * ingest.chars, ingest.segments and ingest.suffixes counters of the
+     * metrics.
+     *
+     * @param metrics the metrics; null if nothing is counted.
+     */
+    public Segmenter(int langType, CharClassifier classifier,
+		     SuffixIndex pattree, SuffixIndex invpattree,
+		     Metrics metrics) {
+	this(langType, classifier, pattree, invpattree);
+	if (metrics != null) {
+	    chars = metrics.counter("ingest.chars");
+	    segments = metrics.counter("ingest.segments");
+	    suffixes = metrics.counter("ingest.suffixes");
+	}
+    }
+
+    /**
+     * Adds the terms read from a reader, line by line. The reader is not
+     * closed.
+     *
+     * @param reader the reader.
+     */
+    public void add(Reader reader) throws IOException {
+	char[] buf = new char[8192];
+
+	for (int n = reader.read(buf); n >= 0; n = reader.read(buf)) {
+	    for (int i = 0; i < n; i++) {
+		this.put(buf[i]);
+	    }
+	}
+	this.endLine();
+    }
+
+    /**
+     * Adds the terms of a text block. The block may hold several lines, and
+     * its end ends a line.
+     *
+     * @param text the text block.
+     */
+    public void add(CharSequence text) {
+	int len = text.length();
+
+	for (int i = 0; i < len; i++) {
+	    this.put(text.charAt(i));
+	}
+	this.endLine();
+    }
+
+    private void put(char c) {
+	if ((c == '\n') || (c == '\r')) {
+	    this.endLine();
+	} else {
+	    if (lineLen == line.length) {
+		char[] a = new char[line.length * 2];
+		System.arraycopy(line, 0, a, 0, lineLen);
+		line = a;
+		lineBuf = CharBuffer.wrap(line);
+	    }
+	    line[lineLen++] = c;
+	}
+    }
+
+    /**
+     * Tests if the character is matched by the regular expression "\s".
+     */
+    private static boolean isSpace(char c) {
+	return ((c == ' ') || (c == '\t') || (c == '\n') || (c == '\u000B') ||
+		(c == '\f') || (c == '\r'));
+    }
+
+    /**
+     * Adds the terms of the current line. The condensed line is written over
+     * the line itself, which never gets longer, and a term is the range from
+     * the last illegal character up to the write position.
+     */
+    private void endLine() {
+	int from = 0;
+	int to = lineLen;
+	lineLen = 0;
+
+	// trims the line.
+	while ((from < to) && (line[from] <= ' ')) {
+	    from++;
+	}
+	while ((to > from) && (line[to - 1] <= ' ')) {
+	    to--;
+	}
+
+	int start = from;          // the beginning of the current term.
+	int end = from;          // the write position.
+	for (int i = from; i < to; ) {
+	    char c = line[i++];
+	    if (Segmenter.isSpace(c)) {
+		while ((i < to) && Segmenter.isSpace(line[i])) {
+		    i++;
+		}
+		c = ' ';
+	    }
+
+	    boolean isLegal = (classifier.isLegal(c) ||
+			       ((langType == Strings.EnglishLike) && (c == ' ')));
+	    if (isLegal) {
+		line[end++] = c;
+	    } else {
+		if (end > start) {
+		    this.addTerm(start, end);
+		}
+		start = end;
+	    }
+	}
+
+	if (end > start) {
+	    this.addTerm(start, end);
+	}
+    }
+
+    /**
+     * Counts a segment, whose suffixes start at every character of a Chinese
+     * like segment and after every space of an English like one.
+     */
+    private void count(int from, int to) {
+	int n = to - from;
+	if (langType == Strings.EnglishLike) {
+	    n = ((to > from) ? 1 : 0);
+	    for (int i = from; i < to; i++) {
+		if (line[i] == ' ') {
+		    n++;
+		}
+	    }
+	}
+	chars.add(to - from);
+	segments.increment();
+	suffixes.add(n);
+    }
+
+    /**
+     * Adds the trimmed range of the line to the forward index and its
+     * inverse to the inverse index. An English like term of spaces only is
+     * added as an empty string.
+     */
+    private void addTerm(int from, int to) {
+	while ((from < to) && (line[from] <= ' ')) {
+	    from++;
+	}
+	while ((to > from) && (line[to - 1] <= ' ')) {
+	    to--;
+	}
+	pattree.add(lineBuf, from, to);
+	if (chars != null) {
+	    this.count(from, to);
+	}
+	if (invpattree == null) {
+	    return;
+	}
+
+	if (inv.length < to - from) {
+	    inv = new char[line.length];
+	    invBuf = CharBuffer.wrap(inv);
+	}
+	int len = 0;
+	if (langType == Strings.EnglishLike) {
+	    // reverses the order of the words, as Strings.inverse() does.
+	    for (int i = to; i > from; ) {
+		int wordEnd = i;
+		while ((i > from) && (line[i - 1] != ' ')) {
+		    i--;
+		}
+		if (i < wordEnd) {
+		    if (len > 0) {
+			inv[len++] = ' ';
+		    }
+		    System.arraycopy(line, i, inv, len, wordEnd - i);
+		    len += wordEnd - i;
+		}
+		while ((i > from) && (line[i - 1] == ' ')) {
+		    i--;
+		}
+	    }
+	} else {
+	    for (int i = to - 1; i >= from; i--) {
+		inv[len++] = line[i];
+	    }
+	}
+	invpattree.add(invBuf, 0, len);
+    }
+}
@@ -0,0 +1,954 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import jackteng.util.*;
+import jackteng.file.*;
+
+/**
+ * <p>Description: A suffix array with an LCP array over the data strings.
+ *                 Every data string is appended to a text store as it is
+ *                 added (duplicates included, so no search is needed while
+ *                 building), and the array is sorted by SA-IS in linear time
+ *                 on the first query after an addition. The longest common
+ *                 prefix of two neighbouring suffixes is kept in a byte which
+ *                 saturates at 255, the text being compared directly past
+ *                 that.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class SuffixArray implements SuffixIndex {
+
+    private final static int MAGIC = 0x50415453;          // "PATS".
+    private final static int VERSION = 1;
+    private final static int MAX_LCP = 255;
+
+    private TextStore text = new TextStore();
+    private IntBuffer sa = null;          // the sorted suffixes; null if not sorted yet.
+    private ByteBuffer lcp = null;          // common prefix length with the previous suffix.
+    private int numSuffixes = 0;
+    private int langType = Strings.ChineseLike;
+    private boolean frozen = false;
+
+    public SuffixArray() { }
+
+    public SuffixArray(int langType) {
+	this.langType = langType;
+    }
+
+    public int getLangType() {
+	return this.langType;
+    }
+
+    /**
+     * Sorts the suffixes and makes the suffix array read-only, so that it
+     * can be queried by several threads at once.
+     */
+    public void freeze() {
+	this.sort();
+	this.frozen = true;
+    }
+
+    public boolean isFrozen() {
+	return this.frozen;
+    }
+
+    private void checkNotFrozen() {
+	if (frozen) {
+	    throw (new IllegalStateException("The suffix array is frozen"));
+	}
+    }
+
+    /**
+     * Returns the number of suffixes in the suffix array.
+     *
+     * @return the number of suffixes.
+     */
+    public int size() {
+	this.sort();
+	return this.numSuffixes;
+    }
+
+    TextStore getText() {
+	return this.text;
+    }
+
+    /**
+     * Returns the data position of the i-th suffix in sorted order.
+     */
+    int getSuffix(int i) {
+	this.sort();
+	return sa.get(i);
+    }
+
+    /**
+     * Returns the length of the common prefix of the keys of the i-th and the
+     * previous suffixes, comparing the text where the stored value saturates.
+     */
+    int getLcp(int i) {
+	this.sort();
+	int result = lcp.get(i) & 0xff;
+	if (result == MAX_LCP) {
+	    int p1 = sa.get(i - 1);
+	    int p2 = sa.get(i);
+	    int e1 = text.end(p1);
+	    int e2 = text.end(p2);
+	    while ((p1 + result < e1) && (p2 + result < e2) &&
+		   (text.charAt(p1 + result) == text.charAt(p2 + result))) {
+		result++;
+	    }
+	}
+
+	return result;
+    }
+
+    public void add(String data) {
+	this.add(data, 0, data.length());
+    }
+
+    public void add(CharSequence data, int from, int to) {
+	this.checkNotFrozen();
+	text.append(data, from, to);
+	sa = null;
+    }
+
+    /**
+     * Merges another suffix array into this one, as if its data strings were
+     * added after those of this one. The merged suffixes are sorted on the
+     * next query.
+     *
+     * @param other the suffix array to be merged.
+     */
+    public void merge(SuffixIndex other) {
+	if (!(other instanceof SuffixArray)) {
+	    throw (new IllegalArgumentException("Not a suffix array"));
+	}
+	SuffixArray array = (SuffixArray) other;
+	if (array.langType != this.langType) {
+	    throw (new IllegalArgumentException("Different language types"));
+	}
+	this.checkNotFrozen();
+	text.appendAll(array.text);
+	this.sa = null;
+    }
+
+    /**
+     * Tests if a suffix starts at the given position of the text: at every
+     * character of a Chinese like string and after every space of an English
+     * like one.
+     */
+    private boolean isSuffix(int pos) {
+	char c = text.charAt(pos);
+
+	if (c == TextStore.SEPARATOR) {
+	    return false;
+	}
+	if ((this.langType == Strings.EnglishLike) && (pos > 0)) {
+	    c = text.charAt(pos - 1);
+	    return ((c == TextStore.SEPARATOR) || (c == ' '));
+	}
+
+	return true;
+    }
+
+    /**
+     * Sorts the suffixes of the text store if they are not sorted yet.
+     */
+    private void sort() {
+	if (sa != null) {
+	    return;
+	}
+
+	// the separators sort before every character, followed by the sentinel.
+	int n = text.length() + 1;
+	int[] T = new int[n];
+	for (int i = 0; i < n - 1; i++) {
+	    T[i] = text.charAt(i) + 1;
+	}
+	T[n - 1] = 0;
+	int[] SA = new int[n];
+	SuffixArray.sais(T, SA, n, Character.MAX_VALUE + 2);
+
+	// computes the LCP array by Kasai's algorithm, stopping at separators so
+	// that a common prefix never runs from one data string into the next.
+	int[] rank = T;
+	for (int i = 0; i < n; i++) {
+	    rank[SA[i]] = i;
+	}
+	int[] height = new int[n];
+	for (int i = 0, h = 0; i < n - 1; i++) {
+	    if (rank[i] > 0) {
+		int j = SA[rank[i] - 1];
+		while ((i + h < n - 1) && (j + h < n - 1) &&
+		       (text.charAt(i + h) == text.charAt(j + h)) &&
+		       (text.charAt(i + h) != TextStore.SEPARATOR)) {
+		    h++;
+		}
+		height[rank[i]] = h;
+		if (h > 0) {
+		    h--;
+		}
+	    } else {
+		h = 0;
+	    }
+	}
+	rank = null;
+	T = null;
+
+	// keeps the suffixes that are keys; the common prefix of two kept
+	// suffixes is the minimum over the suffixes between them.
+	int m = 0;
+	for (int i = 0; i < n; i++) {
+	    if ((SA[i] < n - 1) && this.isSuffix(SA[i])) {
+		m++;
+	    }
+	}
+	int[] keys = new int[m];
+	byte[] heights = new byte[m];
+	int k = 0;
+	int minHeight = Integer.MAX_VALUE;
+	for (int i = 0; i < n; i++) {
+	    minHeight = Math.min(minHeight, height[i]);
+	    if ((SA[i] < n - 1) && this.isSuffix(SA[i])) {
+		keys[k] = SA[i];
+		heights[k] = (byte) ((k == 0) ? 0 : Math.min(minHeight, MAX_LCP));
+		k++;
+		minHeight = Integer.MAX_VALUE;
+	    }
+	}
+	this.numSuffixes = m;
+	this.lcp = ByteBuffer.wrap(heights);
+	this.sa = IntBuffer.wrap(keys);
+    }
+
+    /**
+     * Sorts the suffixes of T by SA-IS. T[n - 1] must be the unique smallest
+     * symbol and every symbol must be less than K.
+     */
+    private static void sais(int[] T, int[] SA, int n, int K) {
+	if (n == 1) {
+	    SA[0] = 0;
+	    return;
+	}
+	boolean[] t = new boolean[n];          // true for S-type.
+	int[] bkt = new int[K];
+
+	t[n - 1] = true;
+	for (int i = n - 2; i >= 0; i--) {
+	    t[i] = ((T[i] < T[i + 1]) || ((T[i] == T[i + 1]) && t[i + 1]));
+	}
+
+	// sorts the LMS substrings.
+	SuffixArray.getBuckets(T, bkt, n, K, true);
+	Arrays.fill(SA, 0, n, -1);
+	for (int i = 1; i < n; i++) {
+	    if (isLMS(t, i)) {
+		SA[--bkt[T[i]]] = i;
+	    }
+	}
+	SuffixArray.induce(T, SA, t, bkt, n, K);
+
+	// names the sorted LMS substrings.
+	int n1 = 0;
+	for (int i = 0; i < n; i++) {
+	    if (isLMS(t, SA[i])) {
+		SA[n1++] = SA[i];
+	    }
+	}
+	Arrays.fill(SA, n1, n, -1);
+	int name = 0;
+	int prev = -1;
+	for (int i = 0; i < n1; i++) {
+	    int pos = SA[i];
+	    boolean diff = false;
+	    for (int d = 0; d < n; d++) {
+		if ((prev == -1) || (T[pos + d] != T[prev + d]) ||
+		    (t[pos + d] != t[prev + d])) {
+		    diff = true;
+		    break;
+		} else if ((d > 0) && (isLMS(t, pos + d) || isLMS(t, prev + d))) {
+		    break;
+		}
+	    }
+	    if (diff) {
+		name++;
+		prev = pos;
+	    }
+	    SA[n1 + pos / 2] = name - 1;
+	}
+	int[] s1 = new int[n1];
+	for (int i = n - 1, j = n1 - 1; i >= n1; i--) {
+	    if (SA[i] >= 0) {
+		s1[j--] = SA[i];
+	    }
+	}
+
+	// sorts the reduced string, recursively if the names are not unique.
+	int[] SA1 = new int[n1];
+	if (name < n1) {
+	    SuffixArray.sais(s1, SA1, n1, name);
+	} else {
+	    for (int i = 0; i < n1; i++) {
+		SA1[s1[i]] = i;
+	    }
+	}
+
+	// induces the suffix array from the sorted LMS suffixes.
+	for (int i = 1, j = 0; i < n; i++) {
+	    if (isLMS(t, i)) {
+		s1[j++] = i;
+	    }
+	}
+	SuffixArray.getBuckets(T, bkt, n, K, true);
+	Arrays.fill(SA, 0, n, -1);
+	for (int i = n1 - 1; i >= 0; i--) {
+	    int j = s1[SA1[i]];
+	    SA[--bkt[T[j]]] = j;
+	}
+	SuffixArray.induce(T, SA, t, bkt, n, K);
+    }
+
+    private static boolean isLMS(boolean[] t, int i) {
+	return ((i > 0) && t[i] && !t[i - 1]);
+    }
+
+    private static void getBuckets(int[] T, int[] bkt, int n, int K,
+				   boolean end) {
+	Arrays.fill(bkt, 0, K, 0);
+	for (int i = 0; i < n; i++) {
+	    bkt[T[i]]++;
+	}
+	for (int i = 0, sum = 0; i < K; i++) {
+	    sum += bkt[i];
+	    bkt[i] = (end ? sum : (sum - bkt[i]));
+	}
+    }
+
+    /**
+     * Induces the L-type suffixes from left to right and then the S-type
+     * suffixes from right to left.
+     */
+    private static void induce(int[] T, int[] SA, boolean[] t, int[] bkt,
+			       int n, int K) {
+	SuffixArray.getBuckets(T, bkt, n, K, false);
+	for (int i = 0; i < n; i++) {
+	    int j = SA[i] - 1;
+	    if ((j >= 0) && !t[j]) {
+		SA[bkt[T[j]]++] = j;
+	    }
+	}
+	SuffixArray.getBuckets(T, bkt, n, K, true);
+	for (int i = n - 1; i >= 0; i--) {
+	    int j = SA[i] - 1;
+	    if ((j >= 0) && t[j]) {
+		SA[--bkt[T[j]]] = j;
+	    }
+	}
+    }
+
+    /**
+     * Compares the key of the i-th suffix, cut to the length of the word, with
+     * the word.
+     */
+    private int compare(int i, String word) {
+	int pos = sa.get(i);
+	int end = text.end(pos);
+	int len = word.length();
+
+	for (int k = 0; k < len; k++) {
+	    if (pos + k >= end) {
+		return -1;
+	    }
+	    int diff = text.charAt(pos + k) - word.charAt(k);
+	    if (diff != 0) {
+		return diff;
+	    }
+	}
+
+	return 0;
+    }
+
+    /**
+     * Returns the index of the first suffix whose key is not less than
+     * (upper is false) or greater than (upper is true) the word.
+     */
+    private int bound(String word, boolean upper) {
+	int lo = 0;
+	int hi = numSuffixes;
+
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    int cmp = this.compare(mid, word);
+	    if ((cmp < 0) || (upper && (cmp == 0))) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+
+	return lo;
+    }
+
+    public int getFrequency(String word) {
+	this.sort();
+	return (this.bound(word, true) - this.bound(word, false));
+    }
+
+    /**
+     * Tests if the keys of the i-th and j-th suffixes share a prefix of the
+     * given length, where minLcp is the least LCP between them.
+     */
+    private boolean sharesPrefix(int i, int j, int minLcp, int len) {
+	if (minLcp >= len) {
+	    return true;
+	} else if (minLcp < MAX_LCP) {
+	    return false;
+	}
+	int p1 = sa.get(i);
+	int p2 = sa.get(j);
+
+	return ((text.end(p1) >= p1 + len) && (text.end(p2) >= p2 + len) &&
+		text.regionMatches(p1, p1 + len, text, p2, p2 + len));
+    }
+
+    public ArrayList getSuffixPerplexity(String word, int suffixLen) {
+	ArrayList<SuffixPerplexity> result = new ArrayList<SuffixPerplexity>();
+	int wordLen = word.length();
+
+	this.sort();
+	int lo = this.bound(word, false);
+	int hi = this.bound(word, true);
+
+	// the suffixes starting with the same following string are neighbours,
+	// so each run of them makes one SuffixPerplexity.
+	int first = -1;
+	int firstLen = 0;
+	int f = 0;
+	int minLcp = Integer.MAX_VALUE;
+	for (int i = lo; i < hi; i++) {
+	    if (i > lo) {
+		minLcp = Math.min(minLcp, lcp.get(i) & 0xff);
+	    }
+	    int pos = sa.get(i);
+	    int end = text.end(pos);
+	    int realSuffixLen = Strings.getSuffixLen(text, pos, end, wordLen,
+						     suffixLen, this.langType);
+	    if ((realSuffixLen == -1) || (end - pos < wordLen + realSuffixLen)) {
+		continue;
+	    }
+	    if ((first != -1) && (realSuffixLen == firstLen) &&
+		this.sharesPrefix(first, i, minLcp, wordLen + realSuffixLen)) {
+		f++;
+	    } else {
+		if (first != -1) {
+		    int p = sa.get(first);
+		    result.add(new SuffixPerplexity(
+			text.substring(p + wordLen, p + wordLen + firstLen), f));
+		}
+		first = i;
+		firstLen = realSuffixLen;
+		f = 1;
+	    }
+	    minLcp = Integer.MAX_VALUE;
+	}
+	if (first != -1) {
+	    int p = sa.get(first);
+	    result.add(new SuffixPerplexity(
+		text.substring(p + wordLen, p + wordLen + firstLen), f));
+	}
+
+	Collections.sort(result, new Comparator<SuffixPerplexity>() {
+	    public int compare(SuffixPerplexity lhs, SuffixPerplexity rhs) {
+		return lhs.freq - rhs.freq;
+	    }
+	});
+
+	return result;
+    }
+
+    /**
+     * Counts the runs of neighbours which getSuffixPerplexity(word, 1) would
+     * make, without cutting or sorting their strings.
+     */
+    private int getSuccessors(String word, boolean max) {
+	int wordLen = word.length();
+	int count = 0;
+	int maxFreq = 0;
+
+	this.sort();
+	int lo = this.bound(word, false);
+	int hi = this.bound(word, true);
+	int first = -1;
+	int firstLen = 0;
+	int f = 0;
+	int minLcp = Integer.MAX_VALUE;
+	for (int i = lo; i < hi; i++) {
+	    if (i > lo) {
+		minLcp = Math.min(minLcp, lcp.get(i) & 0xff);
+	    }
+	    int pos = sa.get(i);
+	    int end = text.end(pos);
+	    int realSuffixLen = Strings.getSuffixLen(text, pos, end, wordLen, 1,
+						     this.langType);
+	    if ((realSuffixLen == -1) || (end - pos < wordLen + realSuffixLen)) {
+		continue;
+	    }
+	    if ((first != -1) && (realSuffixLen == firstLen) &&
+		this.sharesPrefix(first, i, minLcp, wordLen + realSuffixLen)) {
+		f++;
+	    } else {
+		first = i;
+		firstLen = realSuffixLen;
+		f = 1;
+		count++;
+	    }
+	    maxFreq = Math.max(maxFreq, f);
+	    minLcp = Integer.MAX_VALUE;
+	}
+
+	return (max ? maxFreq : count);
+    }
+
+    public int getSuccessorCount(String word) {
+	return this.getSuccessors(word, false);
+    }
+
+    public int getMaxSuccessorFrequency(String word) {
+	return this.getSuccessors(word, true);
+    }
+
+    /**
+     * Tests if the len characters before the given position belong to the
+     * same data string.
+     */
+    private boolean hasPrefix(int pos, int len) {
+	if (pos < len) {
+	    return false;
+	}
+	for (int p = pos - len; p < pos; p++) {
+	    if (text.charAt(p) == TextStore.SEPARATOR) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Returns the end of the word of an English like string which holds the
+     * given position: the next space or separator.
+     */
+    private int wordEnd(int pos) {
+	while ((text.charAt(pos) != ' ') && (text.charAt(pos) != TextStore.SEPARATOR)) {
+	    pos++;
+	}
+
+	return pos;
+    }
+
+    /**
+     * Tests if the word of an English like string ends at the given
+     * position.
+     */
+    private boolean isWordEnd(int pos) {
+	char c = text.charAt(pos);
+	return ((c == ' ') || (c == TextStore.SEPARATOR));
+    }
+
+    /**
+     * Returns the string which follows an occurrence of an English like word
+     * in the inversed data string, as getSuffixPerplexity() cuts it
+     * prefixLen words long on an index of the inversed strings: the rest of
+     * the first word of the occurrence after the part matched by the word,
+     * followed by the words before the occurrence, the nearest first. The
+     * rest of the first word, if any, counts as one of the words.
+     *
+     * @param from the beginning of the occurrence.
+     * @param matchEnd the end of the part of its first word matched.
+     * @param prefixLen the number of words.
+     * @return the string, null if there are not enough words before it.
+     */
+    private String getInversePrefix(int from, int matchEnd, int prefixLen) {
+	StringBuilder result = new StringBuilder();
+
+	result.append(text, matchEnd, this.wordEnd(matchEnd));
+	int numWords = ((result.length() > 0) ? (prefixLen - 1) : prefixLen);
+	for (int i = 0, pos = from; i < numWords; i++) {
+	    if ((pos == 0) || (text.charAt(pos - 1) != ' ')) {
+		return null;
+	    }
+	    int end = pos - 1;
+	    pos = end;
+	    while ((pos > 0) && !this.isWordEnd(pos - 1)) {
+		pos--;
+	    }
+	    result.append(' ').append(text, pos, end);
+	}
+
+	return result.toString();
+    }
+
+    private static void count(Map<String, SuffixPerplexity> prefixes,
+			      String prefix) {
+	SuffixPerplexity sp = prefixes.get(prefix);
+	if (sp == null) {
+	    sp = new SuffixPerplexity(prefix, 0);
+	    prefixes.put(prefix, sp);
+	}
+	sp.freq++;
+    }
+
+    /**
+     * Counts the distinct strings which precede the occurrences of the word,
+     * prefixLen characters long in Chinese like text, in the order they are
+     * first found. The strings of English like text are those of
+     * getInversePrefix(), in the inversed order of getSuffixPerplexity()
+     * on an index of the inversed strings.
+     */
+    private LinkedHashMap<String, SuffixPerplexity> getPrefixes(String word,
+								 int prefixLen) {
+	LinkedHashMap<String, SuffixPerplexity> result =
+	    new LinkedHashMap<String, SuffixPerplexity>();
+
+	this.sort();
+	if (this.langType != Strings.EnglishLike) {
+	    int lo = this.bound(word, false);
+	    int hi = this.bound(word, true);
+	    for (int i = lo; i < hi; i++) {
+		int pos = sa.get(i);
+		if (this.hasPrefix(pos, prefixLen)) {
+		    SuffixArray.count(result, text.substring(pos - prefixLen, pos));
+		}
+	    }
+	    return result;
+	}
+
+	// an inversed word matches the words of the word but its first one
+	// whole, and its first one as a prefix of a word, so the occurrences
+	// are found among the suffixes starting with either part, whichever
+	// are fewer.
+	int space = word.indexOf(' ');
+	String head = ((space == -1) ? word : word.substring(0, space));
+	String tail = ((space == -1) ? null : word.substring(space + 1));
+	int lo = this.bound(head, false);
+	int hi = this.bound(head, true);
+	boolean byTail = false;
+	if (tail != null) {
+	    int tailLo = this.bound(tail, false);
+	    int tailHi = this.bound(tail, true);
+	    if (tailHi - tailLo < hi - lo) {
+		lo = tailLo;
+		hi = tailHi;
+		byTail = true;
+	    }
+	}
+	for (int i = lo; i < hi; i++) {
+	    int from = sa.get(i);
+	    if (byTail) {
+		if (!this.isWordEnd(from + tail.length()) ||
+		    (from == 0) || (text.charAt(from - 1) != ' ')) {
+		    continue;
+		}
+		int tailFrom = from;
+		from--;
+		while ((from > 0) && !this.isWordEnd(from - 1)) {
+		    from--;
+		}
+		if (!text.startsWith(from, tailFrom - 1, head)) {
+		    continue;
+		}
+	    } else if (tail != null) {
+		int end = this.wordEnd(from + head.length());
+		if ((text.charAt(end) != ' ') ||
+		    !text.startsWith(end + 1, text.end(end + 1), tail) ||
+		    !this.isWordEnd(end + 1 + tail.length())) {
+		    continue;
+		}
+	    }
+	    String prefix = this.getInversePrefix(from, from + head.length(),
+						  prefixLen);
+	    if (prefix != null) {
+		SuffixArray.count(result, prefix);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the distinct strings of prefixLen characters (or words) which
+     * precede the given word, sorted by ascending frequency: what
+     * getSuffixPerplexity() answers on an index of the inversed strings, the
+     * strings inversed back by Strings.inverse(). Every character of a
+     * Chinese like string starts a suffix, so the suffixes starting with the
+     * word are all of its occurrences, and the characters before them are
+     * read from the text store. The occurrences of an English like word are
+     * those of its inverse, which matches the first word as a prefix of a
+     * word rather than the last one.
+     *
+     * @param word the target word.
+     * @param prefixLen the length of the preceding strings.
+     * @return the list of SuffixPerplexity.
+     */
+    public ArrayList getPrefixPerplexity(String word, int prefixLen) {
+	ArrayList<SuffixPerplexity> result = new ArrayList<SuffixPerplexity>(
+	    this.getPrefixes(word, prefixLen).values());
+
+	if (this.langType == Strings.EnglishLike) {
+	    for (SuffixPerplexity sp: result) {
+		sp.suffix = Strings.inverse(sp.suffix, this.langType);
+	    }
+	}
+	Collections.sort(result, SuffixPerplexity.FREQ_ORDER);
+
+	return result;
+    }
+
+    /**
+     * Counts the distinct characters (or words) preceding the word, or the
+     * occurrences of the most frequent one if max is true; the characters
+     * by sorting them.
+     */
+    private int getPredecessors(String word, boolean max) {
+	int count = 0;
+	int maxFreq = 0;
+
+	if (this.langType == Strings.EnglishLike) {
+	    for (SuffixPerplexity sp: this.getPrefixes(word, 1).values()) {
+		count++;
+		maxFreq = Math.max(maxFreq, sp.freq);
+	    }
+	    return (max ? maxFreq : count);
+	}
+
+	this.sort();
+	int lo = this.bound(word, false);
+	int hi = this.bound(word, true);
+	char[] c = new char[hi - lo];
+	int n = 0;
+	for (int i = lo; i < hi; i++) {
+	    int pos = sa.get(i);
+	    if (this.hasPrefix(pos, 1)) {
+		c[n++] = text.charAt(pos - 1);
+	    }
+	}
+	Arrays.sort(c, 0, n);
+	for (int i = 0, f = 0; i < n; i++) {
+	    if ((i == 0) || (c[i] != c[i - 1])) {
+		count++;
+		f = 0;
+	    }
+	    maxFreq = Math.max(maxFreq, ++f);
+	}
+
+	return (max ? maxFreq : count);
+    }
+
+    /**
+     * Returns the number of distinct characters (or words) which precede the
+     * word.
+     *
+     * @param word the target word.
+     * @return the number of predecessors.
+     */
+    public int getPredecessorCount(String word) {
+	return this.getPredecessors(word, false);
+    }
+
+    /**
+     * Returns the frequency of the most frequent character (or word) which
+     * precedes the word, 0 if there is none.
+     *
+     * @param word the target word.
+     * @return the frequency of the most frequent predecessor.
+     */
+    public int getMaxPredecessorFrequency(String word) {
+	return this.getPredecessors(word, true);
+    }
+
+    public ArrayList getNGrams(int n) {
+	return this.getSuffixPerplexity("", n);
+    }
+
+    /**
+     * Enumerates the n-grams of every n up to maxN in one scan, as
+     * visitNGrams() finds them, and sorts the list of each n.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @return the lists of SuffixPerplexity, the n-grams of n at n - 1.
+     */
+    public ArrayList[] getNGrams(int maxN, int minFreq) {
+	@SuppressWarnings({"unchecked"})
+	final ArrayList<SuffixPerplexity>[] result =
+	    (ArrayList<SuffixPerplexity>[]) new ArrayList[maxN];
+
+	for (int i = 0; i < maxN; i++) {
+	    result[i] = new ArrayList<SuffixPerplexity>();
+	}
+	this.visitNGrams(maxN, minFreq, new NGramVisitor() {
+	    public void visit(int n, String ngram, int freq) {
+		result[n - 1].add(new SuffixPerplexity(ngram, freq));
+	    }
+	});
+	for (int i = 0; i < maxN; i++) {
+	    Collections.sort(result[i], SuffixPerplexity.FREQ_ORDER);
+	}
+
+	return result;
+    }
+
+    /**
+     * Passes the n-grams of every n up to maxN to a visitor in one scan of
+     * the sorted suffixes, keeping the current run of neighbours of each n as
+     * getSuffixPerplexity("", n) does. An n-gram is passed when its run ends.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @param visitor the visitor of the n-grams.
+     */
+    public void visitNGrams(int maxN, int minFreq, NGramVisitor visitor) {
+	int[] first = new int[maxN];
+	int[] firstLen = new int[maxN];
+	int[] f = new int[maxN];
+	int[] minLcp = new int[maxN];
+
+	for (int i = 0; i < maxN; i++) {
+	    first[i] = -1;
+	    minLcp[i] = Integer.MAX_VALUE;
+	}
+
+	this.sort();
+	for (int i = 0; i < numSuffixes; i++) {
+	    int pos = sa.get(i);
+	    int end = text.end(pos);
+	    int l = ((i > 0) ? (lcp.get(i) & 0xff) : Integer.MAX_VALUE);
+	    for (int n = 0; n < maxN; n++) {
+		minLcp[n] = Math.min(minLcp[n], l);
+		int realSuffixLen = Strings.getSuffixLen(text, pos, end, 0, n + 1,
+							 this.langType);
+		if ((realSuffixLen == -1) || (end - pos < realSuffixLen)) {
+		    continue;
+		}
+		if ((first[n] != -1) && (realSuffixLen == firstLen[n]) &&
+		    this.sharesPrefix(first[n], i, minLcp[n], realSuffixLen)) {
+		    f[n]++;
+		} else {
+		    this.visitNGram(visitor, n + 1, first[n], firstLen[n], f[n],
+				    minFreq);
+		    first[n] = i;
+		    firstLen[n] = realSuffixLen;
+		    f[n] = 1;
+		}
+		minLcp[n] = Integer.MAX_VALUE;
+	    }
+	}
+	for (int n = 0; n < maxN; n++) {
+	    this.visitNGram(visitor, n + 1, first[n], firstLen[n], f[n], minFreq);
+	}
+    }
+
+    /**
+     * Passes the run of neighbours starting at the first suffix as an n-gram
+     * if it is frequent enough.
+     */
+    private void visitNGram(NGramVisitor visitor, int n, int first, int len,
+			    int f, int minFreq) {
+	if ((first != -1) && (f >= minFreq)) {
+	    int p = sa.get(first);
+	    visitor.visit(n, text.substring(p, p + len), f);
+	}
+    }
+
+    public String getDataStrs() {
+	return this.text.toString();
+    }
+
+    /**
+     * Writes the binary image of the suffix array, sorting it first if
+     * needed.
+     *
+     * @param out the image writer.
+     */
+    public void write(ImageWriter out) throws IOException {
+	this.write(out, true);
+    }
+
+    /**
+     * Writes the binary image of the suffix array, without its text store if
+     * withText is false, when another index of the same data strings
+     * writes it.
+     *
+     * @param out the image writer.
+     * @param withText true if the text store is written.
+     */
+    void write(ImageWriter out, boolean withText) throws IOException {
+	this.sort();
+	out.writeInt(MAGIC);
+	out.writeInt(VERSION);
+	out.writeInt(this.langType);
+	out.writeInt(this.numSuffixes);
+	out.writeInts(sa, numSuffixes);
+	out.writeBytes(lcp, numSuffixes);
+	if (withText) {
+	    text.write(out);
+	}
+    }
+
+    /**
+     * Reads a suffix array from its binary image, which is queried in place.
+     *
+     * @param in the image reader.
+     * @return the suffix array.
+     */
+    public static SuffixArray read(ImageReader in) throws IOException {
+	return SuffixArray.read(in, null);
+    }
+
+    /**
+     * Reads a suffix array from its binary image, over the given text store
+     * if it was written without one.
+     *
+     * @param in the image reader.
+     * @param text the text store, null if the image holds it.
+     * @return the suffix array.
+     */
+    static SuffixArray read(ImageReader in, TextStore text) throws IOException {
+	if (in.readInt() != MAGIC) {
+	    throw (new IOException("Not a suffix array image"));
+	}
+	int version = in.readInt();
+	if (version != VERSION) {
+	    throw (new IOException("Unsupported suffix array image version: " +
+				   version));
+	}
+	SuffixArray result = new SuffixArray(in.readInt());
+	result.numSuffixes = in.readInt();
+	result.sa = in.mapInts(result.numSuffixes);
+	result.lcp = in.mapBytes(result.numSuffixes);
+	result.text = ((text != null) ? text : TextStore.read(in));
+
+	return result;
+    }
+
+    public void toFile(String fileName) throws IOException {
+	ImageWriter out = new ImageWriter(fileName);
+	try {
+	    this.write(out);
+	} finally {
+	    out.close();
+	}
+    }
+
+    public static SuffixArray fromFile(String fileName) throws IOException {
+	ImageReader in = new ImageReader(fileName);
+	try {
+	    return SuffixArray.read(in);
+	} finally {
+	    in.close();
+	}
+    }
+}
@@ -0,0 +1,133 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.file.*;
+
+/**
+ * <p>Description: The queries term extraction runs against an index of the
+ *                 suffixes of a corpus. Each data string added to the index
+ *                 contributes a suffix at every character of a Chinese like
+ *                 string and after every space of an English like one.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public interface SuffixIndex {
+
+    /**
+     * Adds the data string and its suffix strings to the index.
+     *
+     * @param data the data string to be added.
+     */
+    public void add(String data);
+
+    /**
+     * Adds a range of characters as a data string, without making a String
+     * of it.
+     *
+     * @param data the characters.
+     * @param from the beginning index, inclusive.
+     * @param to the ending index, exclusive.
+     */
+    public void add(CharSequence data, int from, int to);
+
+    /**
+     * Merges another index of the same kind and language type into this one,
+     * as if its data strings were added to this one.
+     *
+     * @param other the index to be merged.
+     * @throws IllegalArgumentException if the other index is of another kind
+     *         or language type.
+     */
+    public void merge(SuffixIndex other);
+
+    /**
+     * Returns the number of suffixes which start with the given word.
+     *
+     * @param word the target word.
+     * @return the frequency of the word.
+     */
+    public int getFrequency(String word);
+
+    /**
+     * Returns the distinct strings of suffixLen characters (or words, for an
+     * English like index) which follow the given word, sorted by ascending
+     * frequency.
+     *
+     * @param word the target word.
+     * @param suffixLen the length of the following strings.
+     * @return the list of SuffixPerplexity.
+     */
+    public ArrayList getSuffixPerplexity(String word, int suffixLen);
+
+    /**
+     * Returns the number of distinct characters (or words, for an English
+     * like index) which follow the given word, i.e. the size of
+     * getSuffixPerplexity(word, 1). Only a Chinese like PAT-tree keeps these
+     * counts; the other indexes enumerate the successors.
+     *
+     * @param word the target word.
+     * @return the number of successors.
+     */
+    public int getSuccessorCount(String word);
+
+    /**
+     * Returns the frequency of the most frequent character (or word) which
+     * follows the given word, 0 if there is none.
+     *
+     * @param word the target word.
+     * @return the frequency of the most frequent successor.
+     */
+    public int getMaxSuccessorFrequency(String word);
+
+    /**
+     * Enumerates all n-grams of the index, sorted by ascending frequency.
+     *
+     * @param n the number of characters (or words) of the n-grams.
+     * @return the list of SuffixPerplexity.
+     */
+    public ArrayList getNGrams(int n);
+
+    /**
+     * Enumerates the n-grams of every n from 1 to maxN whose frequency is at
+     * least minFreq, in one pass over the index. The list of each n is the
+     * same as that of getNGrams(n) without the less frequent n-grams.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @return the lists of SuffixPerplexity, the n-grams of n at n - 1.
+     */
+    public ArrayList[] getNGrams(int maxN, int minFreq);
+
+    /**
+     * Passes the n-grams getNGrams(maxN, minFreq) lists to a visitor as the
+     * pass over the index finds them, without keeping any of them. The
+     * n-grams of each n come in the order of their list before it is sorted
+     * by frequency.
+     *
+     * @param maxN the maximum number of characters (or words).
+     * @param minFreq the minimum frequency.
+     * @param visitor the visitor of the n-grams.
+     */
+    public void visitNGrams(int maxN, int minFreq, NGramVisitor visitor);
+
+    public int getLangType();
+
+    /**
+     * Makes the index read-only. Adding to or merging into a frozen index
+     * throws an IllegalStateException, and a frozen index can be queried by
+     * several threads at once.
+     */
+    public void freeze();
+
+    public boolean isFrozen();
+
+    /**
+     * Writes the binary image of the index.
+     *
+     * @param out the image writer.
+     */
+    public void write(ImageWriter out) throws IOException;
+}
@@ -1,5 +1,7 @@
 package jackteng.pattree;
 
+import java.util.*;
+
 /**
  * <p>Description: The information of suffix perplexity.</p>
  * <p>Copyright: Copyright (c) 2003</p>
@@ -10,6 +12,14 @@ package jackteng.pattree;
  * @version 1.0
  */
 public class SuffixPerplexity {
+    // orders by ascending frequency.
+    public final static Comparator<SuffixPerplexity> FREQ_ORDER =
+	new Comparator<SuffixPerplexity>() {
+	    public int compare(SuffixPerplexity lhs, SuffixPerplexity rhs) {
+		return lhs.freq - rhs.freq;
+	    }
+	};
+
     public String suffix = "";
     public int freq = 0;
 
@@ -0,0 +1,318 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.nio.*;
+import jackteng.file.*;
+
+/**
+ * <p>Description: An append-only store of the data strings of a PAT-tree.
+ *                 The strings are kept one after another in a single character
+ *                 buffer, each followed by a separator, and the end offset of
+ *                 every string is kept in a table so that the string a data
+ *                 position belongs to can be found without scanning. Only the
+ *                 last string can be cut short or taken back.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class TextStore implements CharSequence {
+
+    public final static char SEPARATOR = '\0';
+
+    private CharBuffer chars = CharBuffer.allocate(1024);
+    private int length = 0;
+    private IntBuffer ends = IntBuffer.allocate(64);          // the end offset of each string.
+    private int count = 0;
+
+    public TextStore() { }
+
+    private void ensureCapacity(int minLength, int minCount) {
+	if ((minLength > chars.capacity()) || chars.isReadOnly()) {
+	    char[] a = new char[Math.max(minLength, chars.capacity() * 2)];
+	    CharBuffer src = chars.duplicate();
+	    src.clear();
+	    src.get(a, 0, length);
+	    chars = CharBuffer.wrap(a);
+	}
+	if ((minCount > ends.capacity()) || ends.isReadOnly()) {
+	    int[] a = new int[Math.max(minCount, ends.capacity() * 2)];
+	    IntBuffer src = ends.duplicate();
+	    src.clear();
+	    src.get(a, 0, count);
+	    ends = IntBuffer.wrap(a);
+	}
+    }
+
+    /**
+     * Trims the buffers to the characters and the string ends held, unless
+     * they are mapped.
+     */
+    public void trim() {
+	if (!chars.isReadOnly() && (chars.capacity() > length)) {
+	    char[] a = new char[length];
+	    CharBuffer src = chars.duplicate();
+	    src.clear();
+	    src.get(a, 0, length);
+	    chars = CharBuffer.wrap(a);
+	}
+	if (!ends.isReadOnly() && (ends.capacity() > count)) {
+	    int[] a = new int[count];
+	    IntBuffer src = ends.duplicate();
+	    src.clear();
+	    src.get(a, 0, count);
+	    ends = IntBuffer.wrap(a);
+	}
+    }
+
+    /**
+     * Appends a string to the store.
+     *
+     * @param str the string to be appended.
+     * @return the data position of the string.
+     */
+    public int append(CharSequence str) {
+	return this.append(str, 0, str.length());
+    }
+
+    /**
+     * Appends a range of characters to the store as a string.
+     *
+     * @param str the characters.
+     * @param from the beginning index, inclusive.
+     * @param to the ending index, exclusive.
+     * @return the data position of the string.
+     */
+    public int append(CharSequence str, int from, int to) {
+	int result = length;
+
+	this.ensureCapacity(length + (to - from) + 1, count + 1);
+	for (int i = from; i < to; i++) {
+	    chars.put(length++, str.charAt(i));
+	}
+	ends.put(count++, length);
+	chars.put(length++, SEPARATOR);
+
+	return result;
+    }
+
+    /**
+     * Removes the last string from the store.
+     */
+    public void removeLast() {
+	if (count == 0) {
+	    throw (new IllegalStateException("The store is empty"));
+	}
+	this.ensureCapacity(length, count);          // maps no longer.
+	count--;
+	length = ((count > 0) ? (ends.get(count - 1) + 1) : 0);
+    }
+
+    /**
+     * Cuts the last string short at the given offset.
+     *
+     * @param end the new end offset (exclusive) of the last string.
+     */
+    public void truncateLast(int end) {
+	int start = ((count > 1) ? (ends.get(count - 2) + 1) : 0);
+	if ((count == 0) || (end < start) || (end > ends.get(count - 1))) {
+	    throw (new IndexOutOfBoundsException());
+	}
+	this.ensureCapacity(length, count);
+	ends.put(count - 1, end);
+	chars.put(end, SEPARATOR);
+	length = end + 1;
+    }
+
+    /**
+     * Appends all strings of another store, in order.
+     *
+     * @param store the store to be appended.
+     * @return the offset added to the data positions of the appended store.
+     */
+    public int appendAll(TextStore store) {
+	int result = length;
+
+	this.ensureCapacity(length + store.length, count + store.count);
+	CharBuffer src = store.chars.duplicate();
+	src.clear();
+	src.limit(store.length);
+	CharBuffer dst = chars.duplicate();
+	dst.clear();
+	dst.position(length);
+	dst.put(src);
+	for (int i = 0; i < store.count; i++) {
+	    ends.put(count++, store.ends.get(i) + result);
+	}
+	length += store.length;
+
+	return result;
+    }
+
+    /**
+     * Returns the end of the string which the given data position belongs to.
+     *
+     * @param pos the data position.
+     * @return the end offset (exclusive) of the string.
+     */
+    public int end(int pos) {
+	return ends.get(this.indexOf(pos));
+    }
+
+    /**
+     * Returns the index of the string which the given data position belongs
+     * to, the strings being indexed in the order they were appended.
+     *
+     * @param pos the data position.
+     * @return the index of the string.
+     */
+    public int indexOf(int pos) {
+	int lo = 0;
+	int hi = count - 1;
+
+	// finds the first string whose end offset is not less than pos.
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (ends.get(mid) < pos) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+
+	return lo;
+    }
+
+    /**
+     * Tests if the characters in the range are equal to the given string.
+     *
+     * @param from the beginning index, inclusive.
+     * @param to the ending index, exclusive.
+     * @param str the string to be compared.
+     * @return true if the range is equal to the string.
+     */
+    public boolean regionMatches(int from, int to, CharSequence str) {
+	return this.regionMatches(from, to, str, 0, str.length());
+    }
+
+    /**
+     * Tests if the characters in the range are equal to the given range of
+     * the string.
+     *
+     * @param from the beginning index, inclusive.
+     * @param to the ending index, exclusive.
+     * @param str the string to be compared.
+     * @param strFrom the beginning index in the string, inclusive.
+     * @param strTo the ending index in the string, exclusive.
+     * @return true if the two ranges are equal.
+     */
+    public boolean regionMatches(int from, int to, CharSequence str,
+				 int strFrom, int strTo) {
+	int len = strTo - strFrom;
+
+	if (to - from != len) {
+	    return false;
+	}
+	for (int i = 0; i < len; i++) {
+	    if (chars.get(from + i) != str.charAt(strFrom + i)) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Tests if the characters in the range start with the given string.
+     *
+     * @param from the beginning index, inclusive.
+     * @param to the ending index, exclusive.
+     * @param str the prefix.
+     * @return true if the range starts with the prefix.
+     */
+    public boolean startsWith(int from, int to, CharSequence str) {
+	int len = str.length();
+
+	if (to - from < len) {
+	    return false;
+	}
+	return this.regionMatches(from, from + len, str);
+    }
+
+    public String substring(int from, int to) {
+	char[] result = new char[to - from];
+	CharBuffer src = chars.duplicate();
+	src.clear();
+	src.position(from);
+	src.get(result);
+	return new String(result);
+    }
+
+    /**
+     * Returns the number of strings in the store.
+     *
+     * @return the number of strings.
+     */
+    public int count() {
+	return this.count;
+    }
+
+    public int length() {
+	return this.length;
+    }
+
+    /**
+     * Returns the number of bytes the characters and the string ends take.
+     *
+     * @return the size in bytes.
+     */
+    public long getByteSize() {
+	return (2L * length + 4L * count);
+    }
+
+    public char charAt(int index) {
+	return chars.get(index);
+    }
+
+    public CharSequence subSequence(int from, int to) {
+	return this.substring(from, to);
+    }
+
+    /**
+     * Returns the stored strings delimited by comma (',').
+     *
+     * @return the stored strings.
+     */
+    public String toString() {
+	String result = this.substring(0, Math.max(0, length - 1));
+	return result.replace(SEPARATOR, ',');
+    }
+
+    /**
+     * Writes the binary image of the store.
+     *
+     * @param out the image writer.
+     */
+    public void write(ImageWriter out) throws IOException {
+	out.writeInt(this.count);
+	out.writeInt(this.length);
+	out.writeInts(ends, count);
+	out.writeChars(this, length);
+    }
+
+    /**
+     * Maps a store from its binary image.
+     *
+     * @param in the image reader.
+     * @return the store, which stays read-only until the next append.
+     */
+    public static TextStore read(ImageReader in) throws IOException {
+	TextStore result = new TextStore();
+	result.count = in.readInt();
+	result.length = in.readInt();
+	result.ends = in.mapInts(result.count);
+	result.chars = in.mapChars(result.length);
+
+	return result;
+    }
+}
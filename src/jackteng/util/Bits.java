@@ -11,8 +11,48 @@ import java.util.*;
  * @version 1.0
  */
 public class Bits {
+    public final static int CHAR_BITS = 16;
+
     private Bits() { }
 
+    /**
+     * Gets a bit of the given range of characters, which are read as UTF-16
+     * code units with the most significant bit first. Bits beyond the range
+     * are 0, so no encoding or allocation is involved.
+     *
+     * @param str the target string.
+     * @param from the beginning index of the range, inclusive.
+     * @param to the ending index of the range, exclusive.
+     * @param index the index of the bit.
+     * @return true if the bit is 1.
+     */
+    public static boolean getBit(CharSequence str, int from, int to,
+				 int index) {
+	int i = from + (index >>> 4);
+	return ((i < to) && ((str.charAt(i) & (0x8000 >>> (index & 15))) != 0));
+    }
+
+    /**
+     * Returns a bitset of the given range of characters, which are read as
+     * UTF-16 code units with the most significant bit first.
+     *
+     * @param str the target string.
+     * @param from the beginning index of the range, inclusive.
+     * @param to the ending index of the range, exclusive.
+     * @return the bitset of the given range of characters.
+     */
+    public static BitSet toBitSet(CharSequence str, int from, int to) {
+	BitSet bits = new BitSet();
+
+	for (int i = 0; i < (to - from) * CHAR_BITS; i++) {
+	    if (getBit(str, from, to, i)) {
+		bits.set(i);
+	    }
+	}
+
+	return bits;
+    }
+
     /**
      * Returns a bitset of the given byte array. The byte-ordering of
      * bytes must be big-endian which means the most significant bit is in
@@ -118,4 +158,50 @@ public class Bits {
 
 	return i;
     }
+
+    /**
+     * Gets the comparison bit of two ranges of characters read as UTF-16 code
+     * units, with the same zero padding as getComparisonBit(BitSet, BitSet):
+     * if one range is a prefix of the other, then returns the first 1 bit
+     * after that prefix. The ranges are compared 64 bits at a time.
+     *
+     * @param str1 the first string.
+     * @param from1 the beginning index of the first range, inclusive.
+     * @param to1 the ending index of the first range, exclusive.
+     * @param str2 the second string.
+     * @param from2 the beginning index of the second range, inclusive.
+     * @param to2 the ending index of the second range, exclusive.
+     * @return the comparison bit (counted from 1) of the two ranges, 0 if the
+     *         two ranges are equal.
+     */
+    public static int getComparisonBit(CharSequence str1, int from1, int to1,
+				       CharSequence str2, int from2, int to2) {
+	int maxLen = Math.max(to1 - from1, to2 - from2);
+
+	for (int i = 0; i < maxLen; i += 4) {
+	    long diff = getWord(str1, from1 + i, to1) ^ getWord(str2, from2 + i, to2);
+	    if (diff != 0) {
+		return (i * CHAR_BITS + Long.numberOfLeadingZeros(diff) + 1);
+	    }
+	}
+
+	return 0;
+    }
+
+    /**
+     * Packs four characters into a long, the first one in the most
+     * significant bits. Characters beyond the range are 0.
+     */
+    private static long getWord(CharSequence str, int from, int to) {
+	long result = 0;
+
+	for (int i = from; i < from + 4; i++) {
+	    result <<= CHAR_BITS;
+	    if (i < to) {
+		result |= str.charAt(i);
+	    }
+	}
+
+	return result;
+    }
 }
@@ -0,0 +1,162 @@
+package jackteng.util;
+
+import java.util.*;
+
+/**
+ * <p>Description: Keeps the k items of the highest scores offered to it. The
+ *                 scores are kept in a binary min-heap of primitive values
+ *                 whose root is the lowest score kept, so that an item which
+ *                 does not make the top k is dropped after one comparison.
+ *                 Of two items of equal scores the one offered first ranks
+ *                 higher.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class BoundedHeap<T> {
+    private double[] scores = null;
+    private int[] seqs = null;          // the order in which the items were offered.
+    private Object[] items = null;
+    private int size = 0;
+    private int count = 0;          // the number of items offered.
+
+    /**
+     * @param capacity the number of items kept.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public BoundedHeap(int capacity) {
+	if (capacity < 1) {
+	    throw (new IllegalArgumentException("Capacity must be positive"));
+	}
+	scores = new double[capacity];
+	seqs = new int[capacity];
+	items = new Object[capacity];
+    }
+
+    public int size() {
+	return this.size;
+    }
+
+    public int capacity() {
+	return this.scores.length;
+    }
+
+    public boolean isFull() {
+	return (size == scores.length);
+    }
+
+    /**
+     * Tests if an item of the given score offered now would be kept, so that
+     * an item which would not need not be made.
+     *
+     * @param score the score of the item.
+     * @return true if the item would be kept.
+     */
+    public boolean accepts(double score) {
+	return ((size < scores.length) || (score > scores[0]));
+    }
+
+    /**
+     * Offers an item, which is kept if it ranks among the top k.
+     *
+     * @param item the item.
+     * @param score the score of the item.
+     * @return true if the item is kept.
+     */
+    public boolean offer(T item, double score) {
+	int seq = count++;
+
+	if (size < scores.length) {
+	    int i = size++;
+	    this.set(i, score, seq, item);
+	    this.siftUp(i);
+	    return true;
+	}
+	// an item offered later ranks lower than the root of an equal score.
+	if (score <= scores[0]) {
+	    return false;
+	}
+	this.set(0, score, seq, item);
+	this.siftDown(0, size);
+
+	return true;
+    }
+
+    /**
+     * Returns the items kept, from the highest ranking one down. The heap is
+     * left as it is.
+     *
+     * @return the list of the items.
+     */
+    public List<T> toList() {
+	BoundedHeap<T> heap = new BoundedHeap<T>(scores.length);
+	System.arraycopy(scores, 0, heap.scores, 0, size);
+	System.arraycopy(seqs, 0, heap.seqs, 0, size);
+	System.arraycopy(items, 0, heap.items, 0, size);
+	heap.size = size;
+
+	// takes the lowest ranking item off the heap, one by one.
+	@SuppressWarnings({"unchecked"})
+	T[] result = (T[]) new Object[size];
+	for (int n = size; n > 0; n--) {
+	    result[n - 1] = heap.get(0);
+	    heap.swap(0, n - 1);
+	    heap.siftDown(0, n - 1);
+	}
+
+	return Arrays.asList(result);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private T get(int i) {
+	return (T) items[i];
+    }
+
+    private void set(int i, double score, int seq, Object item) {
+	scores[i] = score;
+	seqs[i] = seq;
+	items[i] = item;
+    }
+
+    private void swap(int i, int j) {
+	double score = scores[i];
+	int seq = seqs[i];
+	Object item = items[i];
+	this.set(i, scores[j], seqs[j], items[j]);
+	this.set(j, score, seq, item);
+    }
+
+    /**
+     * Tests if the item at i ranks lower than the one at j.
+     */
+    private boolean isLower(int i, int j) {
+	return ((scores[i] < scores[j]) ||
+		((scores[i] == scores[j]) && (seqs[i] > seqs[j])));
+    }
+
+    private void siftUp(int i) {
+	while (i > 0) {
+	    int parent = (i - 1) / 2;
+	    if (!this.isLower(i, parent)) {
+		break;
+	    }
+	    this.swap(i, parent);
+	    i = parent;
+	}
+    }
+
+    private void siftDown(int i, int n) {
+	while (2 * i + 1 < n) {
+	    int child = 2 * i + 1;
+	    if ((child + 1 < n) && this.isLower(child + 1, child)) {
+		child++;
+	    }
+	    if (!this.isLower(child, i)) {
+		break;
+	    }
+	    this.swap(i, child);
+	    i = child;
+	}
+    }
+}
@@ -0,0 +1,20 @@
+package jackteng.util;
+
+/**
+ * <p>Description: Decides which characters may be part of a term, so that
+ *                 the text is split into terms at every other character.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public interface CharClassifier {
+
+    /**
+     * Tests if the character may be part of a term.
+     *
+     * @param c the character.
+     * @return true if the character is legal.
+     */
+    public boolean isLegal(char c);
+}
@@ -0,0 +1,176 @@
+package jackteng.util;
+
+import java.io.*;
+
+/**
+ * <p>Description: A character classifier backed by a bitmap over all 64K
+ *                 UTF-16 code units, so that classifying a character takes a
+ *                 shift and a mask. The predefined tables are computed once,
+ *                 on first use, by encoding every character.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class CharTable implements CharClassifier {
+
+    private final long[] bits = new long[(Character.MAX_VALUE + 1) >>> 6];
+
+    private static CharTable big5Chinese = null;
+    private static CharTable gbkChinese = null;
+    private static CharTable unicodeChinese = null;
+    private static CharTable englishAlphabet = null;
+
+    public CharTable() { }
+
+    /**
+     * Marks a character as legal.
+     *
+     * @param c the character.
+     */
+    public void set(char c) {
+	bits[c >>> 6] |= (1L << (c & 63));
+    }
+
+    /**
+     * Marks a range of characters as legal.
+     *
+     * @param from the first character, inclusive.
+     * @param to the last character, inclusive.
+     */
+    public void set(char from, char to) {
+	for (int c = from; c <= to; c++) {
+	    this.set((char) c);
+	}
+    }
+
+    public boolean isLegal(char c) {
+	return ((bits[c >>> 6] & (1L << (c & 63))) != 0);
+    }
+
+    /**
+     * Encodes a character alone; the encoder substitutes a replacement for
+     * characters the charset cannot map, as String.getBytes() does.
+     */
+    private static byte[] encode(char c, String charsetName) {
+	try {
+	    return String.valueOf(c).getBytes(charsetName);
+	} catch (UnsupportedEncodingException uee) {
+	    throw (new IllegalArgumentException(uee.getMessage()));
+	}
+    }
+
+    /**
+     * Returns the table of Chinese characters in Big5: the common and the
+     * less common Hanzi (lead bytes 0xA4 to 0xC6 and 0xC9 to 0xF9).
+     *
+     * @return the table.
+     */
+    public static synchronized CharTable big5Chinese() {
+	if (big5Chinese == null) {
+	    CharTable table = new CharTable();
+	    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+		byte[] b = CharTable.encode((char) c, "big5");
+		if (b.length == 2) {
+		    int hi = b[0] & 0xff;
+		    int lo = b[1] & 0xff;
+		    if ((hi >= 0xA4) && ((hi <= 0xC6) || (hi >= 0xC9)) &&
+			(hi <= 0xF9) && (lo >= 0x40) &&
+			((lo <= 0x7E) || (lo >= 0xA1))) {
+			table.set((char) c);
+		    }
+		}
+	    }
+	    big5Chinese = table;
+	}
+
+	return big5Chinese;
+    }
+
+    /**
+     * Returns the table of Chinese characters in GBK: the GB2312 Hanzi (lead
+     * bytes 0xB0 to 0xF7) and the GBK/3 and GBK/4 extensions.
+     *
+     * @return the table.
+     */
+    public static synchronized CharTable gbkChinese() {
+	if (gbkChinese == null) {
+	    CharTable table = new CharTable();
+	    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+		byte[] b = CharTable.encode((char) c, "GBK");
+		if (b.length == 2) {
+		    int hi = b[0] & 0xff;
+		    int lo = b[1] & 0xff;
+		    boolean gb2312 = ((hi >= 0xB0) && (hi <= 0xF7) && (lo >= 0xA1));
+		    boolean gbk3 = ((hi >= 0x81) && (hi <= 0xA0));
+		    boolean gbk4 = ((hi >= 0xAA) && (lo <= 0xA0));
+		    if ((lo != 0x7F) && (lo != 0xFF) && (gb2312 || gbk3 || gbk4)) {
+			table.set((char) c);
+		    }
+		}
+	    }
+	    gbkChinese = table;
+	}
+
+	return gbkChinese;
+    }
+
+    /**
+     * Returns the table of the CJK unified and compatibility ideographs of
+     * Unicode, for text which was not converted from a legacy charset.
+     *
+     * @return the table.
+     */
+    public static synchronized CharTable unicodeChinese() {
+	if (unicodeChinese == null) {
+	    CharTable table = new CharTable();
+	    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+		Character.UnicodeBlock block = Character.UnicodeBlock.of((char) c);
+		if ((block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) ||
+		    (block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A) ||
+		    (block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS)) {
+		    table.set((char) c);
+		}
+	    }
+	    unicodeChinese = table;
+	}
+
+	return unicodeChinese;
+    }
+
+    /**
+     * Returns the table of the English letters 'a' to 'z' and 'A' to 'Z'.
+     *
+     * @return the table.
+     */
+    public static synchronized CharTable englishAlphabet() {
+	if (englishAlphabet == null) {
+	    CharTable table = new CharTable();
+	    table.set('a', 'z');
+	    table.set('A', 'Z');
+	    englishAlphabet = table;
+	}
+
+	return englishAlphabet;
+    }
+
+    /**
+     * Returns the table of the given name: "big5", "gbk", "unicode" or
+     * "english".
+     *
+     * @param name the name of the table.
+     * @return the table.
+     */
+    public static CharTable forName(String name) {
+	if (name.equalsIgnoreCase("big5")) {
+	    return CharTable.big5Chinese();
+	} else if (name.equalsIgnoreCase("gbk")) {
+	    return CharTable.gbkChinese();
+	} else if (name.equalsIgnoreCase("unicode")) {
+	    return CharTable.unicodeChinese();
+	} else if (name.equalsIgnoreCase("english")) {
+	    return CharTable.englishAlphabet();
+	}
+	throw (new IllegalArgumentException("Unknown character table: " + name));
+    }
+}
@@ -0,0 +1,380 @@
+package jackteng.util;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * <p>Description: A registry of named counters, timers and gauges, which can
+ *                 be watched live as an MBean or dumped as JSON. Both views
+ *                 flatten the registry into attributes: a counter gives its
+ *                 count and its rate per second, a timer its count, rate and
+ *                 mean and maximum latencies in microseconds, and a gauge its
+ *                 value. The rates are taken over the time since the
+ *                 registry was made or reset. Counters and timers are split
+ *                 into stripes picked by the thread, so that threads updating
+ *                 one of them seldom touch the same memory.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class Metrics implements DynamicMBean {
+    private final static int NUM_STRIPES = 16;
+    private final static int STRIDE = 8;          // 64 bytes between the stripes.
+
+    private Map<String, Object> metrics = new TreeMap<String, Object>();
+    private long start = System.nanoTime();
+    private ObjectName name = null;
+
+    /**
+     * A value read when the metrics are.
+     */
+    public interface Gauge {
+	public long getValue();
+    }
+
+    private static int stripe() {
+	return ((int) Thread.currentThread().getId() & (NUM_STRIPES - 1)) * STRIDE;
+    }
+
+    public static class Counter {
+	private AtomicLongArray cells = new AtomicLongArray(NUM_STRIPES * STRIDE);
+
+	public void add(long n) {
+	    cells.addAndGet(Metrics.stripe(), n);
+	}
+
+	public void increment() {
+	    this.add(1);
+	}
+
+	public long getCount() {
+	    long result = 0;
+	    for (int i = 0; i < cells.length(); i += STRIDE) {
+		result += cells.get(i);
+	    }
+
+	    return result;
+	}
+
+	private void reset() {
+	    for (int i = 0; i < cells.length(); i += STRIDE) {
+		cells.set(i, 0);
+	    }
+	}
+    }
+
+    /**
+     * Counts the events timed and sums up their durations.
+     */
+    public static class Timer {
+	// the count, the total and the maximum nanoseconds of each stripe.
+	private AtomicLongArray cells = new AtomicLongArray(NUM_STRIPES * STRIDE);
+
+	/**
+	 * Records an event.
+	 *
+	 * @param nanos the duration of the event in nanoseconds.
+	 */
+	public void record(long nanos) {
+	    int i = Metrics.stripe();
+	    cells.incrementAndGet(i);
+	    cells.addAndGet(i + 1, nanos);
+	    for (long max = cells.get(i + 2); nanos > max; max = cells.get(i + 2)) {
+		if (cells.compareAndSet(i + 2, max, nanos)) {
+		    break;
+		}
+	    }
+	}
+
+	public long getCount() {
+	    return this.sum(0);
+	}
+
+	public long getTotalNanos() {
+	    return this.sum(1);
+	}
+
+	public long getMaxNanos() {
+	    long result = 0;
+	    for (int i = 0; i < cells.length(); i += STRIDE) {
+		result = Math.max(result, cells.get(i + 2));
+	    }
+
+	    return result;
+	}
+
+	private long sum(int offset) {
+	    long result = 0;
+	    for (int i = 0; i < cells.length(); i += STRIDE) {
+		result += cells.get(i + offset);
+	    }
+
+	    return result;
+	}
+
+	private void reset() {
+	    for (int i = 0; i < cells.length(); i++) {
+		cells.set(i, 0);
+	    }
+	}
+    }
+
+    public Metrics() { }
+
+    /**
+     * Returns the counter of the given name, which is made if there is none.
+     *
+     * @param name the name of the counter.
+     * @return the counter.
+     * @throws IllegalArgumentException if the name is taken by a metric of
+     *         another kind.
+     */
+    public synchronized Counter counter(String name) {
+	Object metric = metrics.get(name);
+	if (metric == null) {
+	    metric = new Counter();
+	    metrics.put(name, metric);
+	}
+
+	return (Counter) this.check(name, metric, Counter.class);
+    }
+
+    /**
+     * Returns the timer of the given name, which is made if there is none.
+     *
+     * @param name the name of the timer.
+     * @return the timer.
+     * @throws IllegalArgumentException if the name is taken by a metric of
+     *         another kind.
+     */
+    public synchronized Timer timer(String name) {
+	Object metric = metrics.get(name);
+	if (metric == null) {
+	    metric = new Timer();
+	    metrics.put(name, metric);
+	}
+
+	return (Timer) this.check(name, metric, Timer.class);
+    }
+
+    /**
+     * Registers a gauge, replacing the gauge of the same name if any.
+     *
+     * @param name the name of the gauge.
+     * @param gauge the gauge.
+     * @throws IllegalArgumentException if the name is taken by a metric of
+     *         another kind.
+     */
+    public synchronized void gauge(String name, Gauge gauge) {
+	Object metric = metrics.get(name);
+	if (metric != null) {
+	    this.check(name, metric, Gauge.class);
+	}
+	metrics.put(name, gauge);
+    }
+
+    private Object check(String name, Object metric, Class<?> kind) {
+	if (!kind.isInstance(metric)) {
+	    throw (new IllegalArgumentException(
+		name + " is not a " + kind.getSimpleName().toLowerCase()));
+	}
+
+	return metric;
+    }
+
+    /**
+     * Zeroes the counters and the timers and restarts the clock of the
+     * rates.
+     */
+    public synchronized void reset() {
+	for (Object metric: metrics.values()) {
+	    if (metric instanceof Counter) {
+		((Counter) metric).reset();
+	    } else if (metric instanceof Timer) {
+		((Timer) metric).reset();
+	    }
+	}
+	start = System.nanoTime();
+    }
+
+    /**
+     * Returns the seconds since the registry was made or reset.
+     *
+     * @return the elapsed seconds.
+     */
+    public synchronized double getElapsedSeconds() {
+	return ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Reads all metrics, each flattened into its attributes.
+     *
+     * @return the values of the attributes by name, in the order of the
+     *         names of the metrics.
+     */
+    public synchronized Map<String, Object> snapshot() {
+	Map<String, Object> result = new LinkedHashMap<String, Object>();
+	double elapsed = this.getElapsedSeconds();
+	result.put("elapsedSeconds", Double.valueOf(elapsed));
+
+	for (Map.Entry<String, Object> entry: metrics.entrySet()) {
+	    String name = entry.getKey();
+	    Object metric = entry.getValue();
+	    if (metric instanceof Counter) {
+		long count = ((Counter) metric).getCount();
+		result.put(name, Long.valueOf(count));
+		result.put(name + ".perSecond", Double.valueOf(Metrics.rate(count, elapsed)));
+	    } else if (metric instanceof Timer) {
+		Timer timer = (Timer) metric;
+		long count = timer.getCount();
+		result.put(name + ".count", Long.valueOf(count));
+		result.put(name + ".perSecond", Double.valueOf(Metrics.rate(count, elapsed)));
+		result.put(name + ".meanMicros", Double.valueOf(
+		    (count > 0) ? timer.getTotalNanos() / 1e3 / count : 0.0));
+		result.put(name + ".maxMicros", Double.valueOf(timer.getMaxNanos() / 1e3));
+	    } else {
+		result.put(name, Long.valueOf(((Gauge) metric).getValue()));
+	    }
+	}
+
+	return result;
+    }
+
+    private static double rate(long count, double seconds) {
+	return ((seconds > 0) ? count / seconds : 0.0);
+    }
+
+    /**
+     * Dumps all metrics as a JSON object of the attributes of snapshot().
+     *
+     * @return the JSON text.
+     */
+    public String toJSON() {
+	StringBuilder result = new StringBuilder("{");
+
+	for (Map.Entry<String, Object> entry: this.snapshot().entrySet()) {
+	    if (result.length() > 1) {
+		result.append(',');
+	    }
+	    result.append("\n  \"");
+	    String name = entry.getKey();
+	    for (int i = 0; i < name.length(); i++) {
+		char c = name.charAt(i);
+		if ((c == '"') || (c == '\\')) {
+		    result.append('\\').append(c);
+		} else if (c < ' ') {
+		    String hex = Integer.toHexString(c);
+		    result.append("\\u").append("0000".substring(hex.length())).append(hex);
+		} else {
+		    result.append(c);
+		}
+	    }
+	    result.append("\": ").append(entry.getValue());
+	}
+	result.append("\n}");
+
+	return result.toString();
+    }
+
+    /**
+     * Registers the registry with the platform MBean server, replacing
+     * whatever is registered under the name.
+     *
+     * @param objectName the object name, e.g. "jackteng:type=Metrics".
+     */
+    public synchronized void register(String objectName) throws JMException {
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	ObjectName name = new ObjectName(objectName);
+	if (server.isRegistered(name)) {
+	    server.unregisterMBean(name);
+	}
+	this.unregister();
+	server.registerMBean(this, name);
+	this.name = name;
+    }
+
+    /**
+     * Unregisters the registry from the platform MBean server, if it was
+     * registered.
+     */
+    public synchronized void unregister() throws JMException {
+	if (name != null) {
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	    if (server.isRegistered(name)) {
+		server.unregisterMBean(name);
+	    }
+	    name = null;
+	}
+    }
+
+    public Object getAttribute(String attribute)
+	throws AttributeNotFoundException {
+	Object result = this.snapshot().get(attribute);
+	if (result == null) {
+	    throw (new AttributeNotFoundException(attribute));
+	}
+
+	return result;
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+	Map<String, Object> values = this.snapshot();
+	AttributeList result = new AttributeList();
+	for (int i = 0; i < attributes.length; i++) {
+	    Object value = values.get(attributes[i]);
+	    if (value != null) {
+		result.add(new Attribute(attributes[i], value));
+	    }
+	}
+
+	return result;
+    }
+
+    public void setAttribute(Attribute attribute)
+	throws AttributeNotFoundException {
+	throw (new AttributeNotFoundException(
+	    "Read-only attribute: " + attribute.getName()));
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+	return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature)
+	throws ReflectionException {
+	if (actionName.equals("toJSON")) {
+	    return this.toJSON();
+	} else if (actionName.equals("reset")) {
+	    this.reset();
+	    return null;
+	}
+	throw (new ReflectionException(
+	    new NoSuchMethodException(actionName), "Unknown operation: " + actionName));
+    }
+
+    public MBeanInfo getMBeanInfo() {
+	List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+	for (Map.Entry<String, Object> entry: this.snapshot().entrySet()) {
+	    attributes.add(new MBeanAttributeInfo(
+		entry.getKey(), entry.getValue().getClass().getName(),
+		entry.getKey(), true, false, false));
+	}
+	MBeanOperationInfo[] operations = new MBeanOperationInfo[] {
+	    new MBeanOperationInfo("toJSON", "Dumps all metrics as JSON",
+				   new MBeanParameterInfo[0], String.class.getName(),
+				   MBeanOperationInfo.INFO),
+	    new MBeanOperationInfo("reset", "Zeroes the counters and the timers",
+				   new MBeanParameterInfo[0], "void",
+				   MBeanOperationInfo.ACTION)
+	};
+
+	return new MBeanInfo(this.getClass().getName(),
+			     "Counters, timers and gauges",
+			     attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+			     new MBeanConstructorInfo[0], operations,
+			     new MBeanNotificationInfo[0]);
+    }
+}
@@ -19,61 +19,32 @@ public class NGram {
 	this.N = N;
     }
 
+    /**
+     * Tests if the word is a single Chinese character in Big5.
+     *
+     * @param word the target word.
+     * @return true if the word is a Chinese character.
+     */
     public static boolean isChineseWord(String word) {
-	boolean result = true;
-	byte[] b = null;
-
-	try {
-	    b = word.getBytes("big5");
-	} 
-	catch (UnsupportedEncodingException e) { e.printStackTrace(); }
-
-	if ( (b == null) || (b.length != 2)) {
-	    result = false;
-	} else {
-	    int hi = (int) ( (b[0] + 256) % 256);
-	    int lo = (int) ( (b[1] + 256) % 256);
-
-	//--------------------------------------------------
-	//     System.out.println("hi=" + hi);
-	//     System.out.println("lo=" + lo);
-	//-------------------------------------------------- 
-
-	    if (hi < 0xA4) {
-		result = false;
-	    } else if ( (hi > 0xC6) && (hi < 0xC9)) {
-		result = false;
-	    } else if (hi > 0xF9) {
-		result = false;
-	    } else {
-		if (lo < 0x40) {
-		    result = false;
-		} else if ( (lo > 0x7E) && (lo < 0xA1)) {
-		    result = false;
-		}
-	    }
-	}
+	return ((word.length() == 1) && NGram.isChineseWord(word.charAt(0)));
+    }
 
-	return result;
+    public static boolean isChineseWord(char c) {
+	return CharTable.big5Chinese().isLegal(c);
     }
 
+    /**
+     * Tests if the word is a single English letter.
+     *
+     * @param word the target word.
+     * @return true if the word is an English letter.
+     */
     public static boolean isEnglishAlphabet(String word) {
-	boolean result = false;
-	byte[] b = null;
-
-	try {
-	    b = word.getBytes("big5");
-	} catch (UnsupportedEncodingException uee) {
-	    uee.printStackTrace();
-	}
-	if ( (b != null) && (b.length == 1)) {
-	    if ( ( (b[0] >= 'a') && (b[0] <= 'z')) ||
-		 ( (b[0] >= 'A') && (b[0] <= 'Z'))) {
-		result = true;
-	    }
-	}
+	return ((word.length() == 1) && NGram.isEnglishAlphabet(word.charAt(0)));
+    }
 
-	return result;
+    public static boolean isEnglishAlphabet(char c) {
+	return CharTable.englishAlphabet().isLegal(c);
     }
 
     public class NGramInfo {
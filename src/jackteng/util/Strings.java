@@ -280,6 +280,69 @@ public class Strings {
 	return index;
     }
 
+    /**
+     * Returns the number of characters taken by suffixLen units (characters
+     * of a Chinese like string, words of an English like one) following a word
+     * at the beginning of the given range. For an English like string the
+     * result runs to the next space, so a word cut by the end of the word is
+     * completed.
+     *
+     * @param data the target string.
+     * @param from the beginning index of the range, inclusive.
+     * @param to the ending index of the range, exclusive.
+     * @param wordLen the length of the word at the beginning of the range.
+     * @param suffixLen the number of units following the word.
+     * @param langType the language type, either Chinese like or English like.
+     * @return the number of characters, -1 if the range does not have that
+     *         many English words after the word.
+     */
+    public static int getSuffixLen(CharSequence data, int from, int to,
+				   int wordLen, int suffixLen, int langType) {
+	int result = suffixLen;
+
+	if (langType == Strings.EnglishLike) {
+	    if (to - from <= wordLen) {
+		result = -1;
+	    } else {
+		if (data.charAt(from + wordLen) != ' ') {
+		    result = suffixLen - 1;
+		}
+		int prevIndex = ((result == 0) ? wordLen :
+				 Strings.indexOfSpace(data, from, to, wordLen, result));
+		int nextIndex = Strings.indexOfSpace(data, from, to, wordLen, result + 1);
+		if (nextIndex == -1) {
+		    if (prevIndex == -1) {
+			result = -1;
+		    } else {
+			result = to - from - wordLen;
+		    }
+		} else {
+		    result = nextIndex - wordLen;
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the index, relative to from, of the num-th space at or after
+     * the given start of the range; -1 if there is none.
+     */
+    private static int indexOfSpace(CharSequence data, int from, int to,
+				    int start, int num) {
+	if (num < 1) {
+	    return -1;
+	}
+	for (int i = from + start; i < to; i++) {
+	    if ((data.charAt(i) == ' ') && (--num == 0)) {
+		return i - from;
+	    }
+	}
+
+	return -1;
+    }
+
     /**
      * Returns a string resulting from replacing all occurrences of oldStr
      * in the target string with newStr.
@@ -0,0 +1,282 @@
+package jackteng.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>Description: Generates a reproducible corpus of synthetic text, for
+ *                 measuring the speed of indexing and extraction without
+ *                 licensed text. A lexicon of terms is made of characters
+ *                 (English letters) drawn from a Zipfian distribution, and
+ *                 the text is made of terms drawn from a Zipfian
+ *                 distribution over the lexicon. Multi-word units (MWUs) of
+ *                 2 to 4 terms are planted among them at a given rate, so
+ *                 that the terms an extraction finds can be checked against
+ *                 the ones planted. Lines are split into clauses by
+ *                 punctuation, which is illegal in terms. The same seed and
+ *                 settings give the same corpus, and a shorter corpus is a
+ *                 prefix of a longer one.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class SyntheticCorpus {
+    public final static double DEFAULT_EXPONENT = 1.0;
+    public final static int DEFAULT_LEXICON_SIZE = 20000;
+    public final static int DEFAULT_NUM_MWUS = 1000;
+
+    private final static int ALPHABET_SIZE = 5000;          // the Chinese characters drawn.
+    private final static int[] CHINESE_TERM_LENGTHS = {1, 2, 2, 2, 2, 3, 3, 4};
+    private final static int MAX_MWU_LEN = 4;          // in terms.
+
+    private int langType = Strings.ChineseLike;
+    private Random random = null;
+    private String[] terms = null;          // the lexicon, by rank.
+    private double[] termCdf = null;
+    private String[] mwus = null;          // by rank.
+    private double[] mwuCdf = null;
+    private double mwuRate = 0.02;          // the chance of an MWU in place of a term.
+    private int minLineLen = 20;
+    private int maxLineLen = 80;
+
+    public SyntheticCorpus(int langType, long seed) {
+	this(langType, seed, DEFAULT_EXPONENT, DEFAULT_LEXICON_SIZE,
+	     DEFAULT_NUM_MWUS);
+    }
+
+    /**
+     * Makes the lexicon and the MWUs.
+     *
+     * @param langType the language type, either Chinese like or English like.
+     * @param seed the seed of the random numbers.
+     * @param exponent the exponent s of Zipf's law, by which the frequency of
+     *        the item of rank r is proportional to 1 / r^s.
+     * @param lexiconSize the number of distinct terms.
+     * @param numMWUs the number of distinct MWUs planted.
+     * @throws IllegalArgumentException if the lexicon is too small for the
+     *         MWUs.
+     */
+    public SyntheticCorpus(int langType, long seed, double exponent,
+			   int lexiconSize, int numMWUs) {
+	if ((lexiconSize < 2) || (numMWUs < 0) ||
+	    ((double) numMWUs > (double) lexiconSize * lexiconSize / 2)) {
+	    throw (new IllegalArgumentException(
+		"Too few terms for " + numMWUs + " MWUs: " + lexiconSize));
+	}
+	this.langType = langType;
+	this.random = new Random(seed);
+
+	// the characters are ranked in random order.
+	List<String> alphabet = new ArrayList<String>();
+	if (langType == Strings.EnglishLike) {
+	    for (char c = 'a'; c <= 'z'; c++) {
+		alphabet.add(String.valueOf(c));
+	    }
+	} else {
+	    CharTable table = CharTable.big5Chinese();
+	    for (char c = '\u4e00'; alphabet.size() < ALPHABET_SIZE; c++) {
+		if (table.isLegal(c)) {
+		    alphabet.add(String.valueOf(c));
+		}
+	    }
+	}
+	Collections.shuffle(alphabet, random);
+	double[] charCdf = SyntheticCorpus.zipf(alphabet.size(), exponent);
+
+	Set<String> lexicon = new LinkedHashSet<String>();
+	StringBuilder term = new StringBuilder();
+	while (lexicon.size() < lexiconSize) {
+	    term.setLength(0);
+	    int len = ((langType == Strings.EnglishLike) ?
+		       2 + random.nextInt(8) :
+		       CHINESE_TERM_LENGTHS[random.nextInt(CHINESE_TERM_LENGTHS.length)]);
+	    for (int i = 0; i < len; i++) {
+		term.append(alphabet.get(SyntheticCorpus.sample(charCdf, random)));
+	    }
+	    lexicon.add(term.toString());
+	}
+	terms = lexicon.toArray(new String[lexicon.size()]);
+	termCdf = SyntheticCorpus.zipf(terms.length, exponent);
+
+	// the terms of the MWUs are drawn evenly, so that they are not all
+	// frequent on their own.
+	Set<String> units = new LinkedHashSet<String>();
+	while (units.size() < numMWUs) {
+	    term.setLength(0);
+	    for (int n = 2 + random.nextInt(MAX_MWU_LEN - 1); n > 0; n--) {
+		this.appendTerm(term, terms[random.nextInt(terms.length)]);
+	    }
+	    units.add(term.toString());
+	}
+	mwus = units.toArray(new String[units.size()]);
+	mwuCdf = SyntheticCorpus.zipf(Math.max(1, mwus.length), exponent);
+    }
+
+    /**
+     * Sets the chance of an MWU in place of each term.
+     *
+     * @param rate the rate, from 0 to 1.
+     */
+    public void setMWURate(double rate) {
+	if ((rate < 0.0) || (rate > 1.0)) {
+	    throw (new IllegalArgumentException("Illegal MWU rate: " + rate));
+	}
+	this.mwuRate = rate;
+    }
+
+    /**
+     * Sets the range of the line lengths. A line ends with the term which
+     * reaches a length drawn evenly from the range, so it may be a few
+     * characters longer.
+     *
+     * @param min the minimum length in characters.
+     * @param max the maximum length in characters.
+     */
+    public void setLineLength(int min, int max) {
+	if ((min < 1) || (max < min)) {
+	    throw (new IllegalArgumentException(
+		"Illegal line lengths: " + min + " to " + max));
+	}
+	this.minLineLen = min;
+	this.maxLineLen = max;
+    }
+
+    public int getLangType() {
+	return this.langType;
+    }
+
+    /**
+     * Returns the lexicon, the most frequent term first.
+     *
+     * @return the terms.
+     */
+    public String[] getTerms() {
+	return terms.clone();
+    }
+
+    /**
+     * Returns the MWUs planted, the most frequent one first. The words of an
+     * English like MWU are separated by single spaces.
+     *
+     * @return the MWUs.
+     */
+    public String[] getMWUs() {
+	return mwus.clone();
+    }
+
+    /**
+     * Generates the next line, without a line separator.
+     *
+     * @return the line.
+     */
+    public String nextLine() {
+	boolean isEnglish = (langType == Strings.EnglishLike);
+	int len = minLineLen + random.nextInt(maxLineLen - minLineLen + 1);
+	StringBuilder result = new StringBuilder();
+
+	while (result.length() < len) {
+	    if (result.length() > 0) {
+		result.append(isEnglish ? ", " : "\uff0c");
+	    }
+	    int clauseStart = result.length();
+	    for (int n = 3 + random.nextInt(6); (n > 0) && (result.length() < len); n--) {
+		if (isEnglish && (result.length() > clauseStart)) {
+		    result.append(' ');
+		}
+		if ((mwus.length > 0) && (random.nextDouble() < mwuRate)) {
+		    result.append(mwus[SyntheticCorpus.sample(mwuCdf, random)]);
+		} else {
+		    result.append(terms[SyntheticCorpus.sample(termCdf, random)]);
+		}
+	    }
+	}
+	result.append(isEnglish ? "." : "\u3002");
+
+	return result.toString();
+    }
+
+    /**
+     * Writes lines to the files of a corpus directory, which is made if it
+     * does not exist. The files are named corpus-00000.txt, corpus-00001.txt
+     * and so on, and a file is closed once it reaches fileSize bytes.
+     *
+     * @param corpusDir the corpus directory.
+     * @param charsetName the encoding of the files, which must encode the
+     *        Chinese characters of Big5.
+     * @param size the number of bytes to be written; the last line may
+     *        exceed it.
+     * @param fileSize the number of bytes of each file.
+     * @return the number of files written.
+     */
+    public int write(String corpusDir, String charsetName, long size,
+		     long fileSize) throws IOException {
+	File dir = new File(corpusDir);
+	if (!dir.isDirectory() && !dir.mkdirs()) {
+	    throw (new IOException("Cannot make the directory " + corpusDir));
+	}
+	int sepLen = System.getProperty("line.separator").length();
+	int result = 0;
+
+	for (long len = 0; len < size; ) {
+	    File file = new File(dir, "corpus-" + SyntheticCorpus.pad(result++) + ".txt");
+	    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+		new FileOutputStream(file), charsetName));
+	    try {
+		for (long fileLen = 0; (fileLen < fileSize) && (len < size); ) {
+		    String line = this.nextLine();
+		    writer.write(line);
+		    writer.newLine();
+		    int lineLen = line.getBytes(charsetName).length + sepLen;
+		    fileLen += lineLen;
+		    len += lineLen;
+		}
+	    } finally {
+		writer.close();
+	    }
+	}
+
+	return result;
+    }
+
+    private void appendTerm(StringBuilder str, String term) {
+	if ((langType == Strings.EnglishLike) && (str.length() > 0)) {
+	    str.append(' ');
+	}
+	str.append(term);
+    }
+
+    private static String pad(int n) {
+	String result = String.valueOf(n);
+	while (result.length() < 5) {
+	    result = "0" + result;
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the cumulative distribution of Zipf's law over n ranks.
+     */
+    private static double[] zipf(int n, double exponent) {
+	double[] result = new double[n];
+	double sum = 0.0;
+	for (int i = 0; i < n; i++) {
+	    sum += 1.0 / Math.pow(i + 1, exponent);
+	    result[i] = sum;
+	}
+	for (int i = 0; i < n; i++) {
+	    result[i] /= sum;
+	}
+
+	return result;
+    }
+
+    /**
+     * Draws a rank from a cumulative distribution.
+     */
+    private static int sample(double[] cdf, Random random) {
+	int i = Arrays.binarySearch(cdf, random.nextDouble());
+	return Math.min(cdf.length - 1, ((i >= 0) ? i : -(i + 1)));
+    }
+}
@@ -0,0 +1,273 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Checks the extraction over a synthetic corpus of a fixed
+ *                 seed, on a PAT-tree and on a suffix array: the frequencies
+ *                 of the cached index against those of the index itself, the
+ *                 topK terms and MWUs, ranked by frequency and by glue,
+ *                 against the best of all those extracted, the files written
+ *                 against the maps returned, and the metrics against the
+ *                 sizes of the maps. A sink whose files cannot be written
+ *                 must fail on close().</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class ExtractionTest {
+    private final static long SEED = 20030616L;
+    private final static int LEXICON_SIZE = 300;
+    private final static int NUM_MWUS = 30;
+    private final static int NUM_LINES = 800;
+    private final static int MAX_N = 4;
+    private final static int MIN_FREQ = 2;
+    private final static int WINDOW_SIZE = 1;
+    private final static int KIND = 2;
+    private final static double FREQ_RATIO = 0.8;
+    private final static int MEASURE = PATTermExtraction.SCPCD;
+    private final static int[] TOP_KS = {1, 7, 50};
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+	ExtractionTest test = new ExtractionTest();
+	for (int langType = Strings.ChineseLike; langType <= Strings.EnglishLike; langType++) {
+	    test.checkCache(langType);
+	    for (int indexType = PATTermExtraction.PAT_TREE;
+		 indexType <= PATTermExtraction.SUFFIX_ARRAY; indexType++) {
+		test.checkExtraction(langType, indexType);
+	    }
+	}
+	test.checkFailingSink();
+
+	if (test.failures > 0) {
+	    System.out.println("ExtractionTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("ExtractionTest: OK");
+    }
+
+    private static List<String> getLines(int langType) {
+	SyntheticCorpus corpus = new SyntheticCorpus(langType, SEED, SyntheticCorpus.DEFAULT_EXPONENT,
+						     LEXICON_SIZE, NUM_MWUS);
+	List<String> result = new ArrayList<String>();
+	for (int i = 0; i < NUM_LINES; i++) {
+	    result.add(corpus.nextLine());
+	}
+
+	return result;
+    }
+
+    private static String getName(int langType, int indexType) {
+	return (((langType == Strings.EnglishLike) ? "English " : "Chinese ") +
+		((indexType == PATTermExtraction.SUFFIX_ARRAY) ? "suffix array" : "PAT-tree"));
+    }
+
+    private void checkCache(int langType) {
+	List<String> lines = ExtractionTest.getLines(langType);
+	PATTree tree = new PATTree(langType);
+	CachedSuffixIndex cached = new CachedSuffixIndex(new PATTree(langType), 100);
+	for (String line: lines) {
+	    tree.add(line);
+	    cached.add(line);
+	}
+
+	String name = ExtractionTest.getName(langType, PATTermExtraction.PAT_TREE) + " cache";
+	Set<String> words = PruneTest.getWords(langType, lines);
+	for (String word: words) {
+	    int expected = tree.getFrequency(word);
+	    for (int i = 0; i < 2; i++) {
+		if (cached.getFrequency(word) != expected) {
+		    this.fail(name + ": getFrequency(" + word + ") is " +
+			      cached.getFrequency(word) + ", expected " + expected);
+		}
+	    }
+	}
+	// each word is looked up twice in a row, and the second is a hit.
+	this.check(name + " hits and misses",
+		   (cached.getHits() + cached.getMisses() >= 2 * words.size()) &&
+		   (cached.getHits() >= words.size()) &&
+		   (cached.getMisses() > 0));
+
+	cached.add(lines.get(0));
+	tree.add(lines.get(0));
+	for (String word: words) {
+	    if (cached.getFrequency(word) != tree.getFrequency(word)) {
+		this.fail(name + ": getFrequency(" + word + ") after add() is " +
+			  cached.getFrequency(word) + ", expected " + tree.getFrequency(word));
+	    }
+	}
+    }
+
+    private void checkExtraction(int langType, int indexType) throws Exception {
+	String name = ExtractionTest.getName(langType, indexType);
+	PATTermExtraction te = new PATTermExtraction(langType, indexType);
+	te.add(ExtractionTest.getLines(langType).iterator());
+	Metrics metrics = new Metrics();
+	te.setMetrics(metrics);
+
+	File dir = File.createTempFile("ExtractionTest", "");
+	if (!dir.delete() || !dir.mkdir()) {
+	    throw (new IOException("Cannot make the directory " + dir));
+	}
+	try {
+	    String prefix = new File(dir, "te").getPath();
+	    Map[] mwus = te.extract(MEASURE, MIN_FREQ, MAX_N, WINDOW_SIZE, prefix);
+	    this.checkFiles(name + " MWUs", mwus, prefix + "_localmaxs_" + MEASURE + "_" +
+			    WINDOW_SIZE + "_");
+	    for (int n = 2; n <= MAX_N; n++) {
+		this.check(name + " extract.n" + n + ".accepted",
+			   metrics.counter("extract.n" + n + ".accepted").getCount() ==
+			   mwus[n - 1].size());
+	    }
+	    metrics.reset();
+	    Map[] terms = te.extract(MAX_N, MIN_FREQ, KIND, FREQ_RATIO, prefix);
+	    this.checkFiles(name + " terms", terms, prefix + "_");
+	    for (int n = 2; n <= MAX_N; n++) {
+		this.check(name + " extract.n" + n + ".accepted of terms",
+			   metrics.counter("extract.n" + n + ".accepted").getCount() ==
+			   terms[n - 1].size());
+	    }
+	    Map<String, Object> snapshot = metrics.snapshot();
+	    this.check(name + " index.textBytes",
+		       ((Long) snapshot.get("index.textBytes")).longValue() > 0);
+	    this.check(name + " index.nodes",
+		       (((Long) snapshot.get("index.nodes")).longValue() > 0) ==
+		       (indexType == PATTermExtraction.PAT_TREE));
+	    this.check(name + " cache.hits", te.getCacheHits() > 0);
+
+	    for (int i = 0; i < TOP_KS.length; i++) {
+		int topK = TOP_KS[i];
+		this.checkTopK(name + " top " + topK + " MWUs by frequency", te, mwus,
+			       te.extract(MEASURE, MIN_FREQ, MAX_N, WINDOW_SIZE, null, 1,
+					  topK, PATTermExtraction.BY_FREQUENCY),
+			       topK, false);
+		this.checkTopK(name + " top " + topK + " MWUs by glue", te, mwus,
+			       te.extract(MEASURE, MIN_FREQ, MAX_N, WINDOW_SIZE, null, 1,
+					  topK, PATTermExtraction.BY_GLUE),
+			       topK, true);
+		this.checkTopK(name + " top " + topK + " terms", te, terms,
+			       te.extract(MAX_N, MIN_FREQ, KIND, FREQ_RATIO, null, topK),
+			       topK, false);
+	    }
+	} finally {
+	    ExtractionTest.delete(dir);
+	}
+    }
+
+    /**
+     * Checks that the topK of each n are among all the ones extracted, with
+     * their frequencies, and that their scores are the topK best of all,
+     * best first.
+     */
+    private void checkTopK(String name, PATTermExtraction te, Map[] all,
+			   Map[] topKs, int topK, boolean byGlue) {
+	for (int n = 2; n <= MAX_N; n++) {
+	    List<Double> expected = new ArrayList<Double>();
+	    for (Object key: all[n - 1].keySet()) {
+		expected.add(Double.valueOf(ExtractionTest.getScore(te, all[n - 1], key, byGlue)));
+	    }
+	    Collections.sort(expected, Collections.reverseOrder());
+	    expected = expected.subList(0, Math.min(topK, expected.size()));
+
+	    List<Double> actual = new ArrayList<Double>();
+	    for (Object key: topKs[n - 1].keySet()) {
+		if (!topKs[n - 1].get(key).equals(all[n - 1].get(key))) {
+		    this.fail(name + ": " + key + " is " + topKs[n - 1].get(key) +
+			      ", expected " + all[n - 1].get(key));
+		}
+		actual.add(Double.valueOf(ExtractionTest.getScore(te, topKs[n - 1], key, byGlue)));
+	    }
+	    if (!expected.equals(actual)) {
+		this.fail(name + ": the scores of n = " + n + " are " + actual +
+			  ", expected " + expected);
+	    }
+	}
+    }
+
+    private static double getScore(PATTermExtraction te, Map map, Object key,
+				   boolean byGlue) {
+	if (byGlue) {
+	    return te.glue((String) key, MEASURE, te.getLangType());
+	}
+
+	return ((Integer) map.get(key)).doubleValue();
+    }
+
+    /**
+     * Checks that the files of the n-grams hold the terms of the maps with
+     * their frequencies, a term and its frequency a line. The files are in
+     * the default encoding, so the terms are compared as they read back.
+     */
+    private void checkFiles(String name, Map[] result, String prefix)
+	throws IOException {
+	int numTerms = 0;
+	for (int n = 1; n <= MAX_N; n++) {
+	    List<String> expected = new ArrayList<String>();
+	    for (Object entry: result[n - 1].entrySet()) {
+		String term = (String) ((Map.Entry) entry).getKey();
+		expected.add(new String(term.getBytes()) + " " + ((Map.Entry) entry).getValue());
+	    }
+	    numTerms += expected.size();
+
+	    List<String> actual = new ArrayList<String>();
+	    File file = new File(prefix + n + "-gram.txt");
+	    if (file.exists()) {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+		    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			actual.add(line);
+		    }
+		} finally {
+		    reader.close();
+		}
+	    }
+	    Collections.sort(expected);
+	    Collections.sort(actual);
+	    if (!expected.equals(actual)) {
+		this.fail(name + ": " + file.getName() + " holds " + actual + ", expected " + expected);
+	    }
+	}
+	this.check(name + " are not empty", numTerms > 0);
+    }
+
+    private void checkFailingSink() {
+	File dir = new File(System.getProperty("java.io.tmpdir"),
+			    "ExtractionTest-missing-" + System.nanoTime());
+	FileResultSink sink = new FileResultSink(new File(dir, "te_").getPath(), 2);
+	sink.accept(2, "a b", 3);
+	sink.accept(1, "a", 5);
+	try {
+	    sink.close();
+	    this.fail("FileResultSink.close() of a missing directory did not throw");
+	} catch (IOException ioe) {
+	}
+    }
+
+    private static void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++) {
+		ExtractionTest.delete(files[i]);
+	    }
+	}
+	file.delete();
+    }
+
+    private void check(String name, boolean passed) {
+	if (!passed) {
+	    this.fail(name + " failed");
+	}
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}
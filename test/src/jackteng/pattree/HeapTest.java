@@ -0,0 +1,196 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Checks that buildPruned() takes less heap than the corpus
+ *                 it reads. The corpus is the same synthetic lines written
+ *                 to many files, so that the frequencies of its n-grams are
+ *                 those of the lines times the number of files, and its
+ *                 successors are those of the lines. The terms extracted
+ *                 from the pruned indexes must thus be those extracted from
+ *                 the lines, at the minimum frequency and the frequencies
+ *                 times the number of files. The test must be run with a
+ *                 maximum heap size below the corpus size, as the Makefile
+ *                 does, and the peaks of the heap pools must stay below it
+ *                 too. The pruned indexes cannot be merged.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class HeapTest {
+    private final static long SEED = 20030704L;
+    private final static int LEXICON_SIZE = 300;
+    private final static int NUM_MWUS = 30;
+    private final static int LINES_SIZE = 200000;          // in bytes of UTF-8.
+    private final static int NUM_FILES = 60;
+    private final static int NUM_PARTS = 4;
+    private final static int MAX_N = 3;
+    private final static int MIN_FREQ = 2;          // of the lines.
+    private final static int KIND = 2;
+    private final static double FREQ_RATIO = 0.8;
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+	HeapTest test = new HeapTest();
+	for (int langType = Strings.ChineseLike; langType <= Strings.EnglishLike; langType++) {
+	    test.checkBuildPruned(langType);
+	}
+
+	if (test.failures > 0) {
+	    System.out.println("HeapTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("HeapTest: OK");
+    }
+
+    private static List<String> getLines(int langType) throws IOException {
+	SyntheticCorpus corpus = new SyntheticCorpus(langType, SEED, SyntheticCorpus.DEFAULT_EXPONENT,
+						     LEXICON_SIZE, NUM_MWUS);
+	List<String> result = new ArrayList<String>();
+	for (int size = 0; size < LINES_SIZE; ) {
+	    String line = corpus.nextLine();
+	    result.add(line);
+	    size += line.getBytes("UTF-8").length + 1;
+	}
+
+	return result;
+    }
+
+    /**
+     * Writes the lines to each of the files of the corpus directory, and
+     * returns the size of the corpus in bytes.
+     */
+    private static long write(File dir, List<String> lines) throws IOException {
+	if (!dir.mkdirs()) {
+	    throw (new IOException("Cannot make the directory " + dir));
+	}
+	for (int f = 0; f < NUM_FILES; f++) {
+	    Writer writer = new BufferedWriter(new OutputStreamWriter(
+		new FileOutputStream(new File(dir, "corpus-" + f + ".txt")), "UTF-8"));
+	    try {
+		for (String line: lines) {
+		    writer.write(line);
+		    writer.write('\n');
+		}
+	    } finally {
+		writer.close();
+	    }
+	}
+
+	long result = 0;
+	File[] files = dir.listFiles();
+	for (int i = 0; i < files.length; i++) {
+	    result += files[i].length();
+	}
+
+	return result;
+    }
+
+    private void checkBuildPruned(int langType) throws Exception {
+	String name = ((langType == Strings.EnglishLike) ? "English" : "Chinese");
+	List<String> lines = HeapTest.getLines(langType);
+	PATTermExtraction te = new PATTermExtraction(langType, PATTermExtraction.PAT_TREE);
+	te.add(lines.iterator());
+	Map[] expected = te.extract(MAX_N, MIN_FREQ, KIND, FREQ_RATIO, null);
+	te = null;
+	int numSuffixes = 0;
+	for (String line: lines) {
+	    numSuffixes += line.length();
+	}
+
+	File dir = File.createTempFile("HeapTest", "");
+	dir.delete();
+	try {
+	    long corpusSize = HeapTest.write(dir, lines);
+	    lines = null;
+	    this.check(name + ": the maximum heap size " + Runtime.getRuntime().maxMemory() +
+		       " is below the corpus size " + corpusSize,
+		       Runtime.getRuntime().maxMemory() < corpusSize);
+
+	    List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+	    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+		if (pool.getType() == MemoryType.HEAP) {
+		    pools.add(pool);
+		}
+	    }
+	    System.gc();
+	    for (MemoryPoolMXBean pool: pools) {
+		pool.resetPeakUsage();
+	    }
+
+	    PrintStream out = System.out;
+	    System.setOut(new PrintStream(new ByteArrayOutputStream() {
+		public void write(byte[] b, int off, int len) {
+		}
+	    }));
+	    try {
+		te = PATTermExtraction.buildPruned(
+		    dir.getPath(), langType, 1, "UTF-8",
+		    PATTermExtraction.getDefaultClassifier(langType), MAX_N + 1,
+		    NUM_FILES * MIN_FREQ, (long) NUM_FILES * numSuffixes / NUM_PARTS, null);
+	    } finally {
+		System.setOut(out);
+	    }
+
+	    // the sum of the peaks of the pools bounds the peak of the heap.
+	    long peak = 0;
+	    for (MemoryPoolMXBean pool: pools) {
+		peak += pool.getPeakUsage().getUsed();
+	    }
+	    this.check(name + ": the peak heap usage " + peak + " is below the corpus size " +
+		       corpusSize, peak < corpusSize);
+
+	    Map[] actual = te.extract(MAX_N, NUM_FILES * MIN_FREQ, KIND, FREQ_RATIO, null);
+	    int numTerms = 0;
+	    for (int n = 1; n <= MAX_N; n++) {
+		Map<Object, Integer> times = new HashMap<Object, Integer>();
+		for (Object entry: expected[n - 1].entrySet()) {
+		    times.put(((Map.Entry) entry).getKey(),
+			      Integer.valueOf(NUM_FILES * ((Integer) ((Map.Entry) entry).getValue()).intValue()));
+		}
+		numTerms += times.size();
+		if (!times.equals(actual[n - 1])) {
+		    this.fail(name + ": the " + n + "-grams are " + actual[n - 1] +
+			      ", expected " + times);
+		}
+	    }
+	    this.check(name + ": the terms are not empty", numTerms > 0);
+	    try {
+		te.merge(te);
+		this.fail(name + ": merge() of a pruned index did not throw");
+	    } catch (IllegalStateException ise) {
+	    }
+	} finally {
+	    HeapTest.delete(dir);
+	}
+    }
+
+    private static void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++) {
+		HeapTest.delete(files[i]);
+	    }
+	}
+	file.delete();
+    }
+
+    private void check(String name, boolean passed) {
+	if (!passed) {
+	    this.fail(name + " failed");
+	}
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}
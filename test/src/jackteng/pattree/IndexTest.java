@@ -0,0 +1,253 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Checks the indexes and the extraction against each other
+ *                 over a synthetic corpus of a fixed seed. A PAT-tree, built
+ *                 word by word and bulk-loaded, must give the frequencies,
+ *                 the successors and the n-grams of a suffix array of the
+ *                 corpus, in Chinese like and in English like text. The
+ *                 corpus is then written to files, and the extraction must
+ *                 write the same files on one thread and on NUM_THREADS,
+ *                 from whole indexes, from PAT-trees of bounded keys and
+ *                 from PAT-trees pruned part by part; and the same files
+ *                 from a whole PAT-tree as from a suffix array.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class IndexTest {
+    private final static long SEED = 20030602L;
+    private final static int LEXICON_SIZE = 500;
+    private final static int NUM_MWUS = 50;
+    private final static int NUM_LINES = 1000;
+    private final static int MAX_N = 4;          // of the n-grams compared and extracted.
+    private final static int MAX_SUFFIX_LEN = 2;
+    private final static int MIN_FREQ = 2;
+    private final static int WINDOW_SIZE = 1;
+    private final static int MAX_KEY_LEN = MAX_N + WINDOW_SIZE + 1;          // of the bounded keys.
+    private final static int NUM_THREADS = 4;
+    private final static long CORPUS_SIZE = 60000;          // in bytes.
+    private final static long FILE_SIZE = 20000;
+    private final static long PASS_SIZE = 4000;          // in suffixes, so there are several parts.
+    private final static String CHARSET_NAME = "UTF-8";
+    private final static String[] INDEX_NAMES = {
+	"PAT-tree", "bounded PAT-tree", "PAT-tree pruned by parts",
+	"bounded PAT-tree pruned by parts", "suffix array"
+    };
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+	IndexTest test = new IndexTest();
+	test.checkIndexes(Strings.ChineseLike);
+	test.checkIndexes(Strings.EnglishLike);
+	test.checkExtraction(Strings.ChineseLike);
+	test.checkExtraction(Strings.EnglishLike);
+
+	if (test.failures > 0) {
+	    System.out.println("IndexTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("IndexTest: OK");
+    }
+
+    private static SyntheticCorpus getCorpus(int langType) {
+	return new SyntheticCorpus(langType, SEED, SyntheticCorpus.DEFAULT_EXPONENT,
+				   LEXICON_SIZE, NUM_MWUS);
+    }
+
+    private static String getName(int langType) {
+	return ((langType == Strings.EnglishLike) ? "English" : "Chinese");
+    }
+
+    private void checkIndexes(int langType) {
+	SyntheticCorpus corpus = IndexTest.getCorpus(langType);
+	List<String> lines = new ArrayList<String>();
+	for (int i = 0; i < NUM_LINES; i++) {
+	    lines.add(corpus.nextLine());
+	}
+
+	PATTree tree = new PATTree(langType);
+	SuffixArray sa = new SuffixArray(langType);
+	Segmenter segmenter =
+	    new Segmenter(langType, PATTermExtraction.getDefaultClassifier(langType),
+			  tree, null);
+	for (String line: lines) {
+	    segmenter.add(line);
+	}
+	segmenter =
+	    new Segmenter(langType, PATTermExtraction.getDefaultClassifier(langType),
+			  sa, null);
+	for (String line: lines) {
+	    segmenter.add(line);
+	}
+
+	String name = IndexTest.getName(langType);
+	this.checkEqual(name + " PAT-tree", sa, tree, lines);
+	this.checkEqual(name + " bulk-loaded PAT-tree", sa, PATTree.build(sa), lines);
+    }
+
+    /**
+     * Checks that the index gives the answers of the suffix array for the
+     * n-grams of the lines.
+     */
+    private void checkEqual(String name, SuffixArray expected,
+			    SuffixIndex actual, List<String> lines) {
+	for (String word: PruneTest.getWords(expected.getLangType(), lines)) {
+	    this.checkEqual(name, "getFrequency(" + word + ")",
+			    String.valueOf(expected.getFrequency(word)),
+			    String.valueOf(actual.getFrequency(word)));
+	    for (int k = 1; k <= MAX_SUFFIX_LEN; k++) {
+		this.checkEqual(name, "getSuffixPerplexity(" + word + ", " + k + ")",
+				PruneTest.toString(expected.getSuffixPerplexity(word, k), 0),
+				PruneTest.toString(actual.getSuffixPerplexity(word, k), 0));
+	    }
+	}
+
+	ArrayList[] expectedNGrams = expected.getNGrams(MAX_N, MIN_FREQ);
+	ArrayList[] actualNGrams = actual.getNGrams(MAX_N, MIN_FREQ);
+	for (int n = 1; n <= MAX_N; n++) {
+	    this.checkEqual(name, "getNGrams(" + n + ")",
+			    PruneTest.toString(expected.getNGrams(n), 0),
+			    PruneTest.toString(actual.getNGrams(n), 0));
+	    this.checkEqual(name, "getNGrams(" + MAX_N + ", " + MIN_FREQ + ")[" + (n - 1) + "]",
+			    PruneTest.toString(expectedNGrams[n - 1], 0),
+			    PruneTest.toString(actualNGrams[n - 1], 0));
+	}
+    }
+
+    private void checkExtraction(int langType) throws Exception {
+	File dir = IndexTest.makeTempDir();
+	try {
+	    File corpusDir = new File(dir, "corpus");
+	    IndexTest.getCorpus(langType).write(corpusDir.getPath(), CHARSET_NAME,
+						CORPUS_SIZE, FILE_SIZE);
+	    String name = IndexTest.getName(langType);
+	    File[] firstDirs = new File[INDEX_NAMES.length];
+	    for (int i = 0; i < INDEX_NAMES.length; i++) {
+		File[] outputDirs = new File[2];
+		for (int t = 0; t < 2; t++) {
+		    int numThreads = ((t == 0) ? 1 : NUM_THREADS);
+		    PATTermExtraction te =
+			IndexTest.build(corpusDir.getPath(), langType, i, numThreads);
+		    outputDirs[t] = new File(dir, i + "_" + numThreads);
+		    outputDirs[t].mkdir();
+		    te.extract(PATTermExtraction.SCPCD, MIN_FREQ, MAX_N, WINDOW_SIZE,
+			       new File(outputDirs[t], "te").getPath(), numThreads);
+		}
+		this.checkEqual(name + " " + INDEX_NAMES[i] + " extracted on " +
+				NUM_THREADS + " threads", outputDirs[0], outputDirs[1]);
+		firstDirs[i] = outputDirs[0];
+	    }
+	    this.checkEqual(name + " " + INDEX_NAMES[0] + " extracted as the " +
+			    INDEX_NAMES[INDEX_NAMES.length - 1],
+			    firstDirs[INDEX_NAMES.length - 1], firstDirs[0]);
+	} finally {
+	    IndexTest.delete(dir);
+	}
+    }
+
+    /**
+     * Builds the index named INDEX_NAMES[index].
+     */
+    private static PATTermExtraction build(String corpusDir, int langType,
+					   int index, int numThreads)
+	throws Exception {
+	CharClassifier classifier = PATTermExtraction.getDefaultClassifier(langType);
+	int maxKeyLen = (((index == 1) || (index == 3)) ? MAX_KEY_LEN : 0);
+
+	switch (index) {
+	case 2:
+	case 3:
+	    return PATTermExtraction.buildPruned(corpusDir, langType, numThreads,
+						 CHARSET_NAME, classifier, maxKeyLen,
+						 MIN_FREQ, PASS_SIZE, null);
+	case 4:
+	    return new PATTermExtraction(corpusDir, langType,
+					 PATTermExtraction.SUFFIX_ARRAY, numThreads,
+					 CHARSET_NAME, classifier, 0);
+	default:
+	    return new PATTermExtraction(corpusDir, langType,
+					 PATTermExtraction.PAT_TREE, numThreads,
+					 CHARSET_NAME, classifier, maxKeyLen);
+	}
+    }
+
+    /**
+     * Checks that both directories hold the same files, and that something
+     * was extracted.
+     */
+    private void checkEqual(String name, File expectedDir, File actualDir)
+	throws IOException {
+	String[] expected = expectedDir.list();
+	String[] actual = actualDir.list();
+	Arrays.sort(expected);
+	Arrays.sort(actual);
+	this.checkEqual(name, "files", Arrays.asList(expected).toString(),
+			Arrays.asList(actual).toString());
+
+	long size = 0;
+	for (int i = 0; i < expected.length; i++) {
+	    File file = new File(expectedDir, expected[i]);
+	    File other = new File(actualDir, expected[i]);
+	    size += file.length();
+	    if (other.exists() &&
+		!Arrays.equals(IndexTest.read(file), IndexTest.read(other))) {
+		this.fail(name + ": " + expected[i] + " differs");
+	    }
+	}
+	if (size == 0) {
+	    this.fail(name + ": nothing extracted");
+	}
+    }
+
+    private void checkEqual(String name, String query, String expected,
+			    String actual) {
+	if (!expected.equals(actual)) {
+	    this.fail(name + ": " + query + " is " + actual + ", expected " + expected);
+	}
+    }
+
+    private static byte[] read(File file) throws IOException {
+	byte[] result = new byte[(int) file.length()];
+	DataInputStream in = new DataInputStream(new FileInputStream(file));
+	try {
+	    in.readFully(result);
+	} finally {
+	    in.close();
+	}
+
+	return result;
+    }
+
+    private static File makeTempDir() throws IOException {
+	File result = File.createTempFile("IndexTest", "");
+	if (!result.delete() || !result.mkdir()) {
+	    throw (new IOException("Cannot make the directory " + result));
+	}
+
+	return result;
+    }
+
+    private static void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++) {
+		IndexTest.delete(files[i]);
+	    }
+	}
+	file.delete();
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}
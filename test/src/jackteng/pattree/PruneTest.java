@@ -0,0 +1,224 @@
+package jackteng.pattree;
+
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Checks pruned PAT-trees against whole ones over a synthetic
+ *                 corpus of a fixed seed. The forward and inverse PAT-trees
+ *                 of the corpus, with keys unbounded and bounded, are built
+ *                 whole, built whole and pruned, and built part by part by
+ *                 the first characters of their keys, the lines added again
+ *                 for each part, each part pruned and then merged. For
+ *                 the words which occur at least MIN_FREQ times, the pruned
+ *                 PAT-trees must give the frequencies, the successor counts,
+ *                 the maximum successor frequencies and the successors of
+ *                 one character (or word) of the whole ones, and their
+ *                 longer successors which occur at least MIN_FREQ times; the
+ *                 other words must occur less than MIN_FREQ times. The
+ *                 PAT-trees built by parts must answer every query as the
+ *                 pruned ones do.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class PruneTest {
+    private final static long SEED = 20030519L;
+    private final static int LEXICON_SIZE = 500;
+    private final static int NUM_MWUS = 50;
+    private final static int NUM_LINES = 1000;
+    private final static int MIN_FREQ = 3;
+    private final static int NUM_PARTS = 4;
+    private final static int MAX_N = 4;          // of the words checked.
+    private final static int MAX_SUFFIX_LEN = 2;
+    private final static int MAX_KEY_LEN = MAX_N + MAX_SUFFIX_LEN;          // of the bounded keys.
+
+    private int failures = 0;
+
+    public static void main(String[] args) {
+	PruneTest test = new PruneTest();
+	test.check(Strings.ChineseLike, 0);
+	test.check(Strings.ChineseLike, MAX_KEY_LEN);
+	test.check(Strings.EnglishLike, 0);
+	test.check(Strings.EnglishLike, MAX_KEY_LEN);
+
+	if (test.failures > 0) {
+	    System.out.println("PruneTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("PruneTest: OK");
+    }
+
+    private void check(int langType, int maxKeyLen) {
+	SyntheticCorpus corpus =
+	    new SyntheticCorpus(langType, SEED, SyntheticCorpus.DEFAULT_EXPONENT,
+				LEXICON_SIZE, NUM_MWUS);
+	List<String> lines = new ArrayList<String>();
+	for (int i = 0; i < NUM_LINES; i++) {
+	    lines.add(corpus.nextLine());
+	}
+
+	PATTree[] whole = new PATTree[] {
+	    new PATTree(langType, maxKeyLen), new PATTree(langType, maxKeyLen)
+	};
+	PATTree[] pruned = new PATTree[] {
+	    new PATTree(langType, maxKeyLen), new PATTree(langType, maxKeyLen)
+	};
+	PruneTest.add(langType, lines, whole);
+	PruneTest.add(langType, lines, pruned);
+	pruned[0].prune(MIN_FREQ);
+	pruned[1].prune(MIN_FREQ);
+
+	PATTree[] parts = new PATTree[] {
+	    new PATTree(langType, maxKeyLen), new PATTree(langType, maxKeyLen)
+	};
+	for (int p = 0; p < NUM_PARTS; p++) {
+	    final int part = p;
+	    CharClassifier firstChars = new CharClassifier() {
+		public boolean isLegal(char c) {
+		    return (c % NUM_PARTS == part);
+		}
+	    };
+	    PATTree[] trees = new PATTree[] {
+		new PATTree(langType, maxKeyLen, firstChars),
+		new PATTree(langType, maxKeyLen, firstChars)
+	    };
+	    PruneTest.add(langType, lines, trees);
+	    for (int i = 0; i < 2; i++) {
+		trees[i].prune(MIN_FREQ);
+		parts[i].mergePart(trees[i]);
+	    }
+	}
+
+	String name = ((langType == Strings.EnglishLike) ? "English" : "Chinese") +
+	    ((maxKeyLen > 0) ? " bounded" : "");
+	int numFrequent = 0;
+	for (String word: PruneTest.getWords(langType, lines)) {
+	    String inverse = Strings.inverse(word, langType);
+	    if (whole[0].getFrequency(word) >= MIN_FREQ) {
+		numFrequent++;
+	    }
+	    this.check(name + " forward", whole[0], pruned[0], parts[0], word);
+	    this.check(name + " inverse", whole[1], pruned[1], parts[1], inverse);
+	}
+	if (numFrequent == 0) {
+	    this.fail(name + ": no word occurs " + MIN_FREQ + " times");
+	}
+	for (int i = 0; i < 2; i++) {
+	    if (pruned[i].size() >= whole[i].size()) {
+		this.fail(name + ": nothing pruned");
+	    }
+	}
+    }
+
+    /**
+     * Adds the lines to a forward and an inverse index.
+     */
+    private static void add(int langType, List<String> lines,
+			    SuffixIndex[] indexes) {
+	Segmenter segmenter =
+	    new Segmenter(langType, PATTermExtraction.getDefaultClassifier(langType),
+			  indexes[0], indexes[1]);
+	for (String line: lines) {
+	    segmenter.add(line);
+	}
+    }
+
+    /**
+     * Returns the n-grams of the clauses of the lines, up to MAX_N
+     * characters (or words) long.
+     */
+    static Set<String> getWords(int langType, List<String> lines) {
+	Set<String> result = new TreeSet<String>();
+
+	for (String line: lines) {
+	    for (String clause: line.split("[，。,.]")) {
+		String[] units = ((langType == Strings.EnglishLike) ?
+				  clause.trim().split(" ") : clause.split(""));
+		for (int i = 0; i < units.length; i++) {
+		    StringBuilder word = new StringBuilder();
+		    for (int j = i; (j < units.length) && (j < i + MAX_N); j++) {
+			if ((langType == Strings.EnglishLike) && (j > i)) {
+			    word.append(' ');
+			}
+			word.append(units[j]);
+			if (word.length() > 0) {
+			    result.add(word.toString());
+			}
+		    }
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    private void check(String name, PATTree whole, PATTree pruned,
+		       PATTree parts, String word) {
+	if (whole.getFrequency(word) >= MIN_FREQ) {
+	    this.checkEqual(name + " pruned", whole, pruned, word, MIN_FREQ);
+	} else if (pruned.getFrequency(word) >= MIN_FREQ) {
+	    this.fail(name + " pruned: " + word + " occurs " +
+		      pruned.getFrequency(word) + " times, less than " + MIN_FREQ +
+		      " in the whole PAT-tree");
+	}
+	this.checkEqual(name + " by parts", pruned, parts, word, 0);
+    }
+
+    /**
+     * Checks that the PAT-trees give the same answers for the word, the
+     * successors longer than one character (or word) only if they occur at
+     * least minFreq times.
+     */
+    private void checkEqual(String name, PATTree expected, PATTree actual,
+			    String word, int minFreq) {
+	this.checkEqual(name, "getFrequency", word,
+			String.valueOf(expected.getFrequency(word)),
+			String.valueOf(actual.getFrequency(word)));
+	this.checkEqual(name, "getSuccessorCount", word,
+			String.valueOf(expected.getSuccessorCount(word)),
+			String.valueOf(actual.getSuccessorCount(word)));
+	this.checkEqual(name, "getMaxSuccessorFrequency", word,
+			String.valueOf(expected.getMaxSuccessorFrequency(word)),
+			String.valueOf(actual.getMaxSuccessorFrequency(word)));
+	for (int k = 1; k <= MAX_SUFFIX_LEN; k++) {
+	    int min = ((k == 1) ? 0 : minFreq);
+	    this.checkEqual(name, "getSuffixPerplexity(" + k + ")", word,
+			    PruneTest.toString(expected.getSuffixPerplexity(word, k), min),
+			    PruneTest.toString(actual.getSuffixPerplexity(word, k), min));
+	}
+    }
+
+    private void checkEqual(String name, String query, String word,
+			    String expected, String actual) {
+	if (!expected.equals(actual)) {
+	    this.fail(name + ": " + query + " of " + word + " is " + actual +
+		      ", expected " + expected);
+	}
+    }
+
+    /**
+     * Lists the successors which occur at least minFreq times, in order.
+     */
+    static String toString(List successors, int minFreq) {
+	List<String> result = new ArrayList<String>();
+
+	for (Object o: successors) {
+	    SuffixPerplexity sp = (SuffixPerplexity) o;
+	    if (sp.freq >= minFreq) {
+		result.add(sp.suffix + ":" + sp.freq);
+	    }
+	}
+	Collections.sort(result);
+
+	return result.toString();
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}
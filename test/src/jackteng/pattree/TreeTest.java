@@ -0,0 +1,362 @@
+package jackteng.pattree;
+
+import java.io.*;
+import java.util.*;
+import jackteng.util.*;
+
+/**
+ * <p>Description: Checks the building blocks of the indexes over a synthetic
+ *                 corpus of a fixed seed: the text store against a list of
+ *                 its strings, the segmenter against a plain segmentation by
+ *                 regular expressions, a PAT-tree against counts of the
+ *                 occurrences in the lines, a merged PAT-tree against one of
+ *                 all the lines, a PAT-tree of bounded keys against one of
+ *                 unbounded keys, and PAT-trees and extractions read from
+ *                 images against the ones written. The extraction of text
+ *                 added by a reader, by an iterator and by a file must be the
+ *                 same.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class TreeTest {
+    private final static long SEED = 20030611L;
+    private final static int LEXICON_SIZE = 300;
+    private final static int NUM_MWUS = 30;
+    private final static int NUM_LINES = 500;
+    private final static int MAX_N = 4;          // of the n-grams compared and extracted.
+    private final static int MIN_FREQ = 2;
+    private final static int WINDOW_SIZE = 1;
+    private final static int MAX_KEY_LEN = 3;          // of the bounded keys.
+    private final static String CHARSET_NAME = "UTF-8";
+    private final static String NOISE = " \t\f，。,.!?　  ";          // but no line breaks.
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+	TreeTest test = new TreeTest();
+	test.checkTextStore();
+	for (int langType = Strings.ChineseLike; langType <= Strings.EnglishLike; langType++) {
+	    test.checkSegmenter(langType);
+	    test.checkTree(langType);
+	    test.checkExtraction(langType);
+	}
+
+	if (test.failures > 0) {
+	    System.out.println("TreeTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("TreeTest: OK");
+    }
+
+    private static List<String> getLines(int langType) {
+	SyntheticCorpus corpus = new SyntheticCorpus(langType, SEED, SyntheticCorpus.DEFAULT_EXPONENT,
+						     LEXICON_SIZE, NUM_MWUS);
+	List<String> result = new ArrayList<String>();
+	for (int i = 0; i < NUM_LINES; i++) {
+	    result.add(corpus.nextLine());
+	}
+
+	return result;
+    }
+
+    private static String getName(int langType) {
+	return ((langType == Strings.EnglishLike) ? "English" : "Chinese");
+    }
+
+    private void checkTextStore() {
+	Random random = new Random(SEED);
+	TextStore store = new TextStore();
+	List<String> strs = new ArrayList<String>();
+	List<Integer> positions = new ArrayList<Integer>();
+	for (int i = 0; i < 1000; i++) {
+	    String str = Integer.toString(random.nextInt(100000), 36);
+	    if ((i % 100 == 99) && (strs.size() > 0)) {
+		store.removeLast();
+		strs.remove(strs.size() - 1);
+		positions.remove(positions.size() - 1);
+	    } else if ((i % 50 == 49) && (strs.size() > 0)) {
+		String last = strs.get(strs.size() - 1);
+		int pos = positions.get(positions.size() - 1).intValue();
+		store.truncateLast(pos + last.length() / 2);
+		strs.set(strs.size() - 1, last.substring(0, last.length() / 2));
+	    } else {
+		positions.add(Integer.valueOf(store.append("<" + str + ">", 1, str.length() + 1)));
+		strs.add(str);
+	    }
+	}
+	TextStore other = new TextStore();
+	other.append("tail");
+	int offset = store.appendAll(other);
+	strs.add("tail");
+	positions.add(Integer.valueOf(offset));
+
+	this.check("TextStore.count()", store.count() == strs.size());
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < strs.size(); i++) {
+	    String str = strs.get(i);
+	    int pos = positions.get(i).intValue();
+	    this.check("TextStore position " + i, pos == text.length());
+	    text.append(str).append(TextStore.SEPARATOR);
+	    this.check("TextStore.substring(" + i + ")",
+		       str.equals(store.substring(pos, pos + str.length())));
+	    this.check("TextStore.end(" + i + ")", store.end(pos) == pos + str.length());
+	    this.check("TextStore.indexOf(" + i + ")",
+		       store.indexOf(pos + str.length()) == i);
+	    this.check("TextStore.regionMatches(" + i + ")",
+		       store.regionMatches(pos, pos + str.length(), str) &&
+		       !store.regionMatches(pos, pos + str.length(), str + "x"));
+	    this.check("TextStore.startsWith(" + i + ")",
+		       store.startsWith(pos, pos + str.length(), str.substring(0, str.length() / 2)));
+	}
+	this.check("TextStore.length()", store.length() == text.length());
+	this.check("TextStore.toString()",
+		   text.substring(0, text.length() - 1).replace(TextStore.SEPARATOR, ',').equals(
+		       store.toString()));
+    }
+
+    /**
+     * Segments the lines as Segmenter should, by regular expressions: each
+     * line is condensed, split at the illegal characters, and each term is
+     * trimmed.
+     */
+    private static List<String> segment(int langType, CharClassifier classifier,
+					List<String> lines) {
+	List<String> result = new ArrayList<String>();
+	for (String line: lines) {
+	    String condensed = Strings.condenseSpace(line);
+	    StringBuilder term = new StringBuilder();
+	    for (int i = 0; i <= condensed.length(); i++) {
+		char c = ((i < condensed.length()) ? condensed.charAt(i) : '\n');
+		if ((i < condensed.length()) &&
+		    (classifier.isLegal(c) ||
+		     ((langType == Strings.EnglishLike) && (c == ' ')))) {
+		    term.append(c);
+		} else if (term.length() > 0) {
+		    result.add(term.toString().trim());
+		    term.setLength(0);
+		}
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Returns the lines with noise between and within their words.
+     */
+    private static List<String> addNoise(List<String> lines) {
+	Random random = new Random(SEED);
+	List<String> result = new ArrayList<String>();
+	for (String line: lines) {
+	    StringBuilder noisy = new StringBuilder();
+	    for (int i = 0; i < line.length(); i++) {
+		if (random.nextInt(8) == 0) {
+		    noisy.append(NOISE.charAt(random.nextInt(NOISE.length())));
+		}
+		noisy.append(line.charAt(i));
+	    }
+	    result.add(noisy.toString());
+	}
+
+	return result;
+    }
+
+    private void checkSegmenter(int langType) throws IOException {
+	CharClassifier classifier = PATTermExtraction.getDefaultClassifier(langType);
+	List<String> lines = TreeTest.addNoise(TreeTest.getLines(langType));
+	SuffixArray expected = new SuffixArray(langType);
+	SuffixArray expectedInverse = new SuffixArray(langType);
+	for (String term: TreeTest.segment(langType, classifier, lines)) {
+	    expected.add(term);
+	    expectedInverse.add(Strings.inverse(term, langType));
+	}
+
+	StringBuilder text = new StringBuilder();
+	for (String line: lines) {
+	    text.append(line).append("\r\n");
+	}
+	SuffixArray[] actual = new SuffixArray[4];
+	for (int i = 0; i < actual.length; i++) {
+	    actual[i] = new SuffixArray(langType);
+	}
+	Metrics metrics = new Metrics();
+	new Segmenter(langType, classifier, actual[0], actual[1], metrics).add(
+	    new StringReader(text.toString()));
+	Segmenter segmenter = new Segmenter(langType, classifier, actual[2], actual[3]);
+	for (String line: lines) {
+	    segmenter.add(line);
+	}
+
+	String name = TreeTest.getName(langType) + " Segmenter";
+	for (int n = 1; n <= MAX_N; n++) {
+	    String ngrams = PruneTest.toString(expected.getNGrams(n), 0);
+	    String inverseNGrams = PruneTest.toString(expectedInverse.getNGrams(n), 0);
+	    this.checkEqual(name, "getNGrams(" + n + ") of a reader", ngrams,
+			    PruneTest.toString(actual[0].getNGrams(n), 0));
+	    this.checkEqual(name, "inverse getNGrams(" + n + ") of a reader", inverseNGrams,
+			    PruneTest.toString(actual[1].getNGrams(n), 0));
+	    this.checkEqual(name, "getNGrams(" + n + ") of lines", ngrams,
+			    PruneTest.toString(actual[2].getNGrams(n), 0));
+	    this.checkEqual(name, "inverse getNGrams(" + n + ") of lines", inverseNGrams,
+			    PruneTest.toString(actual[3].getNGrams(n), 0));
+	}
+	this.check(name + " ingest.segments",
+		   metrics.counter("ingest.segments").getCount() ==
+		   TreeTest.segment(langType, classifier, lines).size());
+    }
+
+    private void checkTree(int langType) throws IOException {
+	List<String> lines = TreeTest.getLines(langType);
+	String name = TreeTest.getName(langType);
+	PATTree tree = new PATTree(langType);
+	PATTree first = new PATTree(langType);
+	PATTree second = new PATTree(langType);
+	PATTree bounded = new PATTree(langType, MAX_KEY_LEN);
+	for (int i = 0; i < lines.size(); i++) {
+	    tree.add(lines.get(i));
+	    ((i < lines.size() / 2) ? first : second).add(lines.get(i));
+	    bounded.add(lines.get(i));
+	}
+	first.merge(second);
+
+	File file = File.createTempFile("TreeTest", ".pat");
+	try {
+	    tree.toFile(file.getPath());
+	    PATTree read = PATTree.fromFile(file.getPath());
+	    this.checkEqual(name + " PAT-tree read from an image", tree, read, lines, MAX_N);
+	} finally {
+	    file.delete();
+	}
+	this.checkEqual(name + " merged PAT-tree", tree, first, lines, MAX_N);
+	this.checkEqual(name + " bounded PAT-tree", tree, bounded, lines, MAX_KEY_LEN - 1);
+	this.check(name + " bounded PAT-tree getMaxKeyLength()",
+		   bounded.getMaxKeyLength() == MAX_KEY_LEN);
+
+	if (langType == Strings.ChineseLike) {
+	    // the frequency of a word is the number of its occurrences.
+	    for (String word: PruneTest.getWords(langType, lines)) {
+		int count = 0;
+		for (String line: lines) {
+		    for (int i = line.indexOf(word); i >= 0; i = line.indexOf(word, i + 1)) {
+			count++;
+		    }
+		}
+		this.checkEqual(name + " PAT-tree", "getFrequency(" + word + ")",
+				String.valueOf(count), String.valueOf(tree.getFrequency(word)));
+	    }
+	}
+
+	tree.freeze();
+	try {
+	    tree.add(lines.get(0));
+	    this.fail(name + " frozen PAT-tree: add() did not throw");
+	} catch (IllegalStateException ise) {
+	}
+    }
+
+    /**
+     * Checks that the PAT-tree gives the answers of the expected one for
+     * the words of up to maxN characters (or words) of the lines.
+     */
+    private void checkEqual(String name, PATTree expected, PATTree actual,
+			    List<String> lines, int maxN) {
+	for (String word: PruneTest.getWords(expected.getLangType(), lines)) {
+	    if (Strings.getN(word, expected.getLangType()) > maxN) {
+		continue;
+	    }
+	    this.checkEqual(name, "getFrequency(" + word + ")",
+			    String.valueOf(expected.getFrequency(word)),
+			    String.valueOf(actual.getFrequency(word)));
+	    this.checkEqual(name, "getSuccessorCount(" + word + ")",
+			    String.valueOf(expected.getSuccessorCount(word)),
+			    String.valueOf(actual.getSuccessorCount(word)));
+	    this.checkEqual(name, "getSuffixPerplexity(" + word + ", 1)",
+			    PruneTest.toString(expected.getSuffixPerplexity(word, 1), 0),
+			    PruneTest.toString(actual.getSuffixPerplexity(word, 1), 0));
+	}
+	for (int n = 1; n <= maxN; n++) {
+	    this.checkEqual(name, "getNGrams(" + n + ")",
+			    PruneTest.toString(expected.getNGrams(n), 0),
+			    PruneTest.toString(actual.getNGrams(n), 0));
+	}
+    }
+
+    private void checkExtraction(int langType) throws Exception {
+	List<String> lines = TreeTest.getLines(langType);
+	String name = TreeTest.getName(langType) + " extraction";
+	StringBuilder text = new StringBuilder();
+	for (String line: lines) {
+	    text.append(line).append('\n');
+	}
+	File file = File.createTempFile("TreeTest", ".txt");
+	File image = File.createTempFile("TreeTest", ".pat");
+	try {
+	    Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET_NAME);
+	    try {
+		writer.write(text.toString());
+	    } finally {
+		writer.close();
+	    }
+
+	    PATTermExtraction[] tes = new PATTermExtraction[5];
+	    for (int i = 0; i < tes.length; i++) {
+		tes[i] = new PATTermExtraction(langType, PATTermExtraction.PAT_TREE);
+	    }
+	    tes[0].add(new StringReader(text.toString()));
+	    tes[1].add(lines.iterator());
+	    tes[2].addFile(file.getPath(), CHARSET_NAME);
+	    tes[3].add(lines.subList(0, lines.size() / 2).iterator());
+	    tes[4].add(lines.subList(lines.size() / 2, lines.size()).iterator());
+	    tes[3].merge(tes[4]);
+	    tes[0].toFile(image.getPath());
+	    tes[4] = PATTermExtraction.fromFile(image.getPath());
+
+	    String expected = TreeTest.extract(tes[0]);
+	    this.check(name + " is not empty", expected.length() > 4 * MAX_N);
+	    this.checkEqual(name, "of an iterator", expected, TreeTest.extract(tes[1]));
+	    this.checkEqual(name, "of a file", expected, TreeTest.extract(tes[2]));
+	    this.checkEqual(name, "merged", expected, TreeTest.extract(tes[3]));
+	    this.checkEqual(name, "read from an image", expected, TreeTest.extract(tes[4]));
+	} finally {
+	    file.delete();
+	    image.delete();
+	}
+    }
+
+    /**
+     * Returns the MWUs and the n-grams extracted, each map sorted.
+     */
+    private static String extract(PATTermExtraction te) throws IOException {
+	StringBuilder result = new StringBuilder();
+	Map[] mwus = te.extract(PATTermExtraction.SCPCD, MIN_FREQ, MAX_N, WINDOW_SIZE, null);
+	Map[] ngrams = te.extract(MAX_N, MIN_FREQ, 0, 0.0, null);
+	for (int n = 0; n < MAX_N; n++) {
+	    result.append(new TreeMap(mwus[n])).append('\n');
+	    result.append(new TreeMap(ngrams[n])).append('\n');
+	}
+
+	return result.toString();
+    }
+
+    private void checkEqual(String name, String query, String expected,
+			    String actual) {
+	if (!expected.equals(actual)) {
+	    this.fail(name + ": " + query + " is " + actual + ", expected " + expected);
+	}
+    }
+
+    private void check(String name, boolean passed) {
+	if (!passed) {
+	    this.fail(name + " failed");
+	}
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}
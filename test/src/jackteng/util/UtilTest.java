@@ -0,0 +1,283 @@
+package jackteng.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * <p>Description: Checks the utilities against plain reference code: the bit
+ *                 access and the comparison bits of Bits against the bitsets
+ *                 of the strings, the character tables against characters
+ *                 of known classes, the bounded heap against a sort of all
+ *                 the items offered, the synthetic corpus against itself for
+ *                 the same seed, and the metrics against the counts
+ *                 recorded by several threads.</p>
+ * <p>Copyright: Copyright (c) 2003</p>
+ * <p>Company: Institute of Information Science, Academia Sinica</p>
+ * @author Jei-Wen Teng
+ * @version 1.0
+ */
+public class UtilTest {
+    private final static long SEED = 20030521L;
+    private final static int NUM_STRINGS = 2000;
+    private final static int NUM_ITEMS = 1000;
+    private final static int NUM_SCORES = 50;          // so that scores tie.
+    private final static int CAPACITY = 37;
+    private final static int NUM_THREADS = 4;
+    private final static int NUM_EVENTS = 10000;          // of each thread.
+
+    private int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+	UtilTest test = new UtilTest();
+	test.checkBits();
+	test.checkCharTables();
+	test.checkBoundedHeap();
+	test.checkSyntheticCorpus();
+	test.checkMetrics();
+
+	if (test.failures > 0) {
+	    System.out.println("UtilTest: " + test.failures + " failures");
+	    System.exit(1);
+	}
+	System.out.println("UtilTest: OK");
+    }
+
+    /**
+     * Returns a random string of up to 12 characters, drawn from a few
+     * characters of each byte so that strings often share prefixes.
+     */
+    private static String nextString(Random random) {
+	char[] alphabet = {'a', 'b', ' ', '一', '丁', '\uffff', '\u0001'};
+	char[] result = new char[random.nextInt(13)];
+	for (int i = 0; i < result.length; i++) {
+	    result[i] = alphabet[random.nextInt(alphabet.length)];
+	}
+
+	return new String(result);
+    }
+
+    private void checkBits() {
+	Random random = new Random(SEED);
+	String[] strs = new String[NUM_STRINGS];
+	for (int i = 0; i < strs.length; i++) {
+	    strs[i] = UtilTest.nextString(random);
+	}
+
+	for (int i = 0; i < strs.length; i++) {
+	    String str = "xy" + strs[i] + "z";
+	    int to = str.length() - 1;
+	    for (int b = 0; b < (to - 2 + 1) * Bits.CHAR_BITS; b++) {
+		int c = 2 + b / Bits.CHAR_BITS;
+		boolean expected = ((c < to) &&
+				    (((str.charAt(c) >> (15 - b % Bits.CHAR_BITS)) & 1) != 0));
+		if (Bits.getBit(str, 2, to, b) != expected) {
+		    this.fail("Bits.getBit(" + strs[i] + ", " + b + ") is " + !expected);
+		}
+	    }
+
+	    // a prefix of the string, the string itself and another string.
+	    String other = ((i % 3 == 0) ? strs[i].substring(0, strs[i].length() / 2) :
+			    (i % 3 == 1) ? strs[i] : strs[(i + 1) % strs.length]);
+	    int expected = Bits.getComparisonBit(Bits.toBitSet(strs[i], 0, strs[i].length()),
+						 Bits.toBitSet(other, 0, other.length()));
+	    int actual = Bits.getComparisonBit(str, 2, to, "-" + other, 1, other.length() + 1);
+	    if (actual != expected) {
+		this.fail("Bits.getComparisonBit(" + strs[i] + ", " + other + ") is " +
+			  actual + ", expected " + expected);
+	    }
+	}
+    }
+
+    private void checkCharTables() {
+	this.check("big5Chinese().isLegal('中')", CharTable.big5Chinese().isLegal('中'));
+	this.check("!big5Chinese().isLegal('，')", !CharTable.big5Chinese().isLegal('，'));
+	this.check("!big5Chinese().isLegal('a')", !CharTable.big5Chinese().isLegal('a'));
+	this.check("gbkChinese().isLegal('中')", CharTable.gbkChinese().isLegal('中'));
+	this.check("unicodeChinese().isLegal('一')", CharTable.unicodeChinese().isLegal('一'));
+	this.check("!unicodeChinese().isLegal('。')", !CharTable.unicodeChinese().isLegal('。'));
+
+	CharTable english = CharTable.englishAlphabet();
+	for (int c = 0; c <= Character.MAX_VALUE; c++) {
+	    boolean expected = (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')));
+	    if (english.isLegal((char) c) != expected) {
+		this.fail("englishAlphabet().isLegal(" + c + ") is " + !expected);
+	    }
+	}
+	this.check("forName(\"english\")", CharTable.forName("english") == english);
+	try {
+	    CharTable.forName("klingon");
+	    this.fail("CharTable.forName() of an unknown name did not throw");
+	} catch (IllegalArgumentException iae) {
+	}
+
+	CharTable table = new CharTable();
+	table.set('@', '\u0080');
+	this.check("set(from, to)", !table.isLegal('?') && table.isLegal('@') &&
+		   table.isLegal('\u0080') && !table.isLegal('\u0081'));
+    }
+
+    private void checkBoundedHeap() {
+	Random random = new Random(SEED);
+	BoundedHeap<Integer> heap = new BoundedHeap<Integer>(CAPACITY);
+	List<double[]> all = new ArrayList<double[]>();          // pairs of a score and a sequence.
+	for (int i = 0; i < NUM_ITEMS; i++) {
+	    double score = random.nextInt(NUM_SCORES);
+	    boolean accepts = heap.accepts(score);
+	    if (heap.offer(Integer.valueOf(i), score) != accepts) {
+		this.fail("BoundedHeap.accepts(" + score + ") is " + accepts);
+	    }
+	    all.add(new double[] {score, i});
+	}
+
+	// the highest scores first, and of equal scores the first offered.
+	Collections.sort(all, new Comparator<double[]>() {
+	    public int compare(double[] lhs, double[] rhs) {
+		return ((lhs[0] != rhs[0]) ? Double.compare(rhs[0], lhs[0]) :
+			Double.compare(lhs[1], rhs[1]));
+	    }
+	});
+	List<Integer> expected = new ArrayList<Integer>();
+	for (int i = 0; i < CAPACITY; i++) {
+	    expected.add(Integer.valueOf((int) all.get(i)[1]));
+	}
+	this.check("BoundedHeap.toList()", expected.equals(heap.toList()));
+	this.check("BoundedHeap.isFull()", heap.isFull() && (heap.size() == CAPACITY));
+    }
+
+    private void checkSyntheticCorpus() throws IOException {
+	for (int langType = Strings.ChineseLike; langType <= Strings.EnglishLike; langType++) {
+	    SyntheticCorpus first = new SyntheticCorpus(langType, SEED, 1.0, 200, 20);
+	    SyntheticCorpus second = new SyntheticCorpus(langType, SEED, 1.0, 200, 20);
+	    SyntheticCorpus other = new SyntheticCorpus(langType, SEED + 1, 1.0, 200, 20);
+	    this.check("SyntheticCorpus.getTerms()",
+		       Arrays.equals(first.getTerms(), second.getTerms()));
+	    this.check("SyntheticCorpus.getMWUs()",
+		       Arrays.equals(first.getMWUs(), second.getMWUs()));
+	    boolean differs = false;
+	    for (int i = 0; i < 100; i++) {
+		String line = first.nextLine();
+		this.check("SyntheticCorpus.nextLine()", line.equals(second.nextLine()));
+		differs |= !line.equals(other.nextLine());
+	    }
+	    this.check("SyntheticCorpus of another seed", differs);
+	}
+
+	// a shorter corpus is a prefix of a longer one.
+	File dir = File.createTempFile("UtilTest", "");
+	dir.delete();
+	try {
+	    String[] texts = new String[2];
+	    for (int i = 0; i < 2; i++) {
+		File corpusDir = new File(dir, String.valueOf(i));
+		int numFiles = new SyntheticCorpus(Strings.ChineseLike, SEED).write(
+		    corpusDir.getPath(), "UTF-8", 5000 * (i + 1), 2000);
+		String[] files = corpusDir.list();
+		Arrays.sort(files);
+		this.check("SyntheticCorpus.write() files", numFiles == files.length);
+		StringBuilder text = new StringBuilder();
+		for (int f = 0; f < files.length; f++) {
+		    text.append(UtilTest.read(new File(corpusDir, files[f])));
+		}
+		texts[i] = text.toString();
+	    }
+	    this.check("SyntheticCorpus.write() size", texts[0].length() > 0);
+	    this.check("SyntheticCorpus.write() prefix", texts[1].startsWith(texts[0]));
+	} finally {
+	    UtilTest.delete(dir);
+	}
+    }
+
+    private void checkMetrics() throws Exception {
+	final Metrics metrics = new Metrics();
+	final Metrics.Counter counter = metrics.counter("test.events");
+	final Metrics.Timer timer = metrics.timer("test.latency");
+	Thread[] threads = new Thread[NUM_THREADS];
+	for (int t = 0; t < threads.length; t++) {
+	    final int step = t + 1;
+	    threads[t] = new Thread() {
+		public void run() {
+		    for (int i = 0; i < NUM_EVENTS; i++) {
+			counter.increment();
+			timer.record(step * 1000L);
+		    }
+		}
+	    };
+	    threads[t].start();
+	}
+	for (int t = 0; t < threads.length; t++) {
+	    threads[t].join();
+	}
+	metrics.gauge("test.gauge", new Metrics.Gauge() {
+	    public long getValue() {
+		return 42;
+	    }
+	});
+
+	long numEvents = (long) NUM_THREADS * NUM_EVENTS;
+	this.check("Metrics.Counter.getCount()", counter.getCount() == numEvents);
+	this.check("Metrics.counter() again", metrics.counter("test.events") == counter);
+	this.check("Metrics.Timer.getCount()", timer.getCount() == numEvents);
+	this.check("Metrics.Timer.getMaxNanos()", timer.getMaxNanos() == NUM_THREADS * 1000L);
+	this.check("Metrics.Timer.getTotalNanos()",
+		   timer.getTotalNanos() == NUM_EVENTS * 1000L * NUM_THREADS * (NUM_THREADS + 1) / 2);
+
+	Map<String, Object> snapshot = metrics.snapshot();
+	this.check("Metrics.snapshot() counter",
+		   Long.valueOf(numEvents).equals(snapshot.get("test.events")));
+	this.check("Metrics.snapshot() gauge",
+		   Long.valueOf(42).equals(snapshot.get("test.gauge")));
+	this.check("Metrics.snapshot() timer",
+		   Double.valueOf(NUM_THREADS * 1.0).equals(snapshot.get("test.latency.maxMicros")));
+	metrics.counter("test.\"quoted\\\n");
+	String json = metrics.toJSON();
+	this.check("Metrics.toJSON()", json.startsWith("{") && json.endsWith("}") &&
+		   (json.indexOf("\"test.events\": " + numEvents) >= 0) &&
+		   (json.indexOf("\"test.\\\"quoted\\\\\\u000a\": 0") >= 0));
+
+	try {
+	    metrics.timer("test.events");
+	    this.fail("Metrics.timer() of a counter name did not throw");
+	} catch (IllegalArgumentException iae) {
+	}
+	metrics.reset();
+	this.check("Metrics.reset()", (counter.getCount() == 0) && (timer.getCount() == 0));
+    }
+
+    private static String read(File file) throws IOException {
+	StringBuilder result = new StringBuilder();
+	Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+	try {
+	    char[] buf = new char[4096];
+	    for (int n = reader.read(buf); n >= 0; n = reader.read(buf)) {
+		result.append(buf, 0, n);
+	    }
+	} finally {
+	    reader.close();
+	}
+
+	return result.toString();
+    }
+
+    private static void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null) {
+	    for (int i = 0; i < files.length; i++) {
+		UtilTest.delete(files[i]);
+	    }
+	}
+	file.delete();
+    }
+
+    private void check(String name, boolean passed) {
+	if (!passed) {
+	    this.fail(name + " failed");
+	}
+    }
+
+    private void fail(String message) {
+	if (failures < 20) {
+	    System.out.println(message);
+	}
+	failures++;
+    }
+}